@@ -0,0 +1,19 @@
+package net.acimon.jmlearn.models;
+
+import net.acimon.jmlearn.utils.TrainingControl;
+
+/**
+ * A {@link Model} whose fit can be cancelled, bounded by a deadline and watched through a {@link TrainingControl}.
+ * <p>
+ * A fit stopped by its control throws {@link net.acimon.jmlearn.utils.TrainingCancelledException}.
+ * </p>
+ */
+public interface ControllableModel extends Model {
+
+    /**
+     * @param control The control of the next fits, or {@code null} for none.
+     */
+    void setTrainingControl(TrainingControl control);
+
+    TrainingControl getTrainingControl();
+}
@@ -0,0 +1,13 @@
+package net.acimon.jmlearn.models;
+
+/**
+ * A fitted {@link Model} that can report how much each input feature contributed to it.
+ * <p>
+ * Importances are non-negative and sum to {@code 1} over the features (or are all {@code 0} when the model never
+ * used a feature), so columns with a near-zero importance are candidates for removal.
+ * </p>
+ */
+public interface FeatureImportanceModel extends Model {
+
+    double[] getFeatureImportances();
+}
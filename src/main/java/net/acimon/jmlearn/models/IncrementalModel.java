@@ -0,0 +1,10 @@
+package net.acimon.jmlearn.models;
+
+/**
+ * A supervised {@link Model} that can be updated one sample at a time, at a cost that does not grow with the number
+ * of samples already seen, so it can follow a stream of labeled events.
+ */
+public interface IncrementalModel extends Model {
+
+    void partialFit(double[] dataPoint, int label, int count); // count: number of times the sample is seen (0 is a no-op)
+}
@@ -0,0 +1,19 @@
+package net.acimon.jmlearn.models;
+
+/**
+ * A {@link Model} whose training uses randomness drawn from a seed.
+ * <p>
+ * Every fit of a seeded model starts again from the seed, so two fits on the same data give the same model whatever
+ * the thread scheduling. Ensembles derive one seed per learner from their own seed and set it on each clone before
+ * fitting it, which makes parallel ensembles reproducible without sharing a generator between threads.
+ * </p>
+ */
+public interface SeedableModel extends Model {
+
+    /**
+     * @param seed The seed of the next fits, or {@code null} to draw a fresh one at every fit.
+     */
+    void setSeed(Long seed);
+
+    Long getSeed();
+}
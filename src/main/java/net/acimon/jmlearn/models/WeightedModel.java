@@ -0,0 +1,13 @@
+package net.acimon.jmlearn.models;
+
+/**
+ * A supervised {@link Model} that can be trained with a per-sample weight vector over the original data.
+ * <p>
+ * A weight of {@code 0} excludes the sample and an integer weight {@code c} behaves like {@code c} copies of it,
+ * so ensembles can describe a bootstrap bag as a count vector instead of materializing a copy of the data.
+ * </p>
+ */
+public interface WeightedModel extends Model {
+
+    void fit(double[][] dataPoints, int[] labels, double[] sampleWeights);
+}
@@ -0,0 +1,260 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.EuclideanDistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Initial centroids for the KMeans family.
+ * <p>
+ * Three strategies are available:
+ * </p>
+ * <ul>
+ *     <li>"random": {@code k} distinct rows drawn uniformly.</li>
+ *     <li>"k-means++" (Arthur and Vassilvitskii): each new centroid is drawn with a probability proportional to its
+ *     squared distance to the closest centroid so far, keeping the best of {@code 2 + ln k} draws (greedy variant).
+ *     The centroids start well spread, which avoids empty clusters and cuts the number of Lloyd iterations.</li>
+ *     <li>"k-means||" (Bahmani et al.): a few oversampling rounds each keep every row independently with probability
+ *     {@code 2k * D^2 / sum(D^2)}, the candidates are weighted by the rows closest to them and reduced to {@code k}
+ *     centroids with weighted k-means++. Each round is a single parallel pass over the data instead of {@code k}
+ *     sequential ones.</li>
+ * </ul>
+ * Parallel passes split the rows into fixed {@link RowChunks} with their own generators and combine the chunks in
+ * order, so the centroids only depend on the seed, not on the number of threads.
+ */
+final class CentroidInitializer {
+
+    static final String[] VALID_INITS = {"k-means++", "k-means||", "random"};
+
+    private static final int PARALLEL_ROUNDS = 5; // Oversampling rounds of k-means||
+    private static final double OVERSAMPLING_FACTOR = 2.0; // Expected candidates per round, in multiples of k
+
+    private CentroidInitializer() {
+    }
+
+    /**
+     * Draws {@code k} initial centroids from the rows of {@code X}.
+     *
+     * @param init One of {@link #VALID_INITS}.
+     * @param X The data.
+     * @param k The number of centroids.
+     * @param random The generator of the draws.
+     * @return {@code k} new centroid arrays.
+     */
+    static double[][] initialize(String init, double[][] X, int k, SplittableRandom random) {
+        if (X.length < k) {
+            throw new IllegalArgumentException("The number of samples (" + X.length + ") must be at least k (" + k + ").");
+        }
+        switch (init) {
+            case "random":
+                return randomRows(X, k, random);
+            case "k-means||":
+                return kMeansParallel(X, k, random);
+            default:
+                return kMeansPlusPlus(X, null, k, random);
+        }
+    }
+
+    /**
+     * Draws {@code k} initial centroids from the rows of {@code X}, each row counting {@code weights[i]} times.
+     * Rows of zero weight are never drawn; "k-means||" runs weighted k-means++ directly, since weighted data sets are
+     * small summaries of a larger one.
+     *
+     * @param weights The weight of each row, or {@code null} for equal weights.
+     * @see #initialize(String, double[][], int, SplittableRandom)
+     */
+    static double[][] initialize(String init, double[][] X, double[] weights, int k, SplittableRandom random) {
+        if (weights == null) {
+            return initialize(init, X, k, random);
+        }
+        int positive = 0;
+        for (double weight : weights) {
+            if (weight > 0) positive++;
+        }
+        if (positive < k) {
+            throw new IllegalArgumentException("The number of samples with a positive weight (" + positive
+                + ") must be at least k (" + k + ").");
+        }
+        if (init.equals("random")) {
+            return weightedRandomRows(X, weights, k, random);
+        }
+        return kMeansPlusPlus(X, weights, k, random);
+    }
+
+    private static double[][] randomRows(double[][] X, int k, SplittableRandom random) {
+        int[] rows = random.ints(0, X.length).distinct().limit(k).toArray();
+        double[][] centroids = new double[k][];
+        for (int c = 0; c < k; c++) {
+            centroids[c] = X[rows[c]].clone();
+        }
+        return centroids;
+    }
+
+    /**
+     * {@code k} distinct rows, each drawn with a probability proportional to its weight among the rows left.
+     */
+    private static double[][] weightedRandomRows(double[][] X, double[] weights, int k, SplittableRandom random) {
+        double[] left = weights.clone();
+        double[][] centroids = new double[k][];
+        for (int c = 0; c < k; c++) {
+            int row = drawRow(left, null, X.length, random);
+            centroids[c] = X[row].clone();
+            left[row] = 0.0;
+        }
+        return centroids;
+    }
+
+    /**
+     * Greedy k-means++ over optionally weighted rows.
+     *
+     * @param weights The weight of each row, or {@code null} for equal weights.
+     */
+    static double[][] kMeansPlusPlus(double[][] X, double[] weights, int k, SplittableRandom random) {
+        int n = X.length;
+        double[][] centroids = new double[k][];
+        double[] closest = new double[n]; // Squared distance of each row to its closest centroid so far
+        double[] candidate = new double[n];
+
+        centroids[0] = X[(weights == null) ? random.nextInt(n) : drawRow(weights, null, n, random)].clone();
+        RowChunks.forEachRow(n, i -> closest[i] = EuclideanDistance.calculate(X[i], centroids[0], true));
+        double potential = weightedSum(closest, weights);
+
+        int trials = 2 + (int) Math.log(k);
+        for (int c = 1; c < k; c++) {
+            int bestRow = -1;
+            double bestPotential = Double.POSITIVE_INFINITY;
+            for (int t = 0; t < trials; t++) {
+                // Every row already sits on a centroid when the potential is 0, any row will do
+                int row = (potential > 0) ? drawRow(weights, closest, n, random) : random.nextInt(n);
+                double[] point = X[row];
+                RowChunks.forEachRow(n, i -> candidate[i] = Math.min(closest[i], EuclideanDistance.calculate(X[i], point, true)));
+                double candidatePotential = weightedSum(candidate, weights);
+                if (candidatePotential < bestPotential) {
+                    bestPotential = candidatePotential;
+                    bestRow = row;
+                }
+            }
+            double[] chosen = X[bestRow];
+            centroids[c] = chosen.clone();
+            RowChunks.forEachRow(n, i -> closest[i] = Math.min(closest[i], EuclideanDistance.calculate(X[i], chosen, true)));
+            potential = weightedSum(closest, weights);
+        }
+        return centroids;
+    }
+
+    /**
+     * Draws one of the {@code n} rows with a probability proportional to {@code weights[i] * distances[i]}; a
+     * {@code null} array counts as all ones.
+     */
+    private static int drawRow(double[] weights, double[] distances, int n, SplittableRandom random) {
+        double total = 0.0;
+        for (int i = 0; i < n; i++) {
+            total += mass(weights, distances, i);
+        }
+        double target = random.nextDouble() * total;
+        double cumulative = 0.0;
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            double mass = mass(weights, distances, i);
+            if (mass <= 0) continue;
+            cumulative += mass;
+            last = i;
+            if (cumulative > target) {
+                return i;
+            }
+        }
+        return last; // Rounding can leave the target just past the total
+    }
+
+    private static double mass(double[] weights, double[] distances, int i) {
+        return ((weights != null) ? weights[i] : 1.0) * ((distances != null) ? distances[i] : 1.0);
+    }
+
+    /**
+     * k-means|| followed by weighted k-means++ on the candidates.
+     */
+    private static double[][] kMeansParallel(double[][] X, int k, SplittableRandom random) {
+        int n = X.length;
+        List<double[]> candidates = new ArrayList<>();
+        candidates.add(X[random.nextInt(n)].clone());
+
+        double[] closest = new double[n];
+        RowChunks.forEachRow(n, i -> closest[i] = EuclideanDistance.calculate(X[i], candidates.get(0), true));
+        double potential = weightedSum(closest, null);
+
+        int nChunks = RowChunks.count(n);
+        double oversampling = OVERSAMPLING_FACTOR * k;
+        for (int round = 0; round < PARALLEL_ROUNDS && potential > 0; round++) {
+            long[] chunkSeeds = new long[nChunks];
+            for (int c = 0; c < nChunks; c++) {
+                chunkSeeds[c] = random.nextLong();
+            }
+            final double roundPotential = potential;
+            int[][] chunkPicks = IntStream.range(0, nChunks).parallel().mapToObj(c -> {
+                SplittableRandom chunkRandom = new SplittableRandom(chunkSeeds[c]);
+                IntStream.Builder picks = IntStream.builder();
+                for (int i = c * RowChunks.CHUNK_ROWS; i < Math.min(n, (c + 1) * RowChunks.CHUNK_ROWS); i++) {
+                    if (chunkRandom.nextDouble() < oversampling * closest[i] / roundPotential) {
+                        picks.add(i);
+                    }
+                }
+                return picks.build().toArray();
+            }).toArray(int[][]::new);
+
+            List<double[]> picked = new ArrayList<>();
+            for (int[] picks : chunkPicks) {
+                for (int row : picks) {
+                    picked.add(X[row].clone());
+                }
+            }
+            if (picked.isEmpty()) continue;
+            candidates.addAll(picked);
+            RowChunks.forEachRow(n, i -> {
+                for (double[] point : picked) {
+                    closest[i] = Math.min(closest[i], EuclideanDistance.calculate(X[i], point, true));
+                }
+            });
+            potential = weightedSum(closest, null);
+        }
+
+        if (candidates.size() < k) {
+            return kMeansPlusPlus(X, null, k, random);
+        }
+
+        // Weight every candidate by the number of rows closest to it
+        double[][] candidateArray = candidates.toArray(new double[0][]);
+        double[][] chunkCounts = IntStream.range(0, nChunks).parallel().mapToObj(c -> {
+            double[] counts = new double[candidateArray.length];
+            for (int i = c * RowChunks.CHUNK_ROWS; i < Math.min(n, (c + 1) * RowChunks.CHUNK_ROWS); i++) {
+                int best = 0;
+                double bestDistance = Double.MAX_VALUE;
+                for (int j = 0; j < candidateArray.length; j++) {
+                    double distance = EuclideanDistance.calculate(X[i], candidateArray[j], true);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = j;
+                    }
+                }
+                counts[best]++;
+            }
+            return counts;
+        }).toArray(double[][]::new);
+        double[] weights = new double[candidateArray.length];
+        for (double[] counts : chunkCounts) {
+            for (int j = 0; j < weights.length; j++) {
+                weights[j] += counts[j];
+            }
+        }
+        return kMeansPlusPlus(candidateArray, weights, k, random);
+    }
+
+    /**
+     * Sums {@code values[i] * weights[i]} in parallel, independently of the number of threads.
+     */
+    private static double weightedSum(double[] values, double[] weights) {
+        return RowChunks.sum(values.length, i -> (weights != null) ? weights[i] * values[i] : values[i]);
+    }
+}
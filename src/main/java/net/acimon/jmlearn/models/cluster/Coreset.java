@@ -0,0 +1,52 @@
+package net.acimon.jmlearn.models.cluster;
+
+/**
+ * A small weighted sample standing for a larger data set: the weighted k-means cost of any set of centroids on the
+ * coreset approximates their cost on the full data.
+ * <p>
+ * Built by {@link CoresetBuilder} and fitted with {@link KMeans#fit(Coreset)}.
+ * </p>
+ */
+public final class Coreset {
+
+    private final double[][] _points;
+    private final double[] _weights;
+
+    /**
+     * @param points The sampled points.
+     * @param weights The non-negative weight of each point.
+     */
+    public Coreset(double[][] points, double[] weights) {
+        if (points.length != weights.length) {
+            throw new IllegalArgumentException("The number of weights must match the number of points.");
+        }
+        this._points = points;
+        this._weights = weights;
+    }
+
+    public double[][] getPoints() {
+        return _points;
+    }
+
+    public double[] getWeights() {
+        return _weights;
+    }
+
+    /**
+     * @return The number of points.
+     */
+    public int size() {
+        return _points.length;
+    }
+
+    /**
+     * @return The sum of the weights, close to the number of rows of the summarized data set.
+     */
+    public double getTotalWeight() {
+        double total = 0.0;
+        for (double weight : _weights) {
+            total += weight;
+        }
+        return total;
+    }
+}
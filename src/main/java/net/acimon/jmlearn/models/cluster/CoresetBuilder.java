@@ -0,0 +1,258 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.EuclideanDistance;
+import net.acimon.jmlearn.utils.RowSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * The CoresetBuilder class summarizes a large data set as a small weighted {@link Coreset} for k-means.
+ * <p>
+ * Rows are drawn with the lightweight coreset distribution (Bachem, Lucic and Krause, 2018): half uniform, half
+ * proportional to the squared distance to the mean, {@code q(x) = 1/2 * w(x)/W + 1/2 * w(x) d(x, mean)^2 / sum(w d^2)}.
+ * Each of the {@code size} draws gets the weight {@code w(x) / (size * q(x))}, so the weighted cost of any centroids is
+ * an unbiased estimate of their cost on the full data, and outlying rows, which weigh most on the cost, are kept more
+ * often than with uniform sampling.
+ * </p>
+ * <p>
+ * A {@link RowSource} is read in a single pass with merge and reduce: every chunk is reduced to a coreset of
+ * {@code size} points, two coresets of the same level are merged and reduced again into one of the next level, like
+ * the carries of a binary counter, and the remaining levels are merged at the end. Memory stays at one chunk plus
+ * {@code size} points per level, {@code log2} of the number of chunks.
+ * </p>
+ *
+ * <h2>Key Features</h2>
+ * <ul>
+ *     <li>Single streaming pass over CSV or binary row files.</li>
+ *     <li>Parallel reductions whose results only depend on the seed, not on the number of threads.</li>
+ *     <li>Weighted inputs, so coresets can be reduced further.</li>
+ * </ul>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * Coreset coreset = new CoresetBuilder(10_000, 42L).build(new BinaryRowSource(path));
+ * KMeans kmeans = new KMeans(8, 100, 42L);
+ * kmeans.fit(coreset);
+ * </pre>
+ */
+public class CoresetBuilder {
+
+    private int _size; // Number of draws per reduction
+    private Long _seed; // null draws a fresh seed at every build
+
+    /**
+     * @param size The number of draws of the coreset; duplicate draws are merged, so it may have fewer points.
+     * @param seed The seed of the draws, or {@code null} for a fresh one per build.
+     */
+    public CoresetBuilder(int size, Long seed) {
+        setSize(size);
+        this._seed = seed;
+    }
+
+    /**
+     * @param size The number of draws of the coreset, with a fresh seed per build.
+     */
+    public CoresetBuilder(int size) {
+        this(size, null);
+    }
+
+    /**
+     * Builds a coreset of rows in memory.
+     *
+     * @param X The data, where each row is a sample.
+     * @return A coreset of at most {@code size} points, or all the rows if there are no more.
+     */
+    public Coreset build(double[][] X) {
+        if (X.length == 0) {
+            throw new IllegalArgumentException("The data has no rows.");
+        }
+        double[] weights = new double[X.length];
+        Arrays.fill(weights, 1.0);
+        return reduce(X, weights, _size, _random());
+    }
+
+    /**
+     * Builds a coreset of weighted rows in memory, e.g. to shrink a coreset further.
+     *
+     * @param X The data, where each row is a sample.
+     * @param weights The non-negative weight of each row.
+     * @return A coreset of at most {@code size} points, or all the rows if there are no more.
+     */
+    public Coreset build(double[][] X, double[] weights) {
+        if (X.length != weights.length) {
+            throw new IllegalArgumentException("The number of weights must match the number of samples.");
+        }
+        if (X.length == 0) {
+            throw new IllegalArgumentException("The data has no rows.");
+        }
+        return reduce(X, weights, _size, _random());
+    }
+
+    /**
+     * Builds a coreset of the rows of a source, read once with merge and reduce.
+     *
+     * @param source The rows.
+     * @return A coreset of at most {@code size} points, or all the rows if there are no more.
+     * @throws IOException If reading the source fails.
+     */
+    public Coreset build(RowSource source) throws IOException {
+        SplittableRandom random = _random();
+        List<Coreset> levels = new ArrayList<>(); // Level l summarizes 2^l chunks, null when empty
+        RowChunks.stream(source, chunk -> {
+            double[] ones = new double[chunk.length];
+            Arrays.fill(ones, 1.0);
+            Coreset carry = reduce(chunk, ones, _size, random);
+            int level = 0;
+            for (; level < levels.size() && levels.get(level) != null; level++) {
+                carry = reduce(merge(levels.get(level), carry), _size, random);
+                levels.set(level, null);
+            }
+            if (level == levels.size()) {
+                levels.add(carry);
+            } else {
+                levels.set(level, carry);
+            }
+        });
+
+        Coreset result = null;
+        for (Coreset coreset : levels) {
+            if (coreset == null) continue;
+            result = (result == null) ? coreset : merge(result, coreset);
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("The source has no rows.");
+        }
+        return reduce(result, _size, random);
+    }
+
+    private SplittableRandom _random() {
+        return (_seed != null) ? new SplittableRandom(_seed) : new SplittableRandom();
+    }
+
+    private static Coreset reduce(Coreset coreset, int size, SplittableRandom random) {
+        return reduce(coreset.getPoints(), coreset.getWeights(), size, random);
+    }
+
+    /**
+     * Draws {@code size} weighted rows from the lightweight coreset distribution and merges duplicate draws.
+     */
+    static Coreset reduce(double[][] X, double[] weights, int size, SplittableRandom random) {
+        int n = X.length;
+        if (n <= size) {
+            return new Coreset(X, weights);
+        }
+        double total = RowChunks.sum(n, i -> weights[i]);
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("The total weight of the rows must be positive.");
+        }
+        double[] mean = weightedMean(X, weights, total);
+        double[] distances = new double[n];
+        RowChunks.forEachRow(n, i -> distances[i] = EuclideanDistance.calculate(X[i], mean, true));
+        double cost = RowChunks.sum(n, i -> weights[i] * distances[i]);
+        double[] probabilities = new double[n];
+        // All the rows sit on the mean when the cost is 0, the distribution is then uniform in the weights
+        RowChunks.forEachRow(n, i -> probabilities[i] = (cost > 0)
+            ? 0.5 * weights[i] / total + 0.5 * weights[i] * distances[i] / cost
+            : weights[i] / total);
+
+        // Walk the cumulative probabilities once with sorted uniform draws
+        double[] draws = new double[size];
+        for (int d = 0; d < size; d++) {
+            draws[d] = random.nextDouble();
+        }
+        Arrays.sort(draws);
+        int[] counts = new int[n];
+        double cumulative = 0.0;
+        int row = 0;
+        int lastDrawable = 0;
+        for (double draw : draws) {
+            while (row < n && cumulative + probabilities[row] <= draw) {
+                if (probabilities[row] > 0) lastDrawable = row;
+                cumulative += probabilities[row];
+                row++;
+            }
+            counts[(row < n) ? row : lastDrawable]++; // Rounding can leave the draw just past the total
+        }
+
+        int kept = 0;
+        for (int count : counts) {
+            if (count > 0) kept++;
+        }
+        double[][] points = new double[kept][];
+        double[] pointWeights = new double[kept];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            if (counts[i] == 0) continue;
+            points[p] = X[i].clone();
+            pointWeights[p] = counts[i] * weights[i] / (size * probabilities[i]);
+            p++;
+        }
+        return new Coreset(points, pointWeights);
+    }
+
+    /**
+     * Weighted mean of the rows, summed over fixed partitions combined in order.
+     */
+    private static double[] weightedMean(double[][] X, double[] weights, double total) {
+        int n = X.length;
+        int nFeatures = X[0].length;
+        int parts = RowChunks.partitions(n);
+        double[][] partSums = new double[parts][nFeatures];
+        IntStream.range(0, parts).parallel().forEach(p -> {
+            double[] sum = partSums[p];
+            for (int i = RowChunks.partitionStart(n, parts, p); i < RowChunks.partitionStart(n, parts, p + 1); i++) {
+                for (int j = 0; j < nFeatures; j++) {
+                    sum[j] += weights[i] * X[i][j];
+                }
+            }
+        });
+        double[] mean = new double[nFeatures];
+        for (double[] sum : partSums) {
+            for (int j = 0; j < nFeatures; j++) {
+                mean[j] += sum[j];
+            }
+        }
+        for (int j = 0; j < nFeatures; j++) {
+            mean[j] /= total;
+        }
+        return mean;
+    }
+
+    private static Coreset merge(Coreset first, Coreset second) {
+        double[][] points = Arrays.copyOf(first.getPoints(), first.size() + second.size());
+        System.arraycopy(second.getPoints(), 0, points, first.size(), second.size());
+        double[] weights = Arrays.copyOf(first.getWeights(), first.size() + second.size());
+        System.arraycopy(second.getWeights(), 0, weights, first.size(), second.size());
+        return new Coreset(points, weights);
+    }
+
+    public int getSize() {
+        return _size;
+    }
+
+    /**
+     * @param size The number of draws of the coreset.
+     */
+    public void setSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be greater than zero.");
+        }
+        this._size = size;
+    }
+
+    public Long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * @param seed The seed of the next builds, or {@code null} to draw a fresh one at every build.
+     */
+    public void setSeed(Long seed) {
+        this._seed = seed;
+    }
+}
@@ -1,20 +1,32 @@
 package net.acimon.jmlearn.models.cluster;
+import net.acimon.jmlearn.models.ControllableModel;
 import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.SeedableModel;
 
 
 
 import net.acimon.jmlearn.utils.EuclideanDistance;
-import net.acimon.jmlearn.utils.PlotData;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.RowSource;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+import net.acimon.jmlearn.utils.TrainingControl;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-
-// visualizetion 
-import javax.swing.JFrame;
-import java.awt.Dimension;
-import org.jfree.chart.ChartPanel;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * The KMeans class implements the KMeans clustering algorithm for unsupervised learning tasks.
@@ -23,6 +35,12 @@ import org.jfree.chart.ChartPanel;
  * <ul>
  *     <li>Performs clustering by partitioning data into K clusters.</li>
  *     <li>Supports visualization of clustering steps.</li>
+ *     <li>k-means++, k-means|| and random initialization (see {@link KMeans#setInit(String)}).</li>
+ *     <li>Lloyd, Elkan, Hamerly, Yinyang and KD-tree filtering assignment steps, with identical results (see {@link KMeans#setAlgorithm(String)}).</li>
+ *     <li>Parallel assignment and update steps whose results do not depend on the number of threads.</li>
+ *     <li>Concurrent restarts keeping the lowest inertia (see {@link KMeans#setNInit(int)}).</li>
+ *     <li>Out-of-core fits streaming CSV or binary row files (see {@link KMeans#fit(RowSource)}).</li>
+ *     <li>Weighted samples, e.g. a {@link Coreset} of a much larger data set (see {@link KMeans#fit(double[][], double[])}).</li>
  * </ul>
  *
  * <h3>Usage Example:</h3>
@@ -45,33 +63,66 @@ import org.jfree.chart.ChartPanel;
  *     <li>{@link KMeans#getMaxIter()} - Returns the maximum number of iterations allowed during the clustering process.</li>
  *     <li>{@link KMeans#getCentroids()} - Returns the current centroids of the clusters.</li>
  *     <li>{@link KMeans#getClusters()} - Returns the list of clusters where each cluster contains the indices of the data points assigned to that cluster.</li>
+ *     <li>{@link KMeans#getLabels()} - Returns the cluster of each data point.</li>
  *     <li>{@link KMeans#getSeed()} - Returns the random seed used for centroid initialization.</li>
  * </ul>
  *
  * <h2>Visualization</h2>
  * <p>
  * The class optionally provides a visualization of the clustering steps using JFreeChart.
- * The `plotSteps` flag in the constructor enables or disables the visualization.
+ * The `plotSteps` flag in the constructor enables or disables the visualization in a window,
+ * {@link KMeans#setPlotDirectory(Path)} writes the steps as PNG files instead, which also works on headless hosts, and
+ * {@link KMeans#setSnapshotListener(SnapshotListener)} receives them for custom rendering. Snapshots are rendered on a
+ * separate thread at most {@link KMeans#setMaxFrameRate(double)} times per second, so plotting does not slow the fit
+ * down; no window or chart is created unless one is requested.
  * </p>
  *
 */
-public class KMeans implements Model{
+public class KMeans implements SeedableModel, ControllableModel {
     private int _k; // Number of clusters
     private int _maxIter; // Maximum number of iterations
     private double[][] _X; // Input data
     private double[][] _centroids; // Cluster centroids
-    private List<List<Integer>> _clusters; // Cluster assignments
+    private int[] _labels; // Cluster of each training sample
+    private double[] _sampleWeights; // Weight of each training sample, null for equal weights
+    private double[] _distances; // Squared distance of each training sample to its centroid
+    private double _inertia = Double.NaN; // Inertia of the last fit, NaN when unknown
     private boolean _plotSteps; 
-    private Random _random;
-    private Long _seed;
+    private Long _seed; // null draws a fresh seed at every fit
+    private TrainingControl _control; // Checked at every iteration, null for none
+    private String _algorithm = VALID_ALGORITHMS[0];
+    private String _init = CentroidInitializer.VALID_INITS[0];
+    private int _nIter; // Iterations run by the last fit
+    private int _nInit = 1; // Restarts per fit
+    private boolean _precomputeNorms; // Lloyd distances from precomputed squared norms
+    private static final String[] VALID_ALGORITHMS = {"lloyd", "elkan", "hamerly", "yinyang", "filtering"};
     private static final int DEFAULT_K = 5;
     private static final int DEFAULT_MAX_ITER = 100;
-    private static final double CONVERGED_FACTOR = 1e-4;
+    private static final int INIT_SAMPLE_ROWS = 100_000; // Rows sampled for the initialization of a streaming fit
+    private static final int DISTANCE_BLOCK_ROWS = 64; // Rows per block of the distance kernel
+    private static final double DEFAULT_MAX_FRAME_RATE = 10.0;
+    private static final long PROGRESS_POLL_MILLIS = 50; // How often a fit with a control reports its restarts
 
     // For visualization
-    private JFrame _frame = new JFrame("KMeans Clustering");
-    private ChartPanel _chartPanel = new ChartPanel(null);  // Start with no chart
+    private SnapshotListener _snapshotListener;
+    private Path _plotDirectory; // PNG frames, null for none
+    private double _maxFrameRate = DEFAULT_MAX_FRAME_RATE;
+    private SnapshotRenderer.PlotWindow _window; // Created at the first plotted fit
 
+    /**
+     * Receives the state of a fit after each iteration, on a rendering thread separate from the fit.
+     */
+    @FunctionalInterface
+    public interface SnapshotListener {
+
+        /**
+         * @param X The training data, not to be modified.
+         * @param iteration The number of completed iterations.
+         * @param labels The cluster of each sample, a copy owned by the listener.
+         * @param centroids The centroids, a copy owned by the listener.
+         */
+        void onSnapshot(double[][] X, int iteration, int[] labels, double[][] centroids);
+    }
 
     /**
      * Constructor for KMeans clustering with user-specified number of clusters, maximum iterations, seed, and visualization option.
@@ -84,22 +135,8 @@ public class KMeans implements Model{
     public KMeans(int k, int maxIter, Long seed, boolean plotSteps) {
         this._k = k;
         this._maxIter = maxIter;
-        this._clusters = new ArrayList<>(k);
-        for (int i = 0; i < k; i++) {
-            _clusters.add(new ArrayList<>());
-        }
-
         this._plotSteps = plotSteps;
         this._seed = seed;
-        this._random = (seed != null) ? new Random(seed):new Random();
-
-        if (plotSteps){
-            _frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            _chartPanel.setPreferredSize(new Dimension(800, 600));
-            _frame.getContentPane().add(_chartPanel);
-            _frame.pack();
-            _frame.setVisible(true);
-        }
     }
 
     //constructors
@@ -108,15 +145,20 @@ public class KMeans implements Model{
         this._k = other._k; 
         this._maxIter = other._maxIter;
         this._seed = other._seed;
+        this._control = other._control;
+        this._algorithm = other._algorithm;
+        this._init = other._init;
+        this._nIter = other._nIter;
+        this._nInit = other._nInit;
+        this._precomputeNorms = other._precomputeNorms;
         this._plotSteps = other._plotSteps;
+        this._snapshotListener = other._snapshotListener;
+        this._plotDirectory = other._plotDirectory;
+        this._maxFrameRate = other._maxFrameRate;
         
         
-        if (other._X != null) {
-            this._X = new double[other._X.length][];
-            for (int i = 0; i < other._X.length; i++) {
-                this._X[i] = other._X[i].clone(); // Deep copy of each row in the 2D array
-            }
-        }
+        this._X = other._X; // The training data is never modified, the copy shares it
+        this._sampleWeights = other._sampleWeights;
 
         
         if (other._centroids != null) {
@@ -127,26 +169,11 @@ public class KMeans implements Model{
         }
 
        
-        if (other._clusters != null) {
-            this._clusters = new ArrayList<>(other._clusters.size());
-            for (List<Integer> cluster : other._clusters) {
-                this._clusters.add(new ArrayList<>(cluster)); // Deep copy of each cluster list
-            }
-        }
-
-        // Copy the random generator (can be the same since it's stateless with seed)
-        this._random = (other._random != null) ? new Random(other._random.nextLong()) : new Random();
-
-        // initialize the JFrame and ChartPanel if plotSteps is true
-        if (this._plotSteps) {
-            this._frame = new JFrame("KMeans Clustering");
-            this._chartPanel = new ChartPanel(null);  // Start without chart
-            this._frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            this._chartPanel.setPreferredSize(new Dimension(800, 600));
-            this._frame.getContentPane().add(this._chartPanel);
-            this._frame.pack();
-            this._frame.setVisible(true);
+        if (other._labels != null) {
+            this._labels = other._labels.clone();
         }
+        this._distances = other._distances; // Never modified, like the training data
+        this._inertia = other._inertia;
     }
     public KMeans() {
         this(DEFAULT_K, DEFAULT_MAX_ITER,null, false);
@@ -167,48 +194,318 @@ public class KMeans implements Model{
     }
 
     /**
-     * Fits the KMeans model to the input data.
+     * Fits the KMeans model to the input data. Each run stops when an assignment step leaves every sample in its
+     * cluster, or after {@code maxIter} iterations. With {@code nInit} restarts, the runs start from different
+     * initializations at the same time and the one with the lowest inertia is kept.
      * 
      * @param X Input data, where each row is a sample and each column is a feature.
      */
     public void fit(double[][] X) {
+        _fit(X, null);
+    }
+
+    /**
+     * Fits the model to weighted samples: a sample of weight {@code w} counts as {@code w} copies of it in the
+     * initialization, the centroid means and the inertia. This trains on a {@link Coreset} of a much larger data set.
+     *
+     * @param X Input data, where each row is a sample and each column is a feature.
+     * @param sampleWeights The non-negative weight of each sample.
+     * @throws IllegalArgumentException if the weights do not match the samples or are negative.
+     */
+    public void fit(double[][] X, double[] sampleWeights) {
+        if (sampleWeights.length != X.length) {
+            throw new IllegalArgumentException("The number of weights must match the number of samples.");
+        }
+        for (double weight : sampleWeights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Sample weights must be finite and non-negative.");
+            }
+        }
+        _fit(X, sampleWeights);
+    }
+
+    /**
+     * Fits the model to the points of a coreset, weighted by their coreset weights.
+     *
+     * @param coreset The coreset, e.g. from {@link CoresetBuilder}.
+     */
+    public void fit(Coreset coreset) {
+        fit(coreset.getPoints(), coreset.getWeights());
+    }
+
+    private void _fit(double[][] X, double[] weights) {
         this._X = X;
+        this._sampleWeights = weights;
+        // Every restart draws from its own generator, derived from the seed in restart order
+        SplittableRandom random = (_seed != null) ? new SplittableRandom(_seed) : new SplittableRandom();
+        SplittableRandom[] randoms = new SplittableRandom[_nInit];
+        randoms[0] = random;
+        for (int r = 1; r < _nInit; r++) {
+            randoms[r] = new SplittableRandom(random.nextLong());
+        }
+        double[] norms = _precomputeNorms ? _squaredNorms(X) : null; // Shared by all restarts
+        FilteringTree tree = _algorithm.equals("filtering") ? new FilteringTree(X) : null; // Shared by all restarts
+
+        SnapshotRenderer renderer = _createRenderer(X);
+        try {
+            AtomicInteger done = new AtomicInteger();
+            Run[] runs = _runRestarts(() -> IntStream.range(0, _nInit).parallel()
+                .mapToObj(r -> _run(X, weights, randoms[r], norms, tree, (r == 0) ? renderer : null, done))
+                .toArray(Run[]::new), done);
+
+            Run best = runs[0];
+            for (Run run : runs) {
+                if (run.inertia < best.inertia) { // Ties keep the first restart
+                    best = run;
+                }
+            }
+            this._centroids = best.centroids;
+            this._labels = best.labels;
+            this._distances = best.distances;
+            this._inertia = best.inertia;
+            this._nIter = best.nIter;
+            if (renderer != null) {
+                renderer.offer(best.nIter, best.labels, best.centroids, true);
+            }
+        } finally {
+            if (renderer != null) {
+                renderer.close();
+            }
+        }
+    }
+
+    /**
+     * @return A renderer for the requested visualizations, or {@code null} if there are none.
+     */
+    private SnapshotRenderer _createRenderer(double[][] X) {
+        List<SnapshotListener> listeners = new ArrayList<>();
+        if (_plotSteps) {
+            if (_window == null) {
+                _window = new SnapshotRenderer.PlotWindow();
+            }
+            listeners.add(_window);
+        }
+        if (_plotDirectory != null) {
+            listeners.add(new SnapshotRenderer.PngWriter(_plotDirectory));
+        }
+        if (_snapshotListener != null) {
+            listeners.add(_snapshotListener);
+        }
+        return listeners.isEmpty() ? null : new SnapshotRenderer(X, listeners, _maxFrameRate);
+    }
+
+    /**
+     * Runs the restarts. With a control, they run on the pool while the calling thread reports the iterations they
+     * count in {@code done}, so the progress listener is called on the thread of the fit.
+     */
+    private Run[] _runRestarts(Supplier<Run[]> restarts, AtomicInteger done) {
+        if (_control == null) {
+            return restarts.get();
+        }
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        CompletableFuture<Run[]> future = CompletableFuture.supplyAsync(restarts, pool);
+        int total = _nInit * _maxIter;
+        long startNanos = System.nanoTime();
+        int reported = 0;
+        try {
+            while (true) {
+                Run[] runs = null;
+                try {
+                    runs = future.get(PROGRESS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Report what the restarts did meanwhile
+                }
+                int progress = done.get();
+                if (progress > reported) {
+                    _control.reportProgress(progress, total, startNanos, 0);
+                    reported = progress;
+                }
+                if (runs != null) {
+                    return runs;
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TrainingCancelledException("Training was interrupted.", false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("A restart failed.", cause);
+        }
+    }
+
+    /**
+     * One run of the algorithm from a new initialization.
+     *
+     * @param done Counts the iterations of all the restarts, a converged run counting the ones it skips.
+     */
+    private Run _run(double[][] X, double[] weights, SplittableRandom random, double[] norms, FilteringTree tree,
+                     SnapshotRenderer renderer, AtomicInteger done) {
         int nSamples = X.length;
         int nFeatures = X[0].length;
+        double[][] centroids = CentroidInitializer.initialize(_init, X, weights, _k, random);
 
-        this._centroids = new double[_k][nFeatures];
-        
-        // Initialize centroids by choosing random points from the data
-        for (int i = 0; i < _k; i++) {
-            int randomIndex = this._random.nextInt(nSamples);
-            this._centroids[i] = Arrays.copyOf(X[randomIndex], nFeatures);
-        }
+        TriangleBounds bounds = (_algorithm.equals("lloyd") || tree != null) ? null
+            : new TriangleBounds(nSamples, _k, _algorithm);
+        ClusterSums sums = new ClusterSums(nSamples, _k, nFeatures);
+        int[] labels = new int[nSamples];
+        int[] previous = new int[nSamples];
+        Arrays.fill(labels, -1); // Every sample moves into its first cluster on the first iteration
 
+        int nIter = 0;
         for (int iter = 0; iter < _maxIter; iter++) {
-            // Step 1: Assign samples to nearest centroids
-            _clusters = _createClusters();
+            if (_control != null) {
+                _control.checkpoint();
+            }
+            nIter = iter + 1;
 
-            // Plot centroid updates live
-            if (_plotSteps) {
-                plotLiveClusters(iter, _X, _centroids, _clusters);
+            // Step 1: Assign samples to nearest centroids
+            System.arraycopy(labels, 0, previous, 0, nSamples);
+            if (tree != null) {
+                tree.assign(centroids, labels);
+            } else if (bounds == null) {
+                _assignLabels(X, centroids, norms, labels);
+            } else {
+                bounds.assign(X, centroids, labels, iter == 0);
             }
 
-            // Step 2: Recompute centroids
-            double[][] oldCentroids = _centroids;
-            _centroids = _getCentroids();
-            // Plot cluster assignments after centroids update
-            if (_plotSteps) {
-                plotLiveClusters(iter, _X, _centroids, _clusters);
+            // Step 2: Move the samples that changed cluster in the running sums and recompute the centroids
+            int moved = sums.update(X, weights, previous, labels);
+            if (moved > 0) {
+                double[][] oldCentroids = centroids;
+                centroids = sums.centroids(oldCentroids);
+                if (bounds != null) {
+                    bounds.moveCentroids(oldCentroids, centroids, labels);
+                }
+                if (renderer != null) {
+                    renderer.offer(nIter, labels, centroids, false);
+                }
             }
 
-            // Step 3: Check for convergence
-            if (_isConverged(oldCentroids, _centroids)) {
+            // Step 3: Converged once no sample changes cluster, the centroids can no longer move
+            int skipped = (moved == 0) ? _maxIter - nIter : 0; // Iterations a converged run will not need
+            done.addAndGet(1 + skipped);
+            if (moved == 0) {
                 break;
             }
+        }
+        // Final assignment to the final centroids, which keeps the distances for score() and getDistances()
+        double[] distances = new double[nSamples];
+        _assignWithDistances(X, centroids, labels, distances);
+        return new Run(centroids, labels, distances, nIter, _weightedSum(distances, weights));
+    }
+    /**
+     * Fits the model on rows streamed from a source, without holding the data in memory.
+     * <p>
+     * A first pass keeps a uniform sample of {@value #INIT_SAMPLE_ROWS} rows (reservoir sampling) for the initialization.
+     * Every iteration is then one sequential pass over the source in chunks of {@value RowChunks#STREAM_CHUNK_ROWS}
+     * rows: a reader thread reads up to {@value RowChunks#PREFETCH_CHUNKS} chunks ahead while the current one is assigned
+     * and summed in parallel, so I/O overlaps with the distance computations. Memory stays bounded by a few chunks whatever the size
+     * of the source. The assignment is Lloyd's and the fit stops when a pass leaves the centroids unchanged, which is
+     * when no sample changed cluster; {@code nInit} restarts are not run. A converged pass also gives the inertia for
+     * {@link #score()}; when {@code maxIter} is reached first, one more pass measures the inertia of the final centroids.
+     * The model keeps no labels nor training data, see {@link #score(RowSource)}, and takes no snapshots.
+     * </p>
+     *
+     * @param source The rows, read once per iteration plus once for the initialization, and once more for the inertia
+     *               if the fit does not converge.
+     * @throws IOException If reading the source fails.
+     */
+    public void fit(RowSource source) throws IOException {
+        int nFeatures = source.getNFeatures();
+        SplittableRandom random = (_seed != null) ? new SplittableRandom(_seed) : new SplittableRandom();
 
+        // Pass 0: uniform sample of the rows for the initialization
+        List<double[]> reservoir = new ArrayList<>();
+        long[] seen = {0};
+        RowChunks.stream(source, chunk -> {
+            for (double[] row : chunk) {
+                long index = seen[0]++;
+                if (index < INIT_SAMPLE_ROWS) {
+                    reservoir.add(row);
+                } else {
+                    long slot = random.nextLong(index + 1);
+                    if (slot < INIT_SAMPLE_ROWS) {
+                        reservoir.set((int) slot, row);
+                    }
+                }
+            }
+        });
+        double[][] centroids = CentroidInitializer.initialize(_init, reservoir.toArray(new double[0][]), _k, random);
+        reservoir.clear();
 
+        int[] unassigned = new int[RowChunks.STREAM_CHUNK_ROWS];
+        Arrays.fill(unassigned, -1); // Every pass sums all the samples from scratch
+        int[] labels = new int[RowChunks.STREAM_CHUNK_ROWS];
+        double[] distances = new double[RowChunks.STREAM_CHUNK_ROWS];
+        long startNanos = System.nanoTime();
+        int nIter = 0;
+        double inertia = Double.NaN; // Known once the centroids of a pass are the ones it assigned to
+        for (int iter = 0; iter < _maxIter; iter++) {
+            if (_control != null) {
+                _control.checkpoint();
+            }
+            nIter = iter + 1;
+            ClusterSums sums = new ClusterSums(RowChunks.STREAM_CHUNK_ROWS, _k, nFeatures);
+            double[][] current = centroids;
+            double[] passInertia = {0.0};
+            RowChunks.stream(source, chunk -> {
+                if (_control != null) {
+                    _control.checkpoint();
+                }
+                _assignWithDistances(chunk, current, labels, distances);
+                sums.update(chunk, null, unassigned, labels);
+                passInertia[0] += _weightedSum(chunk.length, distances, null);
+            });
+            centroids = sums.centroids(current);
+            if (_control != null) {
+                _control.reportProgress(iter + 1, _maxIter, startNanos, 0);
+            }
+            if (Arrays.deepEquals(centroids, current)) {
+                inertia = passInertia[0];
+                break; // Same sums in the same order: no sample changed cluster
+            }
         }
+        if (Double.isNaN(inertia)) {
+            inertia = _streamedInertia(source, centroids); // The last pass measured the centroids it started from
+        }
+        this._X = null;
+        this._sampleWeights = null;
+        this._distances = null;
+        this._inertia = inertia;
+        this._labels = null;
+        this._centroids = centroids;
+        this._nIter = nIter;
+    }
+
+    /**
+     * Calculates the inertia of the rows of a source, streamed like in {@link #fit(RowSource)}.
+     *
+     * @param source The rows.
+     * @return The sum of squared distances between the rows and their closest centroid.
+     * @throws IOException If reading the source fails.
+     */
+    public double score(RowSource source) throws IOException {
+        return _streamedInertia(source, _centroids);
     }
+
+    private double _streamedInertia(RowSource source, double[][] centroids) throws IOException {
+        double[] score = {0.0};
+        int[] labels = new int[RowChunks.STREAM_CHUNK_ROWS];
+        double[] distances = new double[RowChunks.STREAM_CHUNK_ROWS];
+        RowChunks.stream(source, chunk -> {
+            _assignWithDistances(chunk, centroids, labels, distances);
+            score[0] += _weightedSum(chunk.length, distances, null);
+        });
+        return score[0];
+    }
+
     @Override
     public void fit(double[][] dataPoints, int[] labels) {
         // Not applicable for unsupervised models
@@ -216,38 +513,96 @@ public class KMeans implements Model{
     }
 
     /**
-     * Assigns each sample to the closest centroid.
-     * 
-     * @return List of clusters, each containing the indices of samples in that cluster.
+     * Assigns each sample to the closest centroid, in parallel over row chunks.
+     *
+     * @param norms The squared norms of the samples, or {@code null} to compute the distances directly.
+     * @param labels Receives the index of the closest centroid of each sample.
      */
-    private List<List<Integer>> _createClusters() {
-        List<List<Integer>> clusters = new ArrayList<>(_k);
-        for (int i = 0; i < _k; i++) {
-            clusters.add(new ArrayList<>());
+    private static void _assignLabels(double[][] X, double[][] centroids, double[] norms, int[] labels) {
+        if (norms == null) {
+            _forEachDistanceBlock(X, centroids, (from, to, block) -> {
+                for (int i = from; i < to; i++) {
+                    labels[i] = _argmin(block[i - from]);
+                }
+            });
+        } else {
+            double[] centroidNorms = _squaredNorms(centroids);
+            RowChunks.forEachRow(X.length, i -> labels[i] = _closestCentroid(X[i], norms[i], centroids, centroidNorms));
         }
+    }
 
-        for (int i = 0; i < _X.length; i++) {
-            double[] sample = _X[i];
-            int closestCentroidIndex = _closestCentroid(sample);
-            clusters.get(closestCentroidIndex).add(i);
-        }
+    /**
+     * Assigns each sample to the closest centroid and keeps the squared distance to it.
+     *
+     * @param labels Receives the index of the closest centroid of each sample.
+     * @param distances Receives the squared distance of each sample to its closest centroid.
+     */
+    private static void _assignWithDistances(double[][] X, double[][] centroids, int[] labels, double[] distances) {
+        _forEachDistanceBlock(X, centroids, (from, to, block) -> {
+            for (int i = from; i < to; i++) {
+                int closest = _argmin(block[i - from]);
+                labels[i] = closest;
+                distances[i] = block[i - from][closest];
+            }
+        });
+    }
 
-        return clusters;
+    /**
+     * Runs {@code action} over blocks of at most {@value #DISTANCE_BLOCK_ROWS} rows, in parallel over row chunks, with
+     * the squared distances between the rows of the block and every centroid.
+     */
+    private static void _forEachDistanceBlock(double[][] X, double[][] centroids, DistanceBlockAction action) {
+        RowChunks.forEachChunk(X.length, (start, end) -> {
+            double[][] block = new double[DISTANCE_BLOCK_ROWS][centroids.length]; // Reused by the blocks of the chunk
+            for (int from = start; from < end; from += DISTANCE_BLOCK_ROWS) {
+                int to = Math.min(end, from + DISTANCE_BLOCK_ROWS);
+                _squaredDistances(X, from, to, centroids, block);
+                action.accept(from, to, block);
+            }
+        });
     }
 
     /**
-     * Finds the index of the closest centroid for a given sample.
-     * 
-     * @param sample The data point.
-     * @return Index of the closest centroid.
+     * The distance kernel of fit, predict, transform and score: the squared distances between the rows {@code from}
+     * to {@code to} of {@code X} and every centroid, into {@code block[i - from]}. Each centroid is compared with the
+     * whole block in turn, while the block rows stay in cache.
+     *
+     * @throws IllegalArgumentException if a row and the centroids have different dimensions.
      */
-    private int _closestCentroid(double[] sample) {
+    private static void _squaredDistances(double[][] X, int from, int to, double[][] centroids, double[][] block) {
+        for (int i = from; i < to; i++) {
+            if (X[i].length != centroids[0].length) {
+                throw new IllegalArgumentException("Points must have the same number of dimensions.");
+            }
+        }
+        for (int i = from; i < to; i++) {
+            double[] sample = X[i];
+            double[] row = block[i - from];
+            for (int c = 0; c < centroids.length; c++) {
+                double[] centroid = centroids[c];
+                double sum = 0.0;
+                for (int j = 0; j < centroid.length; j++) {
+                    double difference = sample[j] - centroid[j];
+                    sum += difference * difference;
+                }
+                row[c] = sum;
+            }
+        }
+    }
+
+    /**
+     * @return The index of the smallest of the squared distances. They are compared after the square root, like the
+     * distances of {@link #_closestCentroid(double[], double[][])}, so ties resolve as in the bound-based algorithms.
+     */
+    private static int _argmin(double[] squaredDistances) {
+        double minSquared = Double.MAX_VALUE;
         double minDistance = Double.MAX_VALUE;
         int closestCentroidIndex = -1;
-        for (int i = 0; i < _centroids.length; i++) {
-            double distance = EuclideanDistance.calculate(sample, _centroids[i]);
-            if (distance < minDistance) {
-                minDistance = distance;
+        for (int i = 0; i < squaredDistances.length; i++) {
+            // The square root is only taken for a smaller squared distance, which is rare past the first centroids
+            if (squaredDistances[i] < minSquared && Math.sqrt(squaredDistances[i]) < minDistance) {
+                minSquared = squaredDistances[i];
+                minDistance = Math.sqrt(minSquared);
                 closestCentroidIndex = i;
             }
         }
@@ -255,41 +610,96 @@ public class KMeans implements Model{
     }
 
     /**
-     * Recomputes the centroids by averaging the samples in each cluster.
-     * 
-     * @return The new centroids.
+     * Sums the first {@code n} values, weighted if {@code weights} is not {@code null}, independently of the number of
+     * threads.
      */
-    private double[][] _getCentroids() {
-        double[][] centroids = new double[_k][_X[0].length];
-        for (int i = 0; i < _k; i++) {
-            List<Integer> cluster = _clusters.get(i);
-            double[] sum = new double[_X[0].length];
-            for (int index : cluster) {
-                for (int j = 0; j < _X[index].length; j++) {
-                    sum[j] += _X[index][j];
-                }
-            }
-            for (int j = 0; j < sum.length; j++) {
-                centroids[i][j] = sum[j] / cluster.size();
+    private static double _weightedSum(int n, double[] values, double[] weights) {
+        return RowChunks.sum(n, i -> (weights != null) ? weights[i] * values[i] : values[i]);
+    }
+
+    private static double _weightedSum(double[] values, double[] weights) {
+        return _weightedSum(values.length, values, weights);
+    }
+
+    /**
+     * Work on the rows {@code from} (inclusive) to {@code to} (exclusive) with their squared distances to the centroids.
+     */
+    @FunctionalInterface
+    private interface DistanceBlockAction {
+        void accept(int from, int to, double[][] block);
+    }
+
+    /**
+     * @return The squared Euclidean norm of every row.
+     */
+    private static double[] _squaredNorms(double[][] X) {
+        double[] norms = new double[X.length];
+        RowChunks.forEachRow(X.length, i -> {
+            double norm = 0.0;
+            for (double value : X[i]) {
+                norm += value * value;
             }
+            norms[i] = norm;
+        });
+        return norms;
+    }
+
+    /**
+     * Squared distance from the norms and a dot product, {@code |x|^2 - 2 x.c + |c|^2}, clamped at zero.
+     */
+    private static double _squaredDistance(double[] sample, double sampleNorm, double[] centroid, double centroidNorm) {
+        double dot = 0.0;
+        for (int j = 0; j < sample.length; j++) {
+            dot += sample[j] * centroid[j];
         }
-        return centroids;
+        return Math.max(0.0, sampleNorm - 2 * dot + centroidNorm);
     }
 
     /**
-     * Checks if the centroids have converged (i.e., no change between iterations).
-     * 
-     * @param oldCentroids The centroids from the previous iteration.
-     * @param centroids The current centroids.
-     * @return True if the centroids have converged, false otherwise.
+     * Groups the sample indices by label, in ascending order.
      */
-    private boolean _isConverged(double[][] oldCentroids, double[][] centroids) {
+    private List<List<Integer>> _clustersFromLabels(int[] labels) {
+        List<List<Integer>> clusters = new ArrayList<>(_k);
         for (int i = 0; i < _k; i++) {
-            if (EuclideanDistance.calculate(oldCentroids[i], centroids[i]) > CONVERGED_FACTOR) {
-                return false;
+            clusters.add(new ArrayList<>());
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] < 0) continue; // Not assigned yet
+            clusters.get(labels[i]).add(i);
+        }
+        return clusters;
+    }
+
+    /**
+     * Finds the index of the closest centroid for a given sample.
+     * 
+     * @param sample The data point.
+     * @return Index of the closest centroid.
+     */
+    private static int _closestCentroid(double[] sample, double[][] centroids) {
+        double minDistance = Double.MAX_VALUE;
+        int closestCentroidIndex = -1;
+        for (int i = 0; i < centroids.length; i++) {
+            double distance = EuclideanDistance.calculate(sample, centroids[i]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closestCentroidIndex = i;
+            }
+        }
+        return closestCentroidIndex;
+    }
+
+    private static int _closestCentroid(double[] sample, double sampleNorm, double[][] centroids, double[] centroidNorms) {
+        double minDistance = Double.MAX_VALUE;
+        int closestCentroidIndex = -1;
+        for (int i = 0; i < centroids.length; i++) {
+            double distance = _squaredDistance(sample, sampleNorm, centroids[i], centroidNorms[i]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closestCentroidIndex = i;
             }
         }
-        return true;
+        return closestCentroidIndex;
     }
 
     /**
@@ -301,9 +711,7 @@ public class KMeans implements Model{
     @Override
     public int[] predict(double[][] X) {
         int[] labels = new int[X.length];
-        for (int i = 0; i < X.length; i++) {
-            labels[i] = _closestCentroid(X[i]);
-        }
+        _assignLabels(X, _centroids, null, labels);
         return labels;
     }
         /**
@@ -314,12 +722,14 @@ public class KMeans implements Model{
      * @return A 2D array where each row is the distance of a sample to each cluster centroid.
      */
     public double[][] transform(double[][] X) {
-        double[][] distances = new double[X.length][_k];
-        for (int i = 0; i < X.length; i++) {
-            for (int j = 0; j < _k; j++) {
-                distances[i][j] = EuclideanDistance.calculate(X[i], _centroids[j]);
+        double[][] distances = new double[X.length][_centroids.length];
+        _forEachDistanceBlock(X, _centroids, (from, to, block) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < distances[i].length; j++) {
+                    distances[i][j] = Math.sqrt(block[i - from][j]);
+                }
             }
-        }
+        });
         return distances;
     }
 
@@ -342,53 +752,198 @@ public class KMeans implements Model{
      */
     public int[] fitPredict(double[][] X) {
         fit(X); // Fit the model first
-        return predict(X); // Then predict the labels
+        return _labels.clone(); // The fit already assigned every sample to its final centroid
     }
 
     /**
      * Calculates "Inertia" score based on the sum of squared distances between samples and their assigned centroids.
+     * The fit already computes it, so this takes constant time.
      * 
-     * @return The inertia score (sum of squared distances).
+     * @return The inertia score (sum of squared distances), weighted after a weighted fit.
+     * @throws IllegalStateException if the model is not fitted.
      */
-
-  
     public double score() {
-        double score = 0.0;
-        for (int i = 0; i < _X.length; i++) {
-            int closestCentroidIndex = _closestCentroid(_X[i]);
-            score += EuclideanDistance.calculate(_X[i], _centroids[closestCentroidIndex], true);
+        if (Double.isNaN(_inertia)) {
+            throw new IllegalStateException("No inertia available: fit the model first.");
         }
-        return score;
+        return _inertia;
     }
 
 
     /**
-     * Plot function to show clusters and centroids live.
+     * Writes k, the iteration limit, the seed and the centroids (see {@link net.acimon.jmlearn.utils.ModelSerializer}).
+     * The training data and cluster assignments are not saved.
      *
-     * @param iter The current iteration.
-     * @param data The data points.
-     * @param centroids The centroids.
-     * @param clusters The cluster assignments.
+     * @param out The destination.
+     * @throws IOException If writing fails.
      */
-    private void plotLiveClusters(int iter, double[][] data, double[][] centroids, List<List<Integer>> clusters) {
-        List<double[]> points = new ArrayList<>();
-        List<Integer> labels = new ArrayList<>();
+    public void writeTo(ModelOutput out) throws IOException {
+        out.writeInt(_k);
+        out.writeInt(_maxIter);
+        out.writeBoolean(_seed != null);
+        out.writeLong((_seed != null) ? _seed : 0L);
+        int nFeatures = (_centroids != null) ? _centroids[0].length : 0;
+        out.writeBoolean(_centroids != null);
+        out.writeInt(nFeatures);
+        if (_centroids != null) {
+            for (double[] centroid : _centroids) {
+                out.writeDoubles(centroid, 0, nFeatures);
+            }
+        }
+    }
 
-        for (int i = 0; i < data.length; i++) {
-            points.add(new double[]{data[i][0], data[i][1]});
-            int clusterIndex = _closestCentroid(data[i]);
-            labels.add(clusterIndex);
+    /**
+     * Reads a model written by {@link #writeTo(ModelOutput)}. It can predict and transform right away.
+     *
+     * @param in The source.
+     * @return The model with its centroids, without visualization.
+     * @throws IOException If reading fails or the data is corrupted.
+     */
+    public static KMeans readFrom(ModelInput in) throws IOException {
+        int k = in.readInt();
+        int maxIter = in.readInt();
+        boolean hasSeed = in.readBoolean();
+        long seed = in.readLong();
+        KMeans kmeans = new KMeans(k, maxIter, hasSeed ? seed : null, false);
+        boolean fitted = in.readBoolean();
+        int nFeatures = in.readLength();
+        if (fitted) {
+            kmeans._centroids = new double[k][];
+            for (int i = 0; i < k; i++) {
+                kmeans._centroids[i] = in.readDoubles(nFeatures);
+            }
         }
-        try {
-            // Slow  the loop to visualize.
-            Thread.sleep(50); 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return kmeans;
+    }
+
+    /**
+     * Sets the algorithm of the assignment step. "lloyd" computes the distance from every sample to every centroid at
+     * each iteration. "elkan" and "hamerly" keep, for every sample, an upper bound on the distance to its centroid and
+     * lower bounds on the distances to the others (one per centroid for Elkan, one for all of them for Hamerly),
+     * moved by the centroid shifts after each update. The triangle inequality then skips most distance computations
+     * once the centroids settle. "yinyang" groups the centroids into blocks of about ten and keeps one lower bound per
+     * sample and block, so a whole block is skipped at once. Pruning only skips centroids that are strictly farther, so
+     * the labels, centroids and number of iterations are identical to "lloyd". Elkan prunes more and suits many
+     * clusters; Hamerly needs less memory ({@code O(n)} instead of {@code O(n * k)}) and suits few clusters or low
+     * dimensions; Yinyang needs {@code O(n * k / 10)} and suits very large k, e.g. vector-quantization codebooks.
+     * "filtering" (Kanungo et al.) builds a KD-tree over the samples once per fit and pushes the candidate centroids
+     * down the tree at each iteration, dropping those that cannot own any sample of a node's bounding box; a node left
+     * with one candidate is labeled whole. It also gives the same results as "lloyd" and suits low dimensions (up to
+     * about 8, e.g. geospatial data), where it costs far less than {@code O(n * k)} per iteration.
+     *
+     * @param algorithm The assignment algorithm: "lloyd", "elkan", "hamerly", "yinyang" or "filtering".
+     * @throws IllegalArgumentException if the algorithm is invalid.
+     */
+    public void setAlgorithm(String algorithm) {
+        if (!Arrays.asList(VALID_ALGORITHMS).contains(algorithm)) {
+            throw new IllegalArgumentException("Invalid algorithm. Must be one of: " + String.join(", ", VALID_ALGORITHMS) + ".");
         }
+        this._algorithm = algorithm;
+    }
+    public String getAlgorithm() {
+        return _algorithm;
+    }
 
-        PlotData.plotDataWithCentroids(points, labels, centroids, "KMeans Iteration " + iter, _frame, _chartPanel);
+    /**
+     * Sets how the initial centroids are chosen: "k-means++" (the default) spreads them by drawing each one with a
+     * probability proportional to its squared distance to the previous ones, "k-means||" does the same with a few
+     * parallel oversampling passes, which scales better to large data and large k, and "random" draws k distinct
+     * rows. Both k-means variants need far fewer iterations than random rows and avoid empty clusters.
+     *
+     * @param init The initialization: "k-means++", "k-means||" or "random".
+     * @throws IllegalArgumentException if the initialization is invalid.
+     */
+    public void setInit(String init) {
+        if (!Arrays.asList(CentroidInitializer.VALID_INITS).contains(init)) {
+            throw new IllegalArgumentException("Invalid init. Must be one of: " + String.join(", ", CentroidInitializer.VALID_INITS) + ".");
+        }
+        this._init = init;
     }
-    
+    public String getInit() {
+        return _init;
+    }
+
+    /**
+     * Sets the number of restarts of each fit. The restarts run concurrently, each from its own initialization drawn
+     * from a generator derived from the seed, and the fit keeps the one with the lowest inertia. A seeded fit gives the
+     * same result whatever the number of threads, and {@code nInit = 1} gives the same result as before restarts.
+     *
+     * @param nInit The number of restarts, at least 1.
+     * @throws IllegalArgumentException if nInit is less than 1.
+     */
+    public void setNInit(int nInit) {
+        if (nInit < 1) {
+            throw new IllegalArgumentException("nInit must be at least 1.");
+        }
+        this._nInit = nInit;
+    }
+    public int getNInit() {
+        return _nInit;
+    }
+
+    /**
+     * Computes the squared norm of every sample once per fit and shares it across the restarts, so the Lloyd
+     * assignment step and the final inertia get each distance from a single dot product,
+     * {@code |x|^2 - 2 x.c + |c|^2}. It is faster with many features but loses precision when the samples lie far from
+     * the origin relative to their spread, and near-ties may then break differently than with direct distances.
+     * Elkan and Hamerly always compute their distances directly.
+     *
+     * @param precomputeNorms Whether to use precomputed squared norms.
+     */
+    public void setPrecomputeNorms(boolean precomputeNorms) {
+        this._precomputeNorms = precomputeNorms;
+    }
+    public boolean getPrecomputeNorms() {
+        return _precomputeNorms;
+    }
+
+    /**
+     * Writes the state after each iteration, and the final state, as numbered PNG files ({@code kmeans-0001.png},
+     * ...) through {@link net.acimon.jmlearn.utils.PlotData}. No window is needed, so it works on headless hosts.
+     *
+     * @param directory The directory of the frames, created if needed, or {@code null} to stop writing them.
+     */
+    public void setPlotDirectory(Path directory) {
+        this._plotDirectory = directory;
+    }
+    public Path getPlotDirectory() {
+        return _plotDirectory;
+    }
+
+    /**
+     * @param listener Receives the state after each iteration, and the final state, or {@code null} for none.
+     */
+    public void setSnapshotListener(SnapshotListener listener) {
+        this._snapshotListener = listener;
+    }
+    public SnapshotListener getSnapshotListener() {
+        return _snapshotListener;
+    }
+
+    /**
+     * Sets how often snapshots are taken during a fit. Iterations in between are not rendered, and a snapshot that
+     * arrives while the previous one is still being rendered replaces the pending one.
+     *
+     * @param maxFrameRate The maximum number of snapshots per second.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    public void setMaxFrameRate(double maxFrameRate) {
+        if (!(maxFrameRate > 0)) {
+            throw new IllegalArgumentException("The frame rate must be positive.");
+        }
+        this._maxFrameRate = maxFrameRate;
+    }
+    public double getMaxFrameRate() {
+        return _maxFrameRate;
+    }
+
+    /**
+     * @return The number of iterations run by the last fit.
+     */
+    public int getNIter() {
+        return _nIter;
+    }
+
     // Getters.
     public int getK() {
         return _k;
@@ -402,10 +957,742 @@ public class KMeans implements Model{
         return _centroids;
     }
 
+    /**
+     * @return The indices of the training samples of each cluster, built from {@link #getLabels()}; empty lists
+     * before the first fit.
+     */
     public List<List<Integer>> getClusters() {
-        return _clusters;
+        return _clustersFromLabels((_labels != null) ? _labels : new int[0]);
+    }
+
+    /**
+     * @return The cluster of each training sample of the last fit, or {@code null} before the first fit.
+     */
+    public int[] getLabels() {
+        return _labels;
     }
+
+    /**
+     * @return The squared distance of each training sample to its centroid, or {@code null} after a streaming fit.
+     */
+    public double[] getDistances() {
+        return _distances;
+    }
+    @Override
     public Long getSeed(){
         return this._seed;
     }
+
+    /**
+     * Sets the control checked before every iteration. Its listener is called on the thread of the fit with the
+     * iterations the restarts have run so far, out of {@code nInit * maxIter}. A stopped fit throws {@link net.acimon.jmlearn.utils.TrainingCancelledException} and
+     * leaves the centroids of the previous fit.
+     *
+     * @param control The control of the next fits, or {@code null} for none.
+     */
+    @Override
+    public void setTrainingControl(TrainingControl control) {
+        this._control = control;
+    }
+    @Override
+    public TrainingControl getTrainingControl() {
+        return _control;
+    }
+
+    /**
+     * @param seed The seed of the centroid initialization of the next fits, or {@code null} for a fresh one per fit.
+     */
+    @Override
+    public void setSeed(Long seed) {
+        this._seed = seed;
+    }
+
+    /**
+     * The outcome of one restart.
+     */
+    private static final class Run {
+        final double[][] centroids;
+        final int[] labels;
+        final double[] distances;
+        final int nIter;
+        final double inertia;
+
+        Run(double[][] centroids, int[] labels, double[] distances, int nIter, double inertia) {
+            this.centroids = centroids;
+            this.labels = labels;
+            this.distances = distances;
+            this.nIter = nIter;
+            this.inertia = inertia;
+        }
+    }
+
+    /**
+     * Running per-cluster sums, counts and weights of the samples.
+     * <p>
+     * After each assignment step only the samples whose label changed are subtracted from their old cluster and added
+     * to the new one, so late iterations, where few samples move, barely touch the data and allocate nothing. The
+     * moves are accumulated per {@link RowChunks} partition into buffers allocated once per fit, then merged in
+     * partition order, so the sums do not depend on the number of threads.
+     * </p>
+     */
+    private static final class ClusterSums {
+
+        private final double[][] _sums; // Weighted sums
+        private final int[] _counts;
+        private final double[] _masses; // Sum of the weights, equal to the counts without weights
+        private final double[][][] _partSums;
+        private final int[][] _partCounts;
+        private final double[][] _partMasses;
+        private final int[] _partMoved;
+
+        ClusterSums(int nSamples, int k, int nFeatures) {
+            int parts = RowChunks.partitions(nSamples);
+            this._sums = new double[k][nFeatures];
+            this._counts = new int[k];
+            this._masses = new double[k];
+            this._partSums = new double[parts][k][nFeatures];
+            this._partCounts = new int[parts][k];
+            this._partMasses = new double[parts][k];
+            this._partMoved = new int[parts];
+        }
+
+        /**
+         * Moves every sample of {@code X} whose label differs from its previous one (-1 for none).
+         *
+         * @param weights The weight of each sample, or {@code null} for equal weights.
+         * @return The number of samples that moved.
+         */
+        int update(double[][] X, double[] weights, int[] previous, int[] labels) {
+            int nSamples = X.length; // The label arrays may be longer, e.g. for the last chunk of a stream
+            int parts = _partSums.length;
+            IntStream.range(0, parts).parallel().forEach(p -> {
+                double[][] sums = _partSums[p];
+                int[] counts = _partCounts[p];
+                double[] masses = _partMasses[p];
+                if (_partMoved[p] > 0) {
+                    for (double[] sum : sums) {
+                        Arrays.fill(sum, 0.0);
+                    }
+                    Arrays.fill(counts, 0);
+                    Arrays.fill(masses, 0.0);
+                }
+                int moved = 0;
+                for (int i = RowChunks.partitionStart(nSamples, parts, p); i < RowChunks.partitionStart(nSamples, parts, p + 1); i++) {
+                    int from = previous[i];
+                    int to = labels[i];
+                    if (from == to) continue;
+                    double[] sample = X[i];
+                    double weight = (weights != null) ? weights[i] : 1.0;
+                    if (from >= 0) {
+                        double[] sum = sums[from];
+                        for (int j = 0; j < sample.length; j++) {
+                            sum[j] -= weight * sample[j];
+                        }
+                        counts[from]--;
+                        masses[from] -= weight;
+                    }
+                    double[] sum = sums[to];
+                    for (int j = 0; j < sample.length; j++) {
+                        sum[j] += weight * sample[j];
+                    }
+                    counts[to]++;
+                    masses[to] += weight;
+                    moved++;
+                }
+                _partMoved[p] = moved;
+            });
+
+            int moved = 0;
+            for (int p = 0; p < parts; p++) {
+                if (_partMoved[p] == 0) continue;
+                moved += _partMoved[p];
+                for (int c = 0; c < _sums.length; c++) {
+                    _counts[c] += _partCounts[p][c];
+                    _masses[c] += _partMasses[p][c];
+                    for (int j = 0; j < _sums[c].length; j++) {
+                        _sums[c][j] += _partSums[p][c][j];
+                    }
+                }
+            }
+            for (int c = 0; c < _sums.length; c++) {
+                if (_counts[c] == 0) {
+                    Arrays.fill(_sums[c], 0.0); // Drop the rounding residue of the samples that left
+                    _masses[c] = 0.0;
+                }
+            }
+            return moved;
+        }
+
+        /**
+         * @param current The current centroids, kept for empty clusters (or clusters of zero weight).
+         * @return The weighted mean of each cluster.
+         */
+        double[][] centroids(double[][] current) {
+            double[][] centroids = new double[_sums.length][];
+            for (int c = 0; c < _sums.length; c++) {
+                if (_counts[c] == 0 || !(_masses[c] > 0)) {
+                    centroids[c] = current[c].clone();
+                    continue;
+                }
+                centroids[c] = new double[_sums[c].length];
+                for (int j = 0; j < _sums[c].length; j++) {
+                    centroids[c][j] = _sums[c][j] / _masses[c];
+                }
+            }
+            return centroids;
+        }
+    }
+
+    /**
+     * Distance bounds of the Elkan, Hamerly and Yinyang assignment steps.
+     * <p>
+     * {@code upper[i]} bounds the distance from sample {@code i} to its centroid from above. Elkan keeps
+     * {@code lower[i][j]}, a lower bound on the distance to every centroid {@code j}; Hamerly keeps {@code lowest[i]}, a
+     * lower bound on the distance to every centroid but its own. Yinyang (Ding et al.) groups the centroids into blocks
+     * of about {@value #GROUP_SIZE} by clustering the initial centroids, and keeps {@code groupLower[i][g]}, a lower
+     * bound on the distance to every centroid of group {@code g} but the sample's own: a group is only scanned when its
+     * bound does not rule it out. Every exact distance goes through
+     * {@link EuclideanDistance#calculate(double[], double[])} and ties go to the smallest centroid index, as in
+     * {@link #_closestCentroid(double[], double[][])}. Pruning tests are strict and carry a small relative slack, so a centroid is
+     * only skipped when it is farther than the assigned one even with floating-point rounding in the bounds.
+     * </p>
+     */
+    private static final class TriangleBounds {
+
+        private static final double BOUND_SLACK = 1e-9;
+        private static final int GROUP_SIZE = 10; // Centroids per Yinyang group, memory is n * k / GROUP_SIZE bounds
+        private static final int GROUPING_ITERATIONS = 5; // Lloyd iterations grouping the initial centroids
+
+        private final boolean _elkan;
+        private final boolean _yinyang;
+        private final double[] _upper;
+        private final double[][] _lower; // Elkan only
+        private final double[] _lowest; // Hamerly only
+        private double[][] _groupLower; // Yinyang only, allocated with the groups
+        private int[] _groupOf; // Yinyang only: the group of each centroid
+        private int[][] _groups; // Yinyang only: the centroids of each group, ascending
+
+        TriangleBounds(int nSamples, int k, String algorithm) {
+            this._elkan = algorithm.equals("elkan");
+            this._yinyang = algorithm.equals("yinyang");
+            this._upper = new double[nSamples];
+            this._lower = _elkan ? new double[nSamples][k] : null;
+            this._lowest = (_elkan || _yinyang) ? null : new double[nSamples];
+        }
+
+        /**
+         * Whether {@code upper} is below {@code lower} even after widening both by the slack.
+         */
+        private static boolean strictlyBelow(double upper, double lower) {
+            return upper * (1 + BOUND_SLACK) < lower * (1 - BOUND_SLACK);
+        }
+
+        /**
+         * Assigns every sample to its closest centroid, computing all distances on the first iteration and only the
+         * ones the bounds cannot rule out afterwards.
+         */
+        void assign(double[][] X, double[][] centroids, int[] labels, boolean first) {
+            int k = centroids.length;
+            if (_yinyang) {
+                if (first) {
+                    groupCentroids(centroids);
+                    _groupLower = new double[X.length][_groups.length];
+                }
+                RowChunks.forEachRow(X.length, i -> {
+                    if (first) {
+                        scanAllYinyang(X[i], centroids, labels, i);
+                    } else {
+                        assignYinyang(X[i], centroids, labels, i);
+                    }
+                });
+                return;
+            }
+            double[][] centerDistances = new double[k][k];
+            double[] halfNearest = new double[k]; // Half the distance from each centroid to its nearest other centroid
+            Arrays.fill(halfNearest, Double.POSITIVE_INFINITY);
+            for (int a = 0; a < k; a++) {
+                for (int b = a + 1; b < k; b++) {
+                    double distance = EuclideanDistance.calculate(centroids[a], centroids[b]);
+                    centerDistances[a][b] = distance;
+                    centerDistances[b][a] = distance;
+                    halfNearest[a] = Math.min(halfNearest[a], 0.5 * distance);
+                    halfNearest[b] = Math.min(halfNearest[b], 0.5 * distance);
+                }
+            }
+
+            // Every sample only touches its own bounds and label, so the chunks run independently
+            RowChunks.forEachRow(X.length, i -> {
+                if (first) {
+                    scanAll(X[i], centroids, labels, i);
+                } else if (_elkan) {
+                    assignElkan(X[i], centroids, centerDistances, halfNearest, labels, i);
+                } else {
+                    assignHamerly(X[i], centroids, halfNearest, labels, i);
+                }
+            });
+        }
+
+        /**
+         * Computes every distance of sample {@code i} and resets its bounds to them.
+         */
+        private void scanAll(double[] sample, double[][] centroids, int[] labels, int i) {
+            double best = Double.MAX_VALUE;
+            double second = Double.MAX_VALUE;
+            int label = -1;
+            for (int j = 0; j < centroids.length; j++) {
+                double distance = EuclideanDistance.calculate(sample, centroids[j]);
+                if (_elkan) {
+                    _lower[i][j] = distance;
+                }
+                if (distance < best) {
+                    if (label != -1) {
+                        second = Math.min(second, best);
+                    }
+                    best = distance;
+                    label = j;
+                } else {
+                    second = Math.min(second, distance);
+                }
+            }
+            labels[i] = label;
+            _upper[i] = best;
+            if (!_elkan) {
+                _lowest[i] = second;
+            }
+        }
+
+        private void assignElkan(double[] sample, double[][] centroids, double[][] centerDistances,
+                                 double[] halfNearest, int[] labels, int i) {
+            int label = labels[i];
+            if (strictlyBelow(_upper[i], halfNearest[label])) return;
+
+            boolean exact = false;
+            for (int j = 0; j < centroids.length; j++) {
+                if (j == label) continue;
+                if (strictlyBelow(_upper[i], _lower[i][j]) || strictlyBelow(_upper[i], 0.5 * centerDistances[label][j])) {
+                    continue;
+                }
+                if (!exact) {
+                    _upper[i] = EuclideanDistance.calculate(sample, centroids[label]);
+                    _lower[i][label] = _upper[i];
+                    exact = true;
+                    if (strictlyBelow(_upper[i], _lower[i][j]) || strictlyBelow(_upper[i], 0.5 * centerDistances[label][j])) {
+                        continue;
+                    }
+                }
+                double distance = EuclideanDistance.calculate(sample, centroids[j]);
+                _lower[i][j] = distance;
+                if (distance < _upper[i] || (distance == _upper[i] && j < label)) {
+                    label = j;
+                    _upper[i] = distance;
+                }
+            }
+            labels[i] = label;
+        }
+
+        private void assignHamerly(double[] sample, double[][] centroids, double[] halfNearest, int[] labels, int i) {
+            double bound = Math.max(halfNearest[labels[i]], _lowest[i]);
+            if (strictlyBelow(_upper[i], bound)) return;
+            _upper[i] = EuclideanDistance.calculate(sample, centroids[labels[i]]);
+            if (strictlyBelow(_upper[i], bound)) return;
+            scanAll(sample, centroids, labels, i);
+        }
+
+        /**
+         * Groups the centroids with a few Lloyd iterations over the centroids themselves, started from evenly spaced
+         * ones; empty groups are dropped. The groups stay fixed for the whole fit.
+         */
+        private void groupCentroids(double[][] centroids) {
+            int k = centroids.length;
+            int nGroups = (k + GROUP_SIZE - 1) / GROUP_SIZE;
+            int[] groupOf = new int[k];
+            if (nGroups > 1) {
+                double[][] centers = new double[nGroups][];
+                for (int g = 0; g < nGroups; g++) {
+                    centers[g] = centroids[(int) ((long) k * g / nGroups)].clone();
+                }
+                for (int iter = 0; iter < GROUPING_ITERATIONS; iter++) {
+                    double[][] assigned = centers;
+                    IntStream.range(0, k).parallel().forEach(j -> groupOf[j] = _closestCentroid(centroids[j], assigned));
+                    double[][] sums = new double[nGroups][centroids[0].length];
+                    int[] counts = new int[nGroups];
+                    for (int j = 0; j < k; j++) {
+                        counts[groupOf[j]]++;
+                        for (int f = 0; f < centroids[j].length; f++) {
+                            sums[groupOf[j]][f] += centroids[j][f];
+                        }
+                    }
+                    for (int g = 0; g < nGroups; g++) {
+                        if (counts[g] == 0) {
+                            sums[g] = centers[g]; // Keep the center of an empty group
+                            continue;
+                        }
+                        for (int f = 0; f < sums[g].length; f++) {
+                            sums[g][f] /= counts[g];
+                        }
+                    }
+                    centers = sums;
+                }
+            }
+
+            // Number the non-empty groups in order and list their centroids
+            int[] sizes = new int[nGroups];
+            for (int j = 0; j < k; j++) {
+                sizes[groupOf[j]]++;
+            }
+            int[] renumber = new int[nGroups];
+            int nonEmpty = 0;
+            for (int g = 0; g < nGroups; g++) {
+                renumber[g] = (sizes[g] > 0) ? nonEmpty++ : -1;
+            }
+            _groups = new int[nonEmpty][];
+            for (int g = 0; g < nGroups; g++) {
+                if (sizes[g] > 0) {
+                    _groups[renumber[g]] = new int[sizes[g]];
+                }
+            }
+            int[] filled = new int[nonEmpty];
+            _groupOf = new int[k];
+            for (int j = 0; j < k; j++) {
+                int group = renumber[groupOf[j]];
+                _groupOf[j] = group;
+                _groups[group][filled[group]++] = j;
+            }
+        }
+
+        /**
+         * Computes every distance of sample {@code i} and resets its group bounds to them.
+         */
+        private void scanAllYinyang(double[] sample, double[][] centroids, int[] labels, int i) {
+            double[] groupLower = _groupLower[i];
+            double best = Double.MAX_VALUE;
+            int label = -1;
+            for (int g = 0; g < _groups.length; g++) {
+                double groupMin = Double.POSITIVE_INFINITY;
+                for (int j : _groups[g]) {
+                    double distance = EuclideanDistance.calculate(sample, centroids[j]);
+                    groupMin = Math.min(groupMin, distance);
+                    if (distance < best || (distance == best && j < label)) {
+                        best = distance;
+                        label = j;
+                    }
+                }
+                groupLower[g] = groupMin;
+            }
+            // The own group's bound leaves the own centroid out
+            double others = Double.POSITIVE_INFINITY;
+            for (int j : _groups[_groupOf[label]]) {
+                if (j != label) {
+                    others = Math.min(others, EuclideanDistance.calculate(sample, centroids[j]));
+                }
+            }
+            groupLower[_groupOf[label]] = others;
+            labels[i] = label;
+            _upper[i] = best;
+        }
+
+        private void assignYinyang(double[] sample, double[][] centroids, int[] labels, int i) {
+            double[] groupLower = _groupLower[i];
+            double globalLower = Double.POSITIVE_INFINITY;
+            for (double bound : groupLower) {
+                globalLower = Math.min(globalLower, bound);
+            }
+            if (strictlyBelow(_upper[i], globalLower)) return;
+            int oldLabel = labels[i];
+            double upper = EuclideanDistance.calculate(sample, centroids[oldLabel]);
+            _upper[i] = upper;
+            if (strictlyBelow(upper, globalLower)) return;
+
+            int oldGroup = _groupOf[oldLabel];
+            double best = upper;
+            int label = oldLabel;
+            int bestGroup = oldGroup;
+            double bestGroupOthers = groupLower[oldGroup]; // Bound of the others in the label's group
+            boolean oldGroupScanned = false;
+            for (int g = 0; g < _groups.length; g++) {
+                if (strictlyBelow(best, groupLower[g])) continue; // Every centroid of the group is farther
+                double min = Double.POSITIVE_INFINITY;
+                double second = Double.POSITIVE_INFINITY;
+                int minIndex = -1;
+                for (int j : _groups[g]) {
+                    double distance = (j == oldLabel) ? upper : EuclideanDistance.calculate(sample, centroids[j]);
+                    if (distance < min) {
+                        second = min;
+                        min = distance;
+                        minIndex = j;
+                    } else {
+                        second = Math.min(second, distance);
+                    }
+                }
+                groupLower[g] = min;
+                oldGroupScanned |= (g == oldGroup);
+                if (minIndex == label) {
+                    bestGroupOthers = second;
+                } else if (min < best || (min == best && minIndex < label)) {
+                    best = min;
+                    label = minIndex;
+                    bestGroup = g;
+                    bestGroupOthers = second;
+                }
+            }
+            if (label != oldLabel && !oldGroupScanned) {
+                groupLower[oldGroup] = Math.min(groupLower[oldGroup], upper); // The old centroid is now an other
+            }
+            groupLower[bestGroup] = bestGroupOthers;
+            labels[i] = label;
+            _upper[i] = best;
+        }
+
+        /**
+         * Moves the bounds by the centroid shifts of an update step.
+         */
+        void moveCentroids(double[][] oldCentroids, double[][] centroids, int[] labels) {
+            int k = centroids.length;
+            double[] shifts = new double[k];
+            int maxShiftIndex = 0;
+            for (int j = 0; j < k; j++) {
+                shifts[j] = EuclideanDistance.calculate(oldCentroids[j], centroids[j]);
+                if (shifts[j] > shifts[maxShiftIndex]) {
+                    maxShiftIndex = j;
+                }
+            }
+            double secondMaxShift = 0.0;
+            for (int j = 0; j < k; j++) {
+                if (j != maxShiftIndex) {
+                    secondMaxShift = Math.max(secondMaxShift, shifts[j]);
+                }
+            }
+
+            int largest = maxShiftIndex;
+            double secondLargest = secondMaxShift;
+            double[] groupShifts = null;
+            if (_yinyang) {
+                groupShifts = new double[_groups.length];
+                for (int j = 0; j < k; j++) {
+                    groupShifts[_groupOf[j]] = Math.max(groupShifts[_groupOf[j]], shifts[j]);
+                }
+            }
+            double[] finalGroupShifts = groupShifts;
+            RowChunks.forEachRow(labels.length, i -> {
+                _upper[i] += shifts[labels[i]];
+                if (_yinyang) {
+                    double[] groupLower = _groupLower[i];
+                    for (int g = 0; g < groupLower.length; g++) {
+                        groupLower[g] = Math.max(0.0, groupLower[g] - finalGroupShifts[g]);
+                    }
+                } else if (_elkan) {
+                    for (int j = 0; j < k; j++) {
+                        _lower[i][j] = Math.max(0.0, _lower[i][j] - shifts[j]);
+                    }
+                } else {
+                    double shift = (labels[i] == largest) ? secondLargest : shifts[largest];
+                    _lowest[i] = Math.max(0.0, _lowest[i] - shift);
+                }
+            });
+        }
+    }
+
+    /**
+     * KD-tree of the filtering assignment step (Kanungo et al., 2002).
+     * <p>
+     * The tree is built once per fit: every node covers a contiguous range of a permutation of the sample indices and
+     * keeps the bounding box of its samples, and nodes are split at the median of their widest dimension down to
+     * {@value #LEAF_SIZE} samples. Each assignment pushes the candidate centroids down from the root. At every node the
+     * candidate closest to the center of the box, {@code z*}, filters out every other candidate {@code z} that is
+     * farther than {@code z*} from the corner of the box furthest in the direction of {@code z - z*}: no sample of the
+     * box can then be closer to {@code z}. Once a single candidate is left, its whole subtree takes that label without
+     * any distance computation, and leaves only compare their samples with the candidates left. The filter test carries
+     * the slack of {@link TriangleBounds} and leaves use the distance kernel of Lloyd, so the labels are identical to
+     * "lloyd".
+     * </p>
+     */
+    private static final class FilteringTree {
+
+        private static final int LEAF_SIZE = 16;
+
+        private final double[][] _X;
+        private final int[] _index; // Sample indices, permuted so that every node covers a contiguous range
+        private final Node _root;
+
+        FilteringTree(double[][] X) {
+            this._X = X;
+            this._index = IntStream.range(0, X.length).toArray();
+            this._root = build(0, X.length);
+        }
+
+        private Node build(int start, int end) {
+            int nFeatures = _X[0].length;
+            double[] min = _X[_index[start]].clone();
+            double[] max = _X[_index[start]].clone();
+            for (int p = start + 1; p < end; p++) {
+                double[] sample = _X[_index[p]];
+                for (int j = 0; j < nFeatures; j++) {
+                    min[j] = Math.min(min[j], sample[j]);
+                    max[j] = Math.max(max[j], sample[j]);
+                }
+            }
+            Node node = new Node(start, end, min, max);
+            int widest = 0;
+            for (int j = 1; j < nFeatures; j++) {
+                if (max[j] - min[j] > max[widest] - min[widest]) widest = j;
+            }
+            if (end - start <= LEAF_SIZE || !(max[widest] > min[widest])) {
+                return node; // Small enough, or every sample of the box is the same point
+            }
+            int middle = (start + end) >>> 1;
+            select(start, end - 1, middle, widest);
+            if (end - start > RowChunks.CHUNK_ROWS) {
+                // The halves cover disjoint ranges of the permutation, so they can be built concurrently
+                ForkJoinTask<Node> left = ForkJoinTask.adapt(() -> build(start, middle)).fork();
+                node.right = build(middle, end);
+                node.left = left.join();
+            } else {
+                node.left = build(start, middle);
+                node.right = build(middle, end);
+            }
+            return node;
+        }
+
+        /**
+         * Partially sorts {@code _index[low..high]} (inclusive) on feature {@code j} so that position {@code target}
+         * holds its final value, with smaller values before it and larger ones after (quickselect).
+         */
+        private void select(int low, int high, int target, int j) {
+            while (low < high) {
+                double pivot = _X[_index[(low + high) >>> 1]][j];
+                int i = low;
+                int k = high;
+                while (i <= k) {
+                    while (_X[_index[i]][j] < pivot) i++;
+                    while (_X[_index[k]][j] > pivot) k--;
+                    if (i <= k) {
+                        int swap = _index[i];
+                        _index[i] = _index[k];
+                        _index[k] = swap;
+                        i++;
+                        k--;
+                    }
+                }
+                if (target <= k) {
+                    high = k;
+                } else if (target >= i) {
+                    low = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Assigns each sample to the closest centroid.
+         */
+        void assign(double[][] centroids, int[] labels) {
+            filter(_root, centroids, IntStream.range(0, centroids.length).toArray(), labels);
+        }
+
+        /**
+         * @param candidates The centroids that may still own samples of the node, in ascending order.
+         */
+        private void filter(Node node, double[][] centroids, int[] candidates, int[] labels) {
+            int[] kept = (candidates.length > 1) ? prune(node, centroids, candidates) : candidates;
+            if (kept.length == 1) {
+                for (int p = node.start; p < node.end; p++) {
+                    labels[_index[p]] = kept[0];
+                }
+                return;
+            }
+            if (node.left == null) {
+                double[] distances = new double[kept.length];
+                for (int p = node.start; p < node.end; p++) {
+                    double[] sample = _X[_index[p]];
+                    for (int c = 0; c < kept.length; c++) {
+                        double[] centroid = centroids[kept[c]];
+                        double sum = 0.0;
+                        for (int j = 0; j < centroid.length; j++) {
+                            double difference = sample[j] - centroid[j];
+                            sum += difference * difference;
+                        }
+                        distances[c] = sum;
+                    }
+                    labels[_index[p]] = kept[_argmin(distances)]; // Ascending candidates keep Lloyd's ties
+                }
+                return;
+            }
+            if (node.end - node.start > RowChunks.CHUNK_ROWS) {
+                ForkJoinTask<?> left = ForkJoinTask.adapt(() -> filter(node.left, centroids, kept, labels)).fork();
+                filter(node.right, centroids, kept, labels);
+                left.join();
+            } else {
+                filter(node.left, centroids, kept, labels);
+                filter(node.right, centroids, kept, labels);
+            }
+        }
+
+        /**
+         * @return The candidates that may own a sample of the node's box, in ascending order.
+         */
+        private static int[] prune(Node node, double[][] centroids, int[] candidates) {
+            int nFeatures = node.min.length;
+            double[] center = node.center;
+            int best = candidates[0];
+            double bestDistance = Double.MAX_VALUE;
+            for (int candidate : candidates) {
+                double[] centroid = centroids[candidate];
+                double distance = 0.0;
+                for (int j = 0; j < nFeatures; j++) {
+                    double difference = center[j] - centroid[j];
+                    distance += difference * difference;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = candidate;
+                }
+            }
+
+            // Compares squared distances, so the slack of the distances is squared too
+            double closer = (1 + TriangleBounds.BOUND_SLACK) * (1 + TriangleBounds.BOUND_SLACK);
+            double farther = (1 - TriangleBounds.BOUND_SLACK) * (1 - TriangleBounds.BOUND_SLACK);
+            double[] closest = centroids[best];
+            int[] kept = new int[candidates.length];
+            int nKept = 0;
+            for (int candidate : candidates) {
+                if (candidate != best) {
+                    double[] centroid = centroids[candidate];
+                    double toClosest = 0.0;
+                    double toCandidate = 0.0;
+                    for (int j = 0; j < nFeatures; j++) {
+                        double corner = (centroid[j] > closest[j]) ? node.max[j] : node.min[j];
+                        toClosest += (corner - closest[j]) * (corner - closest[j]);
+                        toCandidate += (corner - centroid[j]) * (corner - centroid[j]);
+                    }
+                    if (toClosest * closer < toCandidate * farther) {
+                        continue; // Even the most favorable corner of the box is closer to z*
+                    }
+                }
+                kept[nKept++] = candidate;
+            }
+            return (nKept == candidates.length) ? candidates : Arrays.copyOf(kept, nKept);
+        }
+
+        private static final class Node {
+            final int start; // First position in the permutation
+            final int end; // Position after the last one
+            final double[] min; // Bounding box of the samples
+            final double[] max;
+            final double[] center;
+            Node left; // null for a leaf
+            Node right;
+
+            Node(int start, int end, double[] min, double[] max) {
+                this.start = start;
+                this.end = end;
+                this.min = min;
+                this.max = max;
+                this.center = new double[min.length];
+                for (int j = 0; j < min.length; j++) {
+                    center[j] = 0.5 * (min[j] + max[j]);
+                }
+            }
+        }
+    }
 }
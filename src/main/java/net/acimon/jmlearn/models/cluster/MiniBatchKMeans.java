@@ -0,0 +1,380 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.models.ControllableModel;
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.SeedableModel;
+import net.acimon.jmlearn.utils.EuclideanDistance;
+import net.acimon.jmlearn.utils.TrainingControl;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * The MiniBatchKMeans class clusters large data sets with mini-batch k-means (Sculley, 2010).
+ * <p>
+ * Instead of a full pass over the data per iteration, every step draws a small random batch, assigns it to the
+ * nearest centroids and moves each centroid toward the mean of its batch samples with a per-centroid learning rate of
+ * {@code 1 / (samples seen by the centroid)}. Each centroid is thus the running mean of all the samples it was ever
+ * assigned, and the cost of a step depends on the batch size only. The result is slightly worse than {@link KMeans}
+ * for a fraction of the time and memory traffic.
+ * </p>
+ *
+ * <h2>Key Features</h2>
+ * <ul>
+ *     <li>Batch updates with per-centroid learning rates.</li>
+ *     <li>Early stopping when the smoothed batch inertia stops improving.</li>
+ *     <li>{@link MiniBatchKMeans#partialFit(double[][])} for data that arrives in chunks or does not fit in memory.</li>
+ * </ul>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * MiniBatchKMeans kmeans = new MiniBatchKMeans(8, 1024, 100, 42L);
+ * kmeans.fit(data);
+ * int[] labels = kmeans.predict(data);
+ *
+ * // Or incrementally:
+ * for (double[][] chunk : chunks) {
+ *     kmeans.partialFit(chunk);
+ * }
+ * </pre>
+ *
+ * <h2>Constructor Summary</h2>
+ * <ul>
+ *     <li>{@link MiniBatchKMeans#MiniBatchKMeans(int, int, int, Long)} - Constructs a model with a number of clusters, a batch size, a maximum number of epochs and a seed.</li>
+ *     <li>{@link MiniBatchKMeans#MiniBatchKMeans(int)} - Constructs a model with a number of clusters and default settings (batch size 1024, 100 epochs).</li>
+ * </ul>
+ */
+public class MiniBatchKMeans implements SeedableModel, ControllableModel {
+
+    private int _k; // Number of clusters
+    private int _batchSize;
+    private int _maxIter; // Maximum number of epochs (passes' worth of batches) in fit
+    private int _maxNoImprovement = DEFAULT_MAX_NO_IMPROVEMENT; // Steps without inertia improvement before stopping, 0 disables
+    private String _init = CentroidInitializer.VALID_INITS[0];
+    private Long _seed; // null draws a fresh seed at every fit
+    private TrainingControl _control; // Checked at every step, null for none
+    private double[][] _centroids;
+    private double[] _counts; // Samples assigned to each centroid so far
+    private SplittableRandom _random; // Generator of the partialFit initialization
+    private int _nSteps; // Batch steps run by the last fit
+    private static final Logger logger = Logger.getLogger(MiniBatchKMeans.class.getName());
+
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int DEFAULT_MAX_ITER = 100;
+    private static final int DEFAULT_MAX_NO_IMPROVEMENT = 10;
+
+    /**
+     * @param k The number of clusters.
+     * @param batchSize The number of samples per step.
+     * @param maxIter The maximum number of epochs: fit runs at most {@code maxIter * n / batchSize} steps.
+     * @param seed The seed of the initialization and batch draws, or {@code null} for a fresh one per fit.
+     */
+    public MiniBatchKMeans(int k, int batchSize, int maxIter, Long seed) {
+        if (k < 1 || batchSize < 1 || maxIter < 1) {
+            throw new IllegalArgumentException("k, batchSize and maxIter must be greater than zero.");
+        }
+        this._k = k;
+        this._batchSize = batchSize;
+        this._maxIter = maxIter;
+        this._seed = seed;
+    }
+
+    public MiniBatchKMeans(int k) {
+        this(k, DEFAULT_BATCH_SIZE, DEFAULT_MAX_ITER, null);
+    }
+
+    public MiniBatchKMeans(MiniBatchKMeans other) {
+        this(other._k, other._batchSize, other._maxIter, other._seed);
+        this._maxNoImprovement = other._maxNoImprovement;
+        this._init = other._init;
+        this._control = other._control;
+        this._nSteps = other._nSteps;
+        if (other._centroids != null) {
+            this._centroids = new double[other._centroids.length][];
+            for (int i = 0; i < other._centroids.length; i++) {
+                this._centroids[i] = other._centroids[i].clone();
+            }
+            this._counts = other._counts.clone();
+        }
+    }
+
+    @Override
+    public Model clone() {
+        return new MiniBatchKMeans(this);
+    }
+
+    /**
+     * Fits the model from scratch: initializes the centroids on a random subset of {@code 3 * batchSize} rows, then
+     * runs batch steps until {@code maxIter} epochs are done or the smoothed batch inertia has not improved for
+     * {@code maxNoImprovement} steps.
+     *
+     * @param X Input data, where each row is a sample and each column is a feature.
+     */
+    @Override
+    public void fit(double[][] X) {
+        validate(X);
+        int n = X.length;
+        SplittableRandom random = newRandom();
+
+        // Initialize on a subset so the initialization does not cost more full passes than the fit
+        int initSize = Math.min(n, Math.max(3 * _batchSize, 3 * _k));
+        double[][] initRows = new double[initSize][];
+        for (int i = 0; i < initSize; i++) {
+            initRows[i] = X[(initSize == n) ? i : random.nextInt(n)];
+        }
+        _centroids = CentroidInitializer.initialize(_init, initRows, _k, random);
+        _counts = new double[_k];
+
+        int batchSize = Math.min(_batchSize, n);
+        long maxSteps = Math.max(1L, (long) _maxIter * n / batchSize);
+        double alpha = Math.min(1.0, 2.0 * batchSize / (n + 1)); // Smoothing of the batch inertia, about one epoch
+        double smoothedInertia = Double.NaN;
+        double bestInertia = Double.POSITIVE_INFINITY;
+        int stepsNoImprovement = 0;
+
+        double[][] batch = new double[batchSize][];
+        long startNanos = System.nanoTime();
+        _nSteps = 0;
+        for (long step = 0; step < maxSteps; step++) {
+            if (_control != null) {
+                _control.checkpoint();
+            }
+            for (int b = 0; b < batchSize; b++) {
+                batch[b] = X[random.nextInt(n)];
+            }
+            double inertia = update(batch) / batchSize;
+            _nSteps++;
+            if (_control != null) {
+                _control.reportProgress((int) Math.min(Integer.MAX_VALUE, step + 1), (int) Math.min(Integer.MAX_VALUE, maxSteps), startNanos, 0);
+            }
+
+            smoothedInertia = Double.isNaN(smoothedInertia) ? inertia : smoothedInertia * (1 - alpha) + inertia * alpha;
+            if (smoothedInertia < bestInertia) {
+                bestInertia = smoothedInertia;
+                stepsNoImprovement = 0;
+            } else if (_maxNoImprovement > 0 && ++stepsNoImprovement >= _maxNoImprovement) {
+                logger.info("Smoothed batch inertia plateaued, stopping after " + (step + 1) + " steps.");
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void fit(double[][] dataPoints, int[] labels) {
+        // Not applicable for unsupervised models
+        throw new UnsupportedOperationException("fit method with labels not supported for unsupervised model");
+    }
+
+    /**
+     * Updates the centroids with one batch. The first call initializes the centroids from that batch, which must
+     * then hold at least {@code k} samples.
+     *
+     * @param X The batch.
+     */
+    public void partialFit(double[][] X) {
+        validate(X);
+        if (_centroids == null) {
+            _random = newRandom();
+            _centroids = CentroidInitializer.initialize(_init, X, _k, _random);
+            _counts = new double[_k];
+        } else if (X[0].length != _centroids[0].length) {
+            throw new IllegalArgumentException("Samples must have " + _centroids[0].length + " features.");
+        }
+        if (_control != null) {
+            _control.checkpoint();
+        }
+        update(X);
+    }
+
+    /**
+     * Assigns the batch to the nearest centroids and moves every centroid to the running mean of all the samples
+     * it has been assigned, i.e. toward its batch mean with a learning rate of {@code batch count / total count}.
+     *
+     * @return The batch inertia before the move.
+     */
+    private double update(double[][] batch) {
+        int nFeatures = _centroids[0].length;
+        double[][] sums = new double[_k][nFeatures];
+        double[] batchCounts = new double[_k];
+        double inertia = 0.0;
+        for (double[] sample : batch) {
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+            for (int j = 0; j < _k; j++) {
+                double distance = EuclideanDistance.calculate(sample, _centroids[j], true);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = j;
+                }
+            }
+            inertia += bestDistance;
+            batchCounts[best]++;
+            for (int f = 0; f < nFeatures; f++) {
+                sums[best][f] += sample[f];
+            }
+        }
+
+        for (int j = 0; j < _k; j++) {
+            if (batchCounts[j] == 0) continue; // Centroids without samples keep their position
+            _counts[j] += batchCounts[j];
+            double rate = 1.0 / _counts[j];
+            for (int f = 0; f < nFeatures; f++) {
+                // c += (sum - m * c) / count, i.e. the running mean of every sample assigned so far
+                _centroids[j][f] += rate * (sums[j][f] - batchCounts[j] * _centroids[j][f]);
+            }
+        }
+        return inertia;
+    }
+
+    private void validate(double[][] X) {
+        if (X == null || X.length == 0) {
+            throw new IllegalArgumentException("Input data cannot be empty.");
+        }
+    }
+
+    private SplittableRandom newRandom() {
+        return (_seed != null) ? new SplittableRandom(_seed) : new SplittableRandom();
+    }
+
+    private void checkFitted() {
+        if (_centroids == null) {
+            throw new IllegalStateException("The model must be fitted first.");
+        }
+    }
+
+    /**
+     * Assigns each sample to the nearest centroid (the smallest index on ties).
+     *
+     * @param X The input data.
+     * @return An array of predicted cluster labels.
+     */
+    @Override
+    public int[] predict(double[][] X) {
+        checkFitted();
+        int[] labels = new int[X.length];
+        for (int i = 0; i < X.length; i++) {
+            double bestDistance = Double.MAX_VALUE;
+            for (int j = 0; j < _k; j++) {
+                double distance = EuclideanDistance.calculate(X[i], _centroids[j], true);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    labels[i] = j;
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Transforms the input data X into a cluster-distance space.
+     *
+     * @param X The input data.
+     * @return A 2D array where each row is the distance of a sample to each cluster centroid.
+     */
+    public double[][] transform(double[][] X) {
+        checkFitted();
+        double[][] distances = new double[X.length][_k];
+        for (int i = 0; i < X.length; i++) {
+            for (int j = 0; j < _k; j++) {
+                distances[i][j] = EuclideanDistance.calculate(X[i], _centroids[j]);
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Calculates the inertia of X: the sum of squared distances between the samples and their nearest centroid.
+     *
+     * @param X The input data.
+     * @return The inertia score.
+     */
+    public double score(double[][] X) {
+        checkFitted();
+        double score = 0.0;
+        for (double[] sample : X) {
+            double bestDistance = Double.MAX_VALUE;
+            for (double[] centroid : _centroids) {
+                bestDistance = Math.min(bestDistance, EuclideanDistance.calculate(sample, centroid, true));
+            }
+            score += bestDistance;
+        }
+        return score;
+    }
+
+    /**
+     * Sets how the initial centroids are chosen (see {@link KMeans#setInit(String)}).
+     *
+     * @param init The initialization: "k-means++", "k-means||" or "random".
+     * @throws IllegalArgumentException if the initialization is invalid.
+     */
+    public void setInit(String init) {
+        if (!Arrays.asList(CentroidInitializer.VALID_INITS).contains(init)) {
+            throw new IllegalArgumentException("Invalid init. Must be one of: " + String.join(", ", CentroidInitializer.VALID_INITS) + ".");
+        }
+        this._init = init;
+    }
+
+    /**
+     * @param maxNoImprovement Steps without improvement of the smoothed batch inertia before fit stops; 0 disables
+     *                         early stopping.
+     */
+    public void setMaxNoImprovement(int maxNoImprovement) {
+        if (maxNoImprovement < 0) {
+            throw new IllegalArgumentException("maxNoImprovement must be non-negative.");
+        }
+        this._maxNoImprovement = maxNoImprovement;
+    }
+
+    @Override
+    public void setSeed(Long seed) {
+        this._seed = seed;
+    }
+
+    @Override
+    public void setTrainingControl(TrainingControl control) {
+        this._control = control;
+    }
+
+    // Getters.
+    public int getK() {
+        return _k;
+    }
+    public int getBatchSize() {
+        return _batchSize;
+    }
+    public int getMaxIter() {
+        return _maxIter;
+    }
+    public int getMaxNoImprovement() {
+        return _maxNoImprovement;
+    }
+    public String getInit() {
+        return _init;
+    }
+    @Override
+    public Long getSeed() {
+        return _seed;
+    }
+    @Override
+    public TrainingControl getTrainingControl() {
+        return _control;
+    }
+    public double[][] getCentroids() {
+        return _centroids;
+    }
+
+    /**
+     * @return The number of samples assigned to each centroid so far.
+     */
+    public double[] getCounts() {
+        return (_counts != null) ? _counts.clone() : null;
+    }
+
+    /**
+     * @return The number of batch steps run by the last fit.
+     */
+    public int getNSteps() {
+        return _nSteps;
+    }
+}
@@ -0,0 +1,179 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.RowSource;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel passes over the rows of a data set, split independently of the number of threads.
+ * <p>
+ * Per-row work runs over chunks of {@link #CHUNK_ROWS} rows. Reductions (sums, per-cluster sums) run over at most
+ * {@link #MAX_PARTITIONS} contiguous partitions that only depend on the number of rows, and the partial results are
+ * combined in partition order, so the floating-point result is the same on any number of cores. Sources that do not
+ * fit in memory are read with {@link #stream(RowSource, Consumer)}.
+ * </p>
+ */
+final class RowChunks {
+
+    static final int CHUNK_ROWS = 4096; // Rows per parallel chunk, fixed so results do not depend on threads
+    static final int MAX_PARTITIONS = 256; // Partial results of a reduction, bounds the memory of per-cluster sums
+    static final int STREAM_CHUNK_ROWS = 65536; // Rows per chunk read from a RowSource
+    static final int PREFETCH_CHUNKS = 2; // Chunks read ahead of the computation
+
+    private static final String READER_THREAD_NAME = "row-chunks-reader";
+    private static final long POLL_MILLIS = 50; // How often a blocked side checks whether the other one stopped
+    private static final double[][] END_OF_ROWS = new double[0][];
+
+    private RowChunks() {
+    }
+
+    /**
+     * @return The number of chunks of {@code n} rows.
+     */
+    static int count(int n) {
+        return (n + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    }
+
+    /**
+     * @return The number of partitions a reduction over {@code n} rows uses.
+     */
+    static int partitions(int n) {
+        return Math.min(MAX_PARTITIONS, count(n));
+    }
+
+    /**
+     * @return The first row of partition {@code p} out of {@code parts} (and the end of partition {@code p - 1}).
+     */
+    static int partitionStart(int n, int parts, int p) {
+        return (int) ((long) n * p / parts);
+    }
+
+    /**
+     * Runs {@code action} for every row, in parallel over fixed chunks.
+     */
+    static void forEachRow(int n, IntConsumer action) {
+        IntStream.range(0, count(n)).parallel().forEach(c -> {
+            for (int i = c * CHUNK_ROWS; i < Math.min(n, (c + 1) * CHUNK_ROWS); i++) {
+                action.accept(i);
+            }
+        });
+    }
+
+    /**
+     * Runs {@code action} for every chunk, in parallel, with the range of its rows.
+     */
+    static void forEachChunk(int n, RangeAction action) {
+        IntStream.range(0, count(n)).parallel().forEach(c -> action.accept(c * CHUNK_ROWS, Math.min(n, (c + 1) * CHUNK_ROWS)));
+    }
+
+    /**
+     * Sums {@code term(i)} over the rows, chunk by chunk in parallel, then adds the chunk sums in order.
+     */
+    static double sum(int n, IntToDoubleFunction term) {
+        int nChunks = count(n);
+        double[] sums = new double[nChunks];
+        IntStream.range(0, nChunks).parallel().forEach(c -> {
+            double sum = 0.0;
+            for (int i = c * CHUNK_ROWS; i < Math.min(n, (c + 1) * CHUNK_ROWS); i++) {
+                sum += term.applyAsDouble(i);
+            }
+            sums[c] = sum;
+        });
+        double total = 0.0;
+        for (double sum : sums) {
+            total += sum;
+        }
+        return total;
+    }
+
+    /**
+     * Work on the rows {@code start} (inclusive) to {@code end} (exclusive).
+     */
+    @FunctionalInterface
+    interface RangeAction {
+        void accept(int start, int end);
+    }
+
+    /**
+     * Reads the source in chunks of {@link #STREAM_CHUNK_ROWS} rows on a separate daemon thread, up to
+     * {@link #PREFETCH_CHUNKS} chunks ahead, and hands every chunk to {@code consumer} on the calling thread, in order.
+     * If the consumer throws, the reader is cancelled: it stops at its next chunk instead of waiting for room in the
+     * queue, and closes the source.
+     *
+     * @throws IOException If reading the source fails.
+     */
+    static void stream(RowSource source, Consumer<double[][]> consumer) throws IOException {
+        BlockingQueue<double[][]> queue = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ExecutorService reader = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, READER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> reading = reader.submit(() -> {
+                try (RowSource.Reader rows = source.open(STREAM_CHUNK_ROWS)) {
+                    double[][] chunk;
+                    while ((chunk = rows.next()) != null) {
+                        if (!offer(queue, chunk, cancelled)) {
+                            return null; // The consumer stopped
+                        }
+                    }
+                } finally {
+                    offer(queue, END_OF_ROWS, cancelled);
+                }
+                return null;
+            });
+            while (true) {
+                double[][] chunk = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk == END_OF_ROWS || (chunk == null && reading.isDone() && queue.isEmpty())) {
+                    break;
+                }
+                if (chunk != null) {
+                    consumer.accept(chunk);
+                }
+            }
+            reading.get(); // Throws the reader's failure
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrainingCancelledException("Training was interrupted.", false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException("Reading the rows failed.", cause);
+        } finally {
+            cancelled.set(true);
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for room in the queue until the chunk is queued or the pass is cancelled.
+     *
+     * @return {@code false} if the pass was cancelled.
+     */
+    private static boolean offer(BlockingQueue<double[][]> queue, double[][] chunk, AtomicBoolean cancelled)
+            throws InterruptedException {
+        while (!cancelled.get()) {
+            if (queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
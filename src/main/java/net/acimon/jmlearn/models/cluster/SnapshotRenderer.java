@@ -0,0 +1,196 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.PlotData;
+
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import org.jfree.chart.ChartPanel;
+
+/**
+ * Delivers the snapshots of a fit to its {@link KMeans.SnapshotListener}s on a separate thread.
+ * <p>
+ * The training thread only copies the labels and centroids, at most {@code maxFrameRate} times per second, and never
+ * waits for rendering: when the listeners are still busy with the previous snapshot, a newer one replaces the pending
+ * one and the skipped frames are dropped. {@link #close()} waits for the last snapshot to be delivered.
+ * </p>
+ */
+final class SnapshotRenderer implements AutoCloseable {
+
+    static final int MAX_PLOT_POINTS = 5000; // Points drawn per frame, larger data sets are subsampled
+
+    private final double[][] _X;
+    private final List<KMeans.SnapshotListener> _listeners;
+    private final long _minIntervalNanos;
+    private final ExecutorService _executor;
+    private final AtomicReference<Snapshot> _pending = new AtomicReference<>();
+    private long _lastOfferNanos;
+    private boolean _offered;
+    private static final Logger logger = Logger.getLogger(SnapshotRenderer.class.getName());
+
+    SnapshotRenderer(double[][] X, List<KMeans.SnapshotListener> listeners, double maxFrameRate) {
+        this._X = X;
+        this._listeners = new ArrayList<>(listeners);
+        this._minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxFrameRate);
+        this._executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "kmeans-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hands a snapshot to the listeners, called on the training thread.
+     *
+     * @param force Whether to bypass the frame rate, e.g. for the final state.
+     */
+    void offer(int iteration, int[] labels, double[][] centroids, boolean force) {
+        long now = System.nanoTime();
+        if (!force && _offered && now - _lastOfferNanos < _minIntervalNanos) {
+            return;
+        }
+        _offered = true;
+        _lastOfferNanos = now;
+        double[][] centroidsCopy = new double[centroids.length][];
+        for (int j = 0; j < centroids.length; j++) {
+            centroidsCopy[j] = centroids[j].clone();
+        }
+        if (_pending.getAndSet(new Snapshot(iteration, labels.clone(), centroidsCopy)) == null) {
+            _executor.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        Snapshot snapshot = _pending.getAndSet(null);
+        if (snapshot == null) {
+            return; // Delivered by the previous run
+        }
+        for (KMeans.SnapshotListener listener : _listeners) {
+            try {
+                listener.onSnapshot(_X, snapshot.iteration, snapshot.labels, snapshot.centroids);
+            } catch (RuntimeException e) {
+                logger.warning("Snapshot listener failed at iteration " + snapshot.iteration + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the pending snapshot to be delivered.
+     */
+    @Override
+    public void close() {
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            _executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Snapshot {
+        final int iteration;
+        final int[] labels;
+        final double[][] centroids;
+
+        Snapshot(int iteration, int[] labels, double[][] centroids) {
+            this.iteration = iteration;
+            this.labels = labels;
+            this.centroids = centroids;
+        }
+    }
+
+    /**
+     * The first two features of at most {@link #MAX_PLOT_POINTS} evenly spaced samples, with their labels.
+     */
+    private static void samplePoints(double[][] X, int[] labels, List<double[]> points, List<Integer> pointLabels) {
+        int step = Math.max(1, (X.length + MAX_PLOT_POINTS - 1) / MAX_PLOT_POINTS);
+        for (int i = 0; i < X.length; i += step) {
+            points.add(new double[]{X[i][0], (X[i].length > 1) ? X[i][1] : 0.0});
+            pointLabels.add(labels[i]);
+        }
+    }
+
+    /**
+     * Plots the snapshots in a window, created at the first one. Nothing is shown on a headless host.
+     */
+    static final class PlotWindow implements KMeans.SnapshotListener {
+
+        private JFrame _frame;
+        private ChartPanel _chartPanel;
+        private boolean _warned;
+
+        @Override
+        public void onSnapshot(double[][] X, int iteration, int[] labels, double[][] centroids) {
+            if (GraphicsEnvironment.isHeadless()) {
+                if (!_warned) {
+                    logger.warning("No display available, plotSteps is ignored; see KMeans.setPlotDirectory.");
+                    _warned = true;
+                }
+                return;
+            }
+            List<double[]> points = new ArrayList<>();
+            List<Integer> pointLabels = new ArrayList<>();
+            samplePoints(X, labels, points, pointLabels);
+            try {
+                // Swing components are only touched on the event dispatch thread
+                SwingUtilities.invokeAndWait(() -> {
+                    if (_frame == null) {
+                        _frame = new JFrame("KMeans Clustering");
+                        _chartPanel = new ChartPanel(null); // Start with no chart
+                        _frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                        _chartPanel.setPreferredSize(new Dimension(800, 600));
+                        _frame.getContentPane().add(_chartPanel);
+                    }
+                    PlotData.plotDataWithCentroids(points, pointLabels, centroids, "KMeans Iteration " + iteration,
+                        _frame, _chartPanel);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Plotting failed.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Writes every snapshot as a numbered PNG file, without any window.
+     */
+    static final class PngWriter implements KMeans.SnapshotListener {
+
+        private final Path _directory;
+        private int _frames;
+
+        PngWriter(Path directory) {
+            this._directory = directory;
+        }
+
+        @Override
+        public void onSnapshot(double[][] X, int iteration, int[] labels, double[][] centroids) {
+            List<double[]> points = new ArrayList<>();
+            List<Integer> pointLabels = new ArrayList<>();
+            samplePoints(X, labels, points, pointLabels);
+            Path file = _directory.resolve(String.format("kmeans-%04d.png", ++_frames));
+            try {
+                Files.createDirectories(_directory);
+                PlotData.saveDataWithCentroids(points, pointLabels, centroids, "KMeans Iteration " + iteration, file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write " + file, e);
+            }
+        }
+    }
+}
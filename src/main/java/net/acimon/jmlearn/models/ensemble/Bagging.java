@@ -1,28 +1,60 @@
 package net.acimon.jmlearn.models.ensemble;
 
+import net.acimon.jmlearn.models.ControllableModel;
+import net.acimon.jmlearn.models.FeatureImportanceModel;
 import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.SeedableModel;
+import net.acimon.jmlearn.models.WeightedModel;
+import net.acimon.jmlearn.metrics.Accuracy;
 import net.acimon.jmlearn.utils.Pair;
 import net.acimon.jmlearn.utils.Counter;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.ModelSerializer;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+import net.acimon.jmlearn.utils.TrainingControl;
 import net.acimon.jmlearn.models.ensemble.Bagging;
 
 
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 import java.util.concurrent.*;
 
 import java.util.logging.Logger;
 
 
-public class Bagging implements Model {
+public class Bagging implements FeatureImportanceModel, ControllableModel {
     
     private Model _model;
     private int _bagsNumber;
     private double _sampleSize;
     private final Integer _seed;
-    private Random _random;
+    private long _baseSeed;
     private List<Model> _weakLearners;
     private int _numWorkers;
+    private boolean _bootstrap = true;
+    private boolean _computeOob;
+    private boolean _warmStart;
+    private int _bagsFitted; // Bags drawn so far, the index of the next bag's generator
+    private int _roundSize; // Bags trained between two out-of-bag checks
+    private int _nIterNoChange; // Rounds without out-of-bag improvement before stopping, 0 disables early stopping
+    private double _tol;
+    private int[] _classes; // Sorted distinct training labels
+    private int[] _oobLabels; // Training labels the out-of-bag votes are scored against
+    private int[][] _oobVotes; // Out-of-bag votes per training row and class
+    private List<int[]> _oobIndices; // Out-of-bag rows of each weak learner
+    private TrainingControl _control; // Cancellation, deadline and progress of fit, null for none
+    public static final int NO_OOB_PREDICTION = Integer.MIN_VALUE;
+    private static final long POLL_MILLIS = 50; // How often a waiting fit checks its control
+    private static final String EARLY_STOPPING_WITHOUT_BOOTSTRAP =
+        "Out-of-bag early stopping needs bootstrap bags: without bootstrap no row is ever out of bag.";
+    private static final String EARLY_STOPPING_WITHOUT_OOB =
+        "Out-of-bag early stopping needs out-of-bag estimation: it was disabled after setEarlyStopping.";
     private static final Logger logger = Logger.getLogger(Bagging.class.getName());
 
     
@@ -35,7 +67,7 @@ public class Bagging implements Model {
         this._sampleSize = sampleSize;
         this._seed = seed;
         this._weakLearners = new ArrayList<>(); 
-        this._random = (seed != null) ? new Random(seed) : new Random(); 
+        this._baseSeed = (seed != null) ? seed : new SplittableRandom().nextLong();
         this._numWorkers = (numWorkers != null) ? numWorkers:bagsNumber;
      
         
@@ -44,6 +76,82 @@ public class Bagging implements Model {
         return _bagsNumber;
     }
 
+    /**
+     * Sets the number of bags. Combined with {@link #setWarmStart(boolean)}, raising it and calling fit again trains
+     * only the additional weak learners.
+     *
+     * @param bagsNumber The total number of bags of the ensemble.
+     */
+    public void setBagsNumber(int bagsNumber) {
+        if (bagsNumber < 1) {
+            throw new IllegalArgumentException("The number of bags must be greater than zero.");
+        }
+        this._bagsNumber = bagsNumber;
+    }
+
+    /**
+     * @return A read-only view of the fitted weak learners, in bag order.
+     */
+    public List<Model> getWeakLearners() {
+        return Collections.unmodifiableList(_weakLearners);
+    }
+
+    /**
+     * @return The number of weak learners currently in the ensemble, which is lower than the number of bags when
+     * early stopping ended the fit.
+     */
+    public int getFittedBagsNumber() {
+        return _weakLearners.size();
+    }
+
+    /**
+     * Enables warm start: fit keeps the weak learners of previous fits and only trains bags up to
+     * {@link #getBagsNumber()}. Bag {@code i} always draws from the same generator derived from the seed, so growing
+     * an ensemble from 200 to 400 bags gives the same learners as fitting 400 at once.
+     *
+     * @param warmStart Whether fit should add to the existing ensemble instead of replacing it.
+     */
+    public void setWarmStart(boolean warmStart) {
+        this._warmStart = warmStart;
+    }
+    public boolean isWarmStart() {
+        return _warmStart;
+    }
+
+    /**
+     * Enables out-of-bag early stopping. Bags are trained in rounds of {@code roundSize} and the fit stops once the
+     * out-of-bag accuracy has not improved by more than {@code tol} for {@code nIterNoChange} rounds in a row.
+     * Enabling it also enables out-of-bag estimation, so it needs bootstrap bags (see {@link #setBootstrap(boolean)}).
+     *
+     * @param roundSize Number of bags trained between two out-of-bag checks.
+     * @param nIterNoChange Rounds without improvement before stopping; 0 disables early stopping.
+     * @param tol Minimal out-of-bag accuracy gain counted as an improvement.
+     * @throws IllegalStateException if early stopping is enabled while bootstrap is disabled.
+     */
+    public void setEarlyStopping(int roundSize, int nIterNoChange, double tol) {
+        if (roundSize < 1 || nIterNoChange < 0 || tol < 0) {
+            throw new IllegalArgumentException("roundSize must be positive, nIterNoChange and tol non-negative.");
+        }
+        if (nIterNoChange > 0 && !_bootstrap) {
+            throw new IllegalStateException(EARLY_STOPPING_WITHOUT_BOOTSTRAP);
+        }
+        this._roundSize = roundSize;
+        this._nIterNoChange = nIterNoChange;
+        this._tol = tol;
+        if (nIterNoChange > 0) {
+            this._computeOob = true;
+        }
+    }
+    public int getRoundSize() {
+        return _roundSize;
+    }
+    public int getNIterNoChange() {
+        return _nIterNoChange;
+    }
+    public double getTol() {
+        return _tol;
+    }
+
     public double getSampleSize() {
         return _sampleSize;
     }
@@ -51,65 +159,282 @@ public class Bagging implements Model {
         return _numWorkers;
     }
 
-    private Pair<double[][], int[]> bootSrtpAgg(double[][] _X_train, int[] _Y_train){
-        int sampleSize = (int) Math.round(_X_train.length * _sampleSize);
-        int dataSize = _X_train.length;
-        int tempIdx;
+    /**
+     * Chooses between bootstrap bags and training every weak learner on the whole data set. Without bootstrap the
+     * diversity must come from the base model itself (e.g. randomized splits), and no row is ever out of bag.
+     *
+     * @param bootstrap Whether each bag is drawn with replacement ({@code true}, the default) or uses every row once.
+     */
+    public void setBootstrap(boolean bootstrap) {
+        this._bootstrap = bootstrap;
+    }
+    public boolean isBootstrap() {
+        return _bootstrap;
+    }
+
+    /**
+     * Sets the control of the next fits. The control is checked while waiting for each weak learner and handed to
+     * learners that accept one, so trees stop mid-growth; it receives one progress report per fitted learner. A
+     * stopped fit throws {@link TrainingCancelledException} and keeps the learners completed before it, in bag order,
+     * so the ensemble can still predict and a warm-started fit resumes where it stopped.
+     *
+     * @param control The control of the next fits, or {@code null} for none.
+     */
+    @Override
+    public void setTrainingControl(TrainingControl control) {
+        this._control = control;
+    }
+    @Override
+    public TrainingControl getTrainingControl() {
+        return _control;
+    }
+
+    /**
+     * Enables out-of-bag estimation: during {@link #fit(double[][], int[])} every weak learner also predicts the
+     * training rows left out of its bag, so {@link #oobScore()} is available without a separate validation set.
+     * Early stopping (see {@link #setEarlyStopping(int, int, double)}) needs it, and fit refuses to start if it was
+     * turned off afterwards.
+     *
+     * @param computeOob Whether to record out-of-bag rows and predictions while fitting.
+     */
+    public void setComputeOob(boolean computeOob) {
+        this._computeOob = computeOob;
+    }
+    public boolean isComputeOob() {
+        return _computeOob;
+    }
+
+    /**
+     * Draws a bootstrap bag as a count vector over the original rows: {@code counts[i]} is the number of times
+     * row {@code i} was sampled. Weighted base models train on it directly without copying the data.
+     */
+    private double[] bootstrapCounts(int dataSize, SplittableRandom random) {
+        double[] counts = new double[dataSize];
+        if (!_bootstrap) {
+            Arrays.fill(counts, 1.0);
+            return counts;
+        }
+        int sampleSize = (int) Math.round(dataSize * _sampleSize);
+        for (int i = 0; i < sampleSize; i++) {//Iterate over the amount of sample in each "bag".
+            counts[random.nextInt(dataSize)]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Materializes a bag from its count vector, for base models that only accept plain training data.
+     */
+    private Pair<double[][], int[]> bootSrtpAgg(double[][] _X_train, int[] _Y_train, double[] counts){
+        int sampleSize = (int) Arrays.stream(counts).sum();
         double[][] xBag = new double[sampleSize][];
         int[] yBag = new int[sampleSize];
 
-        for (int i=0; i < (sampleSize); i++){//Iterate over the amount of sample in each "bag".
-            tempIdx = this._random.nextInt(dataSize);
-            xBag[i] = _X_train[tempIdx];
-            yBag[i] = _Y_train[tempIdx];
+        int position = 0;
+        for (int i = 0; i < counts.length; i++) {
+            for (int c = 0; c < counts[i]; c++) {
+                xBag[position] = _X_train[i];
+                yBag[position] = _Y_train[i];
+                position++;
+            }
         }
         return new Pair<>(xBag, yBag);
-    } 
-
+    }
 
-    private Model inFit(double[][] _X_train, int[] _Y_train){
-        Pair<double[][], int[]> samplePair = bootSrtpAgg(_X_train, _Y_train);
+    private BagResult inFit(double[][] _X_train, int[] _Y_train, SplittableRandom random){
+        double[] counts = bootstrapCounts(_X_train.length, random);
         Model weakLearner = _model.clone();
-        weakLearner.fit(samplePair.first, samplePair.second);
-        return weakLearner;
+        if (_control != null && weakLearner instanceof ControllableModel) {
+            ((ControllableModel) weakLearner).setTrainingControl(_control);
+        }
+        if (weakLearner instanceof SeedableModel) {
+            // The learner's own randomness continues the bag's stream, so it is fixed by the bag index
+            ((SeedableModel) weakLearner).setSeed(random.nextLong());
+        }
+        if (weakLearner instanceof WeightedModel) {
+            ((WeightedModel) weakLearner).fit(_X_train, _Y_train, counts);
+        } else {
+            Pair<double[][], int[]> samplePair = bootSrtpAgg(_X_train, _Y_train, counts);
+            weakLearner.fit(samplePair.first, samplePair.second);
+        }
+
+        BagResult result = new BagResult(weakLearner);
+        if (_computeOob) {
+            // Predict the rows this bag never saw while the worker still owns them.
+            result.oobIndices = IntStream.range(0, counts.length).filter(i -> counts[i] == 0).toArray();
+            if (result.oobIndices.length > 0) {
+                double[][] oobX = new double[result.oobIndices.length][];
+                for (int i = 0; i < oobX.length; i++) {
+                    oobX[i] = _X_train[result.oobIndices[i]];
+                }
+                result.oobPredictions = weakLearner.predict(oobX);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Trains the weak learner of bag {@code bag} alone, exactly as {@link #fit(double[][], int[])} would, so bags
+     * trained in separate processes from the same settings give the same ensemble.
+     */
+    Model fitBag(double[][] X, int[] y, int bag) {
+        SplittableRandom seeder = new SplittableRandom(_baseSeed);
+        for (int i = 0; i < bag; i++) {
+            seeder.nextLong();
+        }
+        return inFit(X, y, new SplittableRandom(seeder.nextLong())).learner;
+    }
+
+    /**
+     * Adds one weak learner's out-of-bag predictions to the vote table.
+     */
+    private void addOobVotes(BagResult result) {
+        _oobIndices.add(result.oobIndices);
+        if (result.oobPredictions == null) return;
+        for (int i = 0; i < result.oobIndices.length; i++) {
+            int classIndex = Arrays.binarySearch(_classes, result.oobPredictions[i]);
+            if (classIndex >= 0) {
+                _oobVotes[result.oobIndices[i]][classIndex]++;
+            }
+        }
     }
     @Override
     public void fit(double[][] X, int[] y) {
+        if (_nIterNoChange > 0 && !_bootstrap) {
+            throw new IllegalStateException(EARLY_STOPPING_WITHOUT_BOOTSTRAP); // Bootstrap was disabled afterwards
+        }
+        if (_nIterNoChange > 0 && !_computeOob) {
+            throw new IllegalStateException(EARLY_STOPPING_WITHOUT_OOB);
+        }
+        boolean warm = _warmStart && !_weakLearners.isEmpty();
+        if (!warm) {
+            _weakLearners = new ArrayList<>();
+            _bagsFitted = 0;
+            _oobVotes = null;
+            if (_computeOob) {
+                _classes = Arrays.stream(y).distinct().sorted().toArray();
+                _oobLabels = y;
+                _oobVotes = new int[X.length][_classes.length];
+                _oobIndices = new ArrayList<>();
+            }
+        } else if (_computeOob && (_oobVotes == null || _oobVotes.length != X.length)) {
+            throw new IllegalStateException("Warm start with out-of-bag estimation needs the training data of the first fit.");
+        }
+        if (_bagsFitted >= _bagsNumber) {
+            logger.warning("Warm start: " + _bagsFitted + " bags already fitted, nothing to train.");
+            return;
+        }
+
+        if (_control != null) {
+            _control.checkpoint();
+        }
+
         ExecutorService executor = Executors.newFixedThreadPool(this._numWorkers);
-        List<Future<Model>> futures = new ArrayList<>();
-        
+        // Every bag gets its own generator, derived in bag order from the seed, so workers never share one.
+        SplittableRandom seeder = new SplittableRandom(_baseSeed);
+        for (int i = 0; i < _bagsFitted; i++) {
+            seeder.nextLong();
+        }
+
+        boolean earlyStopping = _nIterNoChange > 0;
+        int roundSize = earlyStopping ? _roundSize : _bagsNumber - _bagsFitted;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int roundsNoChange = 0;
+        long startNanos = System.nanoTime();
+        int bagsAtStart = _bagsFitted;
+        try {
+            while (_bagsFitted < _bagsNumber) {
+                int roundEnd = Math.min(_bagsFitted + roundSize, _bagsNumber);
+                fitBags(X, y, _bagsFitted, roundEnd, seeder, executor, startNanos, bagsAtStart);
+
+                if (earlyStopping) {
+                    double score = oobScore();
+                    if (score > bestScore + _tol) {
+                        bestScore = score;
+                        roundsNoChange = 0;
+                    } else if (++roundsNoChange >= _nIterNoChange) {
+                        logger.info("Out-of-bag accuracy plateaued at " + bestScore + ", stopping after " + _bagsFitted + " bags.");
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // Stops the learners still running when the fit is cancelled or fails
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Trains the bags {@code [from, to)} on the executor and appends them to the ensemble in bag order.
+     * <p>
+     * If a learner fails or the control stops the fit, the learners collected so far stay in the ensemble (bags
+     * {@code [from, _bagsFitted)}), the others are cancelled and the failure is thrown.
+     * </p>
+     */
+    private void fitBags(double[][] X, int[] y, int from, int to, SplittableRandom seeder, ExecutorService executor,
+                         long startNanos, int bagsAtStart) {
+        List<Future<BagResult>> futures = new ArrayList<>();
+
         // Submit tasks for weak learners
-        for (int i = 0; i < _bagsNumber; i++) {
+        for (int i = from; i < to; i++) {
             final int finalI = i;
+            final SplittableRandom bagRandom = new SplittableRandom(seeder.nextLong());
             futures.add(executor.submit(() -> {
-                try {
-                    Model weakLearner = inFit(X, y);
-                    logger.info("Successfully trained weak learner " + finalI);  
-                    return weakLearner;
-                } catch (Exception e) {
-                    logger.severe("Error during training weak learner " + finalI + ": " + e.getMessage());
-                    return null;
-                }
+                BagResult result = inFit(X, y, bagRandom);
+                logger.info("Successfully trained weak learner " + finalI);
+                return result;
             }));
         }
-    
-        // Wait for all tasks to complete
-        for (Future<Model> future : futures) {
-            try {
-                Model weakLearner = future.get();
-                if (weakLearner != null) {
-                    _weakLearners.add(weakLearner); // Only add non-null models
+
+        // Collect the learners in bag order
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                BagResult result = await(futures.get(i), from + i);
+                _weakLearners.add(result.learner);
+                if (_computeOob) {
+                    addOobVotes(result);
+                }
+                _bagsFitted = from + i + 1;
+                if (_control != null) {
+                    _control.reportProgress(_bagsFitted, _bagsNumber, startNanos, bagsAtStart);
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                logger.severe("Error when collecting future result: " + e.getMessage());
+            }
+        } finally {
+            for (Future<BagResult> future : futures) {
+                future.cancel(true);
             }
         }
-    
-        executor.shutdown();
-    
-        // Check if weak learners are properly added
-        if (_weakLearners.isEmpty()) {
-            logger.severe("No weak learners were added!");
+    }
+
+    /**
+     * Waits for one weak learner, checking the control while waiting.
+     *
+     * @throws TrainingCancelledException if the control stops the fit or the calling thread is interrupted.
+     * @throws IllegalStateException if training the learner failed.
+     */
+    private BagResult await(Future<BagResult> future, int bag) {
+        try {
+            if (_control == null) {
+                return future.get();
+            }
+            while (true) {
+                _control.checkpoint();
+                long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS), Math.max(1L, _control.remainingNanos()));
+                try {
+                    return future.get(waitNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // Check the control again
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrainingCancelledException("Training was interrupted.", false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TrainingCancelledException) {
+                throw (TrainingCancelledException) cause;
+            }
+            logger.severe("Error during training weak learner " + bag + ": " + cause);
+            throw new IllegalStateException("Training weak learner " + bag + " failed.", cause);
         }
     }
     
@@ -124,10 +449,10 @@ public class Bagging implements Model {
     // Method to predict the label for a given input X
     public int[] predict(double[][] X) {
         // Get predictions from all weak learners (bags)
-        int[][] weakPredictions = new int[X.length][_bagsNumber];  // Store predictions for each data point
+        int[][] weakPredictions = new int[X.length][_weakLearners.size()];  // Store predictions for each data point
 
         // Collect predictions from each bag (weak learner)
-        for (int i = 0; i < _bagsNumber; i++) {
+        for (int i = 0; i < _weakLearners.size(); i++) {
             Model weakModel = _weakLearners.get(i);
             int[] bagPredictions = weakModel.predict(X);  // Assume the Estimator's predict method returns an int[] for predictions
             for (int j = 0; j < X.length; j++) {
@@ -143,6 +468,177 @@ public class Bagging implements Model {
         return finalPredictions;
     }
 
+    /**
+     * Returns the out-of-bag prediction of every training row: the majority vote of the weak learners that did not
+     * see the row in their bag, or {@link #NO_OOB_PREDICTION} for rows that were in every bag.
+     *
+     * @return The out-of-bag predictions, aligned with the rows passed to {@code fit}.
+     * @throws IllegalStateException if out-of-bag estimation was not enabled before fitting.
+     */
+    public int[] getOobPredictions() {
+        if (_oobVotes == null) {
+            throw new IllegalStateException("Out-of-bag estimation was not enabled before fitting (see setComputeOob).");
+        }
+        int[] predictions = new int[_oobVotes.length];
+        for (int i = 0; i < _oobVotes.length; i++) {
+            int best = -1;
+            for (int c = 0; c < _classes.length; c++) {
+                if (_oobVotes[i][c] > 0 && (best == -1 || _oobVotes[i][c] > _oobVotes[i][best])) {
+                    best = c;
+                }
+            }
+            predictions[i] = (best == -1) ? NO_OOB_PREDICTION : _classes[best];
+        }
+        return predictions;
+    }
+
+    /**
+     * Returns the out-of-bag accuracy: the accuracy of {@link #getOobPredictions()} over the training rows that were
+     * left out of at least one bag.
+     *
+     * @return The out-of-bag accuracy, ranging from 0.0 to 1.0.
+     * @throws IllegalStateException if out-of-bag estimation was not enabled or no row was ever out of bag.
+     */
+    public double oobScore() {
+        int[] predictions = getOobPredictions();
+        int correct = 0;
+        int scored = 0;
+        for (int i = 0; i < predictions.length; i++) {
+            if (predictions[i] == NO_OOB_PREDICTION) continue;
+            scored++;
+            if (predictions[i] == _oobLabels[i]) correct++;
+        }
+        if (scored == 0) {
+            throw new IllegalStateException("No training row was left out of any bag; increase the number of bags.");
+        }
+        return (double) correct / scored;
+    }
+
+    /**
+     * Returns the impurity-based feature importances averaged over the weak learners.
+     *
+     * @return The mean importance of each feature, summing to 1 when the learners used any feature.
+     * @throws UnsupportedOperationException if the base model does not report feature importances.
+     * @throws IllegalStateException if the ensemble is not fitted.
+     */
+    @Override
+    public double[] getFeatureImportances() {
+        if (!(_model instanceof FeatureImportanceModel)) {
+            throw new UnsupportedOperationException("The base model does not report feature importances.");
+        }
+        if (_weakLearners.isEmpty()) {
+            throw new IllegalStateException("The ensemble must be fitted before computing feature importances.");
+        }
+        double[] importances = null;
+        for (Model learner : _weakLearners) {
+            double[] learnerImportances = ((FeatureImportanceModel) learner).getFeatureImportances();
+            if (importances == null) {
+                importances = new double[learnerImportances.length];
+            }
+            for (int f = 0; f < importances.length; f++) {
+                importances[f] += learnerImportances[f] / _weakLearners.size();
+            }
+        }
+        return importances;
+    }
+
+    /**
+     * Computes out-of-bag permutation importances (Breiman): for every weak learner, each feature column of its
+     * out-of-bag rows is shuffled and the drop in the learner's accuracy on those rows is recorded. The result is the
+     * mean drop over learners and repeats. Unlike impurity importances it works with any base model and is not biased
+     * toward features with many distinct values.
+     * <p>
+     * Learners are processed in parallel, each on its own copy of its out-of-bag rows and with its own generator
+     * derived from {@code seed}, so the result does not depend on the number of threads.
+     * </p>
+     *
+     * @param X The training data features passed to {@code fit}.
+     * @param nRepeats Number of shuffles per feature and learner.
+     * @param seed Seed of the shuffles, or {@code null} for a random one.
+     * @return The mean out-of-bag accuracy decrease of each feature; it can be slightly negative for useless features.
+     * @throws IllegalStateException if out-of-bag estimation was not enabled before fitting or no row was ever out of
+     * bag.
+     */
+    public double[] permutationImportances(double[][] X, int nRepeats, Integer seed) {
+        if (_oobVotes == null) {
+            throw new IllegalStateException("Out-of-bag estimation was not enabled before fitting (see setComputeOob).");
+        }
+        if (X.length != _oobVotes.length) {
+            throw new IllegalArgumentException("X must be the training data passed to fit.");
+        }
+        if (nRepeats < 1) {
+            throw new IllegalArgumentException("The number of repeats must be greater than zero.");
+        }
+        int nFeatures = X[0].length;
+        SplittableRandom seeder = new SplittableRandom((seed != null) ? seed : new SplittableRandom().nextLong());
+        long[] learnerSeeds = new long[_weakLearners.size()];
+        for (int t = 0; t < learnerSeeds.length; t++) {
+            learnerSeeds[t] = seeder.nextLong();
+        }
+
+        double[][] decreases = IntStream.range(0, _weakLearners.size()).parallel()
+            .mapToObj(t -> learnerPermutationDecreases(t, X, nRepeats, new SplittableRandom(learnerSeeds[t])))
+            .toArray(double[][]::new);
+
+        // Sum in learner order so the result is the same for every thread count
+        double[] importances = new double[nFeatures];
+        int scoredLearners = 0;
+        for (double[] learnerDecreases : decreases) {
+            if (learnerDecreases == null) continue;
+            scoredLearners++;
+            for (int f = 0; f < nFeatures; f++) {
+                importances[f] += learnerDecreases[f];
+            }
+        }
+        if (scoredLearners == 0) {
+            throw new IllegalStateException("No training row was left out of any bag; increase the number of bags.");
+        }
+        for (int f = 0; f < nFeatures; f++) {
+            importances[f] /= scoredLearners;
+        }
+        return importances;
+    }
+
+    /**
+     * Mean accuracy decrease of each feature for one weak learner on its out-of-bag rows, or null if it has none.
+     */
+    private double[] learnerPermutationDecreases(int learner, double[][] X, int nRepeats, SplittableRandom random) {
+        int[] oobRows = _oobIndices.get(learner);
+        if (oobRows == null || oobRows.length == 0) return null;
+        Model model = _weakLearners.get(learner);
+        int nFeatures = X[0].length;
+
+        double[][] oobX = new double[oobRows.length][];
+        int[] oobY = new int[oobRows.length];
+        for (int i = 0; i < oobRows.length; i++) {
+            oobX[i] = X[oobRows[i]].clone();
+            oobY[i] = _oobLabels[oobRows[i]];
+        }
+        double baseline = Accuracy.calculate(oobY, model.predict(oobX));
+
+        double[] decreases = new double[nFeatures];
+        double[] column = new double[oobRows.length];
+        for (int f = 0; f < nFeatures; f++) {
+            for (int i = 0; i < oobX.length; i++) {
+                column[i] = oobX[i][f];
+            }
+            for (int r = 0; r < nRepeats; r++) {
+                // Fisher-Yates shuffle of the column across the out-of-bag rows
+                for (int i = oobX.length - 1; i >= 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    double value = oobX[i][f];
+                    oobX[i][f] = oobX[j][f];
+                    oobX[j][f] = value;
+                }
+                decreases[f] += (baseline - Accuracy.calculate(oobY, model.predict(oobX))) / nRepeats;
+            }
+            for (int i = 0; i < oobX.length; i++) {
+                oobX[i][f] = column[i];
+            }
+        }
+        return decreases;
+    }
+
     @Override
     public Model clone() {
         logger.severe("clone method is not supported");
@@ -152,7 +648,112 @@ public class Bagging implements Model {
     public Integer getSeed(){
         return this._seed;
     }
-    
-        
 
+    /**
+     * Writes the settings, the base model and the weak learners (see {@link ModelSerializer}). Out-of-bag state is not
+     * saved; a loaded ensemble can still be grown with warm start and gets the same new bags as the original.
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the base model type is not supported by {@link ModelSerializer}.
+     */
+    public void writeTo(ModelOutput out) throws IOException {
+        writeSettings(out);
+        ModelSerializer.writeModel(_model, out);
+        out.writeInt(_weakLearners.size());
+        for (Model learner : _weakLearners) {
+            ModelSerializer.writeModel(learner, out);
+        }
+    }
+
+    /**
+     * Reads an ensemble written by {@link #writeTo(ModelOutput)}.
+     *
+     * @param in The source.
+     * @return The ensemble with its weak learners.
+     * @throws IOException If reading fails or the data is corrupted.
+     */
+    public static Bagging readFrom(ModelInput in) throws IOException {
+        Settings settings = readSettings(in);
+        Bagging bagging = settings.create(ModelSerializer.readModel(in));
+        int learners = in.readLength();
+        List<Model> weakLearners = new ArrayList<>(learners);
+        for (int i = 0; i < learners; i++) {
+            weakLearners.add(ModelSerializer.readModel(in));
+        }
+        bagging.setWeakLearners(weakLearners);
+        return bagging;
+    }
+
+    /**
+     * Writes every setting but the base model and the learners.
+     */
+    void writeSettings(ModelOutput out) throws IOException {
+        out.writeInt(_bagsNumber);
+        out.writeDouble(_sampleSize);
+        out.writeBoolean(_seed != null);
+        out.writeLong(_baseSeed);
+        out.writeInt(_numWorkers);
+        out.writeBoolean(_bootstrap);
+        out.writeBoolean(_warmStart);
+        out.writeInt(_bagsFitted);
+    }
+
+    static Settings readSettings(ModelInput in) throws IOException {
+        Settings settings = new Settings();
+        settings.bagsNumber = in.readInt();
+        settings.sampleSize = in.readDouble();
+        settings.hasSeed = in.readBoolean();
+        settings.baseSeed = in.readLong();
+        settings.numWorkers = in.readInt();
+        settings.bootstrap = in.readBoolean();
+        settings.warmStart = in.readBoolean();
+        settings.bagsFitted = in.readInt();
+        return settings;
+    }
+
+    /**
+     * Installs already-trained weak learners, e.g. loaded from a file or trained elsewhere.
+     */
+    void setWeakLearners(List<Model> weakLearners) {
+        this._weakLearners = new ArrayList<>(weakLearners);
+        this._bagsFitted = Math.max(_bagsFitted, weakLearners.size());
+        this._oobVotes = null;
+    }
+
+    /**
+     * Saved settings of an ensemble, applied once its base model is known.
+     */
+    static class Settings {
+        int bagsNumber;
+        double sampleSize;
+        boolean hasSeed;
+        long baseSeed;
+        int numWorkers;
+        boolean bootstrap;
+        boolean warmStart;
+        int bagsFitted;
+
+        Bagging create(Model model) {
+            Bagging bagging = new Bagging(model, bagsNumber, sampleSize, hasSeed ? (int) baseSeed : null, numWorkers);
+            bagging._baseSeed = baseSeed;
+            bagging._bootstrap = bootstrap;
+            bagging._warmStart = warmStart;
+            bagging._bagsFitted = bagsFitted;
+            return bagging;
+        }
+    }
+
+    /**
+     * A trained weak learner and, when out-of-bag estimation is on, its predictions for the rows left out of its bag.
+     */
+    private static class BagResult {
+        final Model learner;
+        int[] oobIndices;
+        int[] oobPredictions;
+
+        BagResult(Model learner) {
+            this.learner = learner;
+        }
+    }
 }
@@ -0,0 +1,300 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.ModelSerializer;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+import net.acimon.jmlearn.utils.TrainingControl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Trains a {@link RandomForestTree} across several local worker JVMs, so the forest is no longer bounded by the heap
+ * and cores of one process.
+ * <p>
+ * The coordinator writes the training set once to a file that the workers memory-map, launches the workers with
+ * {@link ProcessBuilder} and gives each one a contiguous slice of the bags over a loopback socket. Workers stream
+ * every tree back in the {@link ModelSerializer} format as soon as it is grown, and the coordinator installs them in
+ * bag order into the forest. Each bag is trained from the same seed-derived generator as in
+ * {@link Bagging#fit(double[][], int[])}, so a seeded forest is identical to the one a local fit gives.
+ * </p>
+ * <p>
+ * The workers share the file, not the rows: trees train on {@code double[][]}, so each worker copies the training set
+ * onto its own heap when it starts: about {@code rows * (8 * features + 24)} bytes, for the row arrays with their
+ * headers and references and the labels. Give the workers enough heap for that copy plus their trees with
+ * {@link #setJvmOptions(List)}.
+ * </p>
+ *
+ * <h2>Key Features</h2>
+ * <ul>
+ *     <li>The training set is written once, and workers read it from one shared page-cache copy.</li>
+ *     <li>Trees are streamed back while the other bags are still training.</li>
+ *     <li>The forest's {@link TrainingControl} is honored: progress per tree, cancellation and deadline.</li>
+ *     <li>A failed worker fails the fit, and every worker process is stopped on exit.</li>
+ * </ul>
+ * Out-of-bag estimation is not available for distributed fits.
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * RandomForestTree forest = new RandomForestTree(2000, 2, 20, 8, 42, 0.7);
+ * DistributedForestTrainer trainer = new DistributedForestTrainer(4, 8);
+ * trainer.setJvmOptions(Arrays.asList("-Xmx4g"));
+ * trainer.fit(forest, XTrain, yTrain);
+ * int[] predictions = forest.predict(XTest);
+ * </pre>
+ */
+public class DistributedForestTrainer {
+
+    static final int END_OF_TREES = -1; // Sent by a worker after its last tree
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 60_000;
+    private static final long POLL_MILLIS = 50; // How often the coordinator checks the control while waiting
+
+    private final int _workers;
+    private final int _threadsPerWorker;
+    private List<String> _jvmOptions = Collections.emptyList();
+    private int _connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private static final Logger logger = Logger.getLogger(DistributedForestTrainer.class.getName());
+
+    /**
+     * @param workers Number of worker processes.
+     * @param threadsPerWorker Number of trees each worker grows at the same time.
+     */
+    public DistributedForestTrainer(int workers, int threadsPerWorker) {
+        if (workers < 1 || threadsPerWorker < 1) {
+            throw new IllegalArgumentException("The numbers of workers and threads per worker must be positive.");
+        }
+        this._workers = workers;
+        this._threadsPerWorker = threadsPerWorker;
+    }
+
+    public int getWorkers() {
+        return _workers;
+    }
+    public int getThreadsPerWorker() {
+        return _threadsPerWorker;
+    }
+
+    /**
+     * @param jvmOptions Options of the worker JVMs, e.g. {@code -Xmx4g}.
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this._jvmOptions = new ArrayList<>(jvmOptions);
+    }
+    public List<String> getJvmOptions() {
+        return Collections.unmodifiableList(_jvmOptions);
+    }
+
+    /**
+     * @param connectTimeoutMillis Time allowed for every worker to start and connect back.
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        if (connectTimeoutMillis < 1) {
+            throw new IllegalArgumentException("The connect timeout must be positive.");
+        }
+        this._connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * Trains the bags of {@code forest} on the worker processes and installs the trees into it, replacing any fitted
+     * trees. The forest's settings (base tree, number of trees, sample size, seed, bootstrap) define the job.
+     *
+     * @param forest The forest to fit.
+     * @param X The training data features.
+     * @param y The training data labels.
+     * @throws IOException If a worker cannot be launched, fails, or the connection breaks.
+     * @throws TrainingCancelledException If the forest's training control stops the fit.
+     */
+    public void fit(RandomForestTree forest, double[][] X, int[] y) throws IOException {
+        if (X.length == 0 || X.length != y.length) {
+            throw new IllegalArgumentException("The number of samples in X and y must match and be positive.");
+        }
+        int numFeatures = X[0].length;
+        for (int i = 1; i < X.length; i++) {
+            if (X[i].length != numFeatures) {
+                throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
+            }
+        }
+        Bagging bagging = forest.getBagging();
+        int treeNumber = bagging.getBagsNumber();
+        int workers = Math.min(_workers, treeNumber);
+        TrainingControl control = bagging.getTrainingControl();
+
+        Path dataset = Files.createTempFile("jmlearn-dataset", ".bin");
+        List<Process> processes = new ArrayList<>();
+        ExecutorService receivers = Executors.newFixedThreadPool(workers);
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            SharedDataset.write(dataset, X, y);
+            for (int w = 0; w < workers; w++) {
+                processes.add(launch(server.getLocalPort(), dataset, w));
+            }
+
+            DecisionTree[] trees = new DecisionTree[treeNumber];
+            AtomicInteger received = new AtomicInteger();
+            long startNanos = System.nanoTime();
+            long connectDeadline = startNanos + TimeUnit.MILLISECONDS.toNanos(_connectTimeoutMillis);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                Socket socket = accept(server, processes, connectDeadline, control);
+                futures.add(receivers.submit(() -> {
+                    try (Socket connection = socket) {
+                        receive(connection, forest, workers, trees, received);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(futures, control, received, treeNumber, startNanos);
+            forest.installTrees(new ArrayList<Model>(Arrays.asList(trees)));
+            logger.info("Received " + treeNumber + " trees from " + workers + " workers.");
+        } finally {
+            receivers.shutdownNow();
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+            Files.deleteIfExists(dataset);
+        }
+    }
+
+    private Process launch(int port, Path dataset, int workerIndex) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(_jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ForestWorker.class.getName());
+        command.add(InetAddress.getLoopbackAddress().getHostAddress());
+        command.add(String.valueOf(port));
+        command.add(dataset.toString());
+        command.add(String.valueOf(workerIndex));
+        command.add(String.valueOf(_threadsPerWorker));
+        return new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.INHERIT)
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Waits for the next worker to connect, failing early if a worker process died or the control stops the fit.
+     */
+    private Socket accept(ServerSocket server, List<Process> processes, long deadlineNanos, TrainingControl control)
+            throws IOException {
+        server.setSoTimeout((int) POLL_MILLIS);
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                for (int w = 0; w < processes.size(); w++) {
+                    Process process = processes.get(w);
+                    if (!process.isAlive() && process.exitValue() != 0) {
+                        throw new IOException("Worker " + w + " exited with status " + process.exitValue()
+                            + " before connecting.");
+                    }
+                }
+                if (control != null) {
+                    control.checkpoint();
+                }
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    throw new IOException("The workers did not connect within " + _connectTimeoutMillis + " ms.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends one worker its job and reads its trees until it reports the end of its slice. Runs on a receiver thread,
+     * so it only counts the trees; {@link #awaitAll} reports the progress on the thread that runs the fit.
+     */
+    private static void receive(Socket socket, RandomForestTree forest, int workers, DecisionTree[] trees,
+                                AtomicInteger received) throws IOException {
+        ModelInput in = new ModelInput(Channels.newChannel(socket.getInputStream()));
+        ModelSerializer.readHeader(in);
+        int workerIndex = in.readInt();
+        if (workerIndex < 0 || workerIndex >= workers) {
+            throw new IOException("Unexpected worker index " + workerIndex);
+        }
+        int from = (int) ((long) trees.length * workerIndex / workers);
+        int to = (int) ((long) trees.length * (workerIndex + 1) / workers);
+
+        ModelOutput out = new ModelOutput(Channels.newChannel(socket.getOutputStream()));
+        out.writeInt(ModelSerializer.MAGIC);
+        out.writeInt(ModelSerializer.VERSION);
+        forest.getBaseTree().writeTo(out);
+        forest.getBagging().writeSettings(out);
+        out.writeInt(from);
+        out.writeInt(to);
+        out.flush();
+
+        for (int remaining = to - from; remaining > 0; remaining--) {
+            int bag = in.readInt();
+            if (bag < from || bag >= to || trees[bag] != null) {
+                throw new IOException("Worker " + workerIndex + " sent an unexpected bag " + bag);
+            }
+            trees[bag] = DecisionTree.readFrom(in);
+            received.incrementAndGet();
+        }
+        if (in.readInt() != END_OF_TREES) {
+            throw new IOException("Worker " + workerIndex + " sent more trees than its slice.");
+        }
+    }
+
+    /**
+     * Waits for every worker's trees, checking the control while waiting and failing as soon as any worker fails.
+     * Progress is reported from here, on the calling thread, whenever more trees were received since the last check.
+     */
+    private static void awaitAll(List<Future<?>> futures, TrainingControl control, AtomicInteger received,
+                                 int total, long startNanos) throws IOException {
+        List<Future<?>> pending = new ArrayList<>(futures);
+        int reported = 0;
+        try {
+            while (!pending.isEmpty()) {
+                if (control != null) {
+                    control.checkpoint();
+                }
+                try {
+                    pending.get(0).get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Check the control again
+                }
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    if (pending.get(i).isDone()) {
+                        pending.remove(i).get(); // Throws the worker's failure
+                    }
+                }
+                int done = received.get();
+                if (control != null && done > reported) {
+                    control.reportProgress(done, total, startNanos, 0);
+                    reported = done;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrainingCancelledException("Training was interrupted.", false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException("A worker failed: " + cause.getMessage(), cause);
+            }
+            throw new IllegalStateException("A worker failed.", cause);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.ModelSerializer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entry point of the worker processes launched by {@link DistributedForestTrainer}.
+ * <p>
+ * A worker maps the shared dataset, connects back to the coordinator, receives the forest settings and its slice of
+ * bags, trains them on its own threads and streams every tree back as soon as it is grown. It exits with a non-zero
+ * status on any failure, which the coordinator sees as a closed connection.
+ * </p>
+ * Arguments: {@code <host> <port> <dataset file> <worker index> <threads>}.
+ */
+public final class ForestWorker {
+
+    private static final Logger logger = Logger.getLogger(ForestWorker.class.getName());
+
+    private ForestWorker() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 5) {
+            System.err.println("Usage: ForestWorker <host> <port> <dataset file> <worker index> <threads>");
+            System.exit(2);
+        }
+        try {
+            run(args[0], Integer.parseInt(args[1]), args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Worker " + args[3] + " failed", e);
+            System.exit(1);
+        }
+    }
+
+    private static void run(String host, int port, String datasetPath, int workerIndex, int threads)
+            throws IOException, InterruptedException, ExecutionException {
+        SharedDataset data = SharedDataset.read(Paths.get(datasetPath));
+
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            ModelOutput out = new ModelOutput(channel);
+            out.writeInt(ModelSerializer.MAGIC);
+            out.writeInt(ModelSerializer.VERSION);
+            out.writeInt(workerIndex);
+            out.flush();
+
+            // The job: the base tree, the ensemble settings and the bags [from, to)
+            ModelInput in = new ModelInput(channel);
+            ModelSerializer.readHeader(in);
+            DecisionTree baseTree = DecisionTree.readFrom(in);
+            Bagging bagging = Bagging.readSettings(in).create(baseTree);
+            int from = in.readInt();
+            int to = in.readInt();
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int bag = from; bag < to; bag++) {
+                    final int finalBag = bag;
+                    futures.add(executor.submit(() -> {
+                        Model tree = bagging.fitBag(data.X, data.y, finalBag);
+                        synchronized (out) {
+                            out.writeInt(finalBag);
+                            ((DecisionTree) tree).writeTo(out);
+                            out.flush();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            out.writeInt(DistributedForestTrainer.END_OF_TREES);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.WeightedModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A histogram-based gradient boosting classifier.
+ * <p>
+ * Each boosting iteration fits one regression tree per class to the gradients of the multinomial log-loss
+ * (softmax cross-entropy). Features are discretized once into at most {@code maxBins} quantile bins, so finding a
+ * split only scans per-bin gradient histograms instead of sorting the samples, and the histogram of the larger child
+ * is obtained by subtracting the smaller child's histogram from its parent's. Trees are grown leaf-wise: the leaf with
+ * the highest loss reduction is split first until {@code maxLeafNodes} leaves exist. Leaf values are Newton steps
+ * shrunk by the learning rate.
+ * </p>
+ *
+ * <h2>Key Features</h2>
+ * <ul>
+ *     <li>Few shallow trees instead of hundreds of deep ones, which keeps scoring latency and model size low.</li>
+ *     <li>Implements {@link WeightedModel}, so it can be trained on bootstrap count vectors by {@link Bagging}.</li>
+ *     <li>Class probabilities through {@link #predictProba(double[][])}.</li>
+ * </ul>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * HistGradientBoosting model = new HistGradientBoosting(100, 0.1);
+ * model.fit(XTrain, yTrain);
+ * int[] predictions = model.predict(XTest);
+ * </pre>
+ *
+ * <h2>Constructor Summary</h2>
+ * <ul>
+ *     <li>{@link HistGradientBoosting#HistGradientBoosting(int, double, int, int, int, double, int)} - Constructs a model with every hyper-parameter.</li>
+ *     <li>{@link HistGradientBoosting#HistGradientBoosting(int, double)} - Constructs a model with a number of iterations and a learning rate.</li>
+ *     <li>{@link HistGradientBoosting#HistGradientBoosting()} - Constructs a model with default settings.</li>
+ * </ul>
+ */
+public class HistGradientBoosting implements WeightedModel {
+
+    private int _maxIter; // Number of boosting iterations
+    private double _learningRate;
+    private int _maxLeafNodes;
+    private int _maxDepth; // -1 for no limit
+    private int _minSamplesLeaf;
+    private double _l2Regularization;
+    private int _maxBins;
+
+    private int[] _classes; // Sorted distinct training labels
+    private double[] _baseScores; // Log prior of each class
+    private List<RegressionTree[]> _trees; // One tree per class for each iteration
+    private static final Logger logger = Logger.getLogger(HistGradientBoosting.class.getName());
+
+    // Default values
+    private static final int DEFAULT_MAX_ITER = 100;
+    private static final double DEFAULT_LEARNING_RATE = 0.1;
+    private static final int DEFAULT_MAX_LEAF_NODES = 31;
+    private static final int DEFAULT_MAX_DEPTH = -1;
+    private static final int DEFAULT_MIN_SAMPLES_LEAF = 20;
+    private static final double DEFAULT_L2_REGULARIZATION = 0.0;
+    private static final int DEFAULT_MAX_BINS = 255;
+    private static final double MIN_HESSIAN_TO_SPLIT = 1e-3;
+    private static final int PARALLEL_MIN_ROWS = 4096; // Node size from which histograms are built in parallel
+
+    /**
+     * Constructor for HistGradientBoosting with every hyper-parameter.
+     *
+     * @param maxIter Number of boosting iterations.
+     * @param learningRate Shrinkage applied to every leaf value.
+     * @param maxLeafNodes Maximum number of leaves of each tree (at least 2).
+     * @param maxDepth Maximum depth of each tree, -1 for no limit.
+     * @param minSamplesLeaf Minimum number of samples in a leaf.
+     * @param l2Regularization L2 penalty on leaf values.
+     * @param maxBins Maximum number of bins per feature (2 to 256).
+     * @throws IllegalArgumentException if a hyper-parameter is out of range.
+     */
+    public HistGradientBoosting(int maxIter, double learningRate, int maxLeafNodes, int maxDepth, int minSamplesLeaf,
+                                double l2Regularization, int maxBins) {
+        if (maxIter < 1 || learningRate <= 0 || maxLeafNodes < 2 || minSamplesLeaf < 1 || l2Regularization < 0
+                || maxBins < 2 || maxBins > 256 || (maxDepth < 1 && maxDepth != -1)) {
+            throw new IllegalArgumentException("Invalid hyper-parameters for HistGradientBoosting.");
+        }
+        this._maxIter = maxIter;
+        this._learningRate = learningRate;
+        this._maxLeafNodes = maxLeafNodes;
+        this._maxDepth = maxDepth;
+        this._minSamplesLeaf = minSamplesLeaf;
+        this._l2Regularization = l2Regularization;
+        this._maxBins = maxBins;
+    }
+
+    public HistGradientBoosting(int maxIter, double learningRate) {
+        this(maxIter, learningRate, DEFAULT_MAX_LEAF_NODES, DEFAULT_MAX_DEPTH, DEFAULT_MIN_SAMPLES_LEAF,
+            DEFAULT_L2_REGULARIZATION, DEFAULT_MAX_BINS);
+    }
+
+    public HistGradientBoosting() {
+        this(DEFAULT_MAX_ITER, DEFAULT_LEARNING_RATE);
+    }
+
+    public HistGradientBoosting(HistGradientBoosting other) {
+        this(other._maxIter, other._learningRate, other._maxLeafNodes, other._maxDepth, other._minSamplesLeaf,
+            other._l2Regularization, other._maxBins);
+        if (other._trees != null) {
+            // Fitted trees are never modified, so they can be shared
+            this._classes = other._classes.clone();
+            this._baseScores = other._baseScores.clone();
+            this._trees = new ArrayList<>(other._trees);
+        }
+    }
+
+    @Override
+    public Model clone() {
+        return new HistGradientBoosting(this);
+    }
+
+    public int getMaxIter() {
+        return _maxIter;
+    }
+    public double getLearningRate() {
+        return _learningRate;
+    }
+    public int getMaxLeafNodes() {
+        return _maxLeafNodes;
+    }
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+    public int getMinSamplesLeaf() {
+        return _minSamplesLeaf;
+    }
+    public double getL2Regularization() {
+        return _l2Regularization;
+    }
+    public int getMaxBins() {
+        return _maxBins;
+    }
+    public int[] getClasses() {
+        return _classes;
+    }
+
+    @Override
+    public void fit(double[][] X, int[] Y) {
+        if (X == null || Y == null || X.length == 0 || X.length != Y.length) {
+            throw new IllegalArgumentException("Invalid input data");
+        }
+        double[] sampleWeights = new double[X.length];
+        Arrays.fill(sampleWeights, 1.0);
+        fit(X, Y, sampleWeights);
+    }
+
+    @Override
+    public void fit(double[][] X) {
+        logger.severe("fit method without labels not supported for HistGradientBoosting model");
+        throw new UnsupportedOperationException("fit method without labels not supported for HistGradientBoosting model");
+    }
+
+    /**
+     * Fits the boosted trees to weighted training data.
+     *
+     * @param X The training data features.
+     * @param Y The training data labels.
+     * @param sampleWeights Non-negative weight of each sample; rows with a weight of zero are ignored.
+     */
+    @Override
+    public void fit(double[][] X, int[] Y, double[] sampleWeights) {
+        if (X == null || Y == null || sampleWeights == null || X.length == 0 || X.length != Y.length
+                || X.length != sampleWeights.length) {
+            throw new IllegalArgumentException("Invalid input data");
+        }
+        int nFeatures = X[0].length;
+        for (double[] sample : X) {
+            if (sample.length != nFeatures) {
+                throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
+            }
+        }
+        int[] rows = IntStream.range(0, X.length).filter(i -> sampleWeights[i] > 0).toArray();
+        if (rows.length == 0) {
+            throw new IllegalArgumentException("At least one sample must have a positive weight");
+        }
+
+        _classes = Arrays.stream(rows).map(i -> Y[i]).distinct().sorted().toArray();
+        int nClasses = _classes.length;
+        int[] encodedY = new int[X.length];
+        for (int i : rows) {
+            encodedY[i] = Arrays.binarySearch(_classes, Y[i]);
+        }
+
+        // Start from the log prior of each class
+        _baseScores = new double[nClasses];
+        double totalWeight = 0.0;
+        for (int i : rows) {
+            _baseScores[encodedY[i]] += sampleWeights[i];
+            totalWeight += sampleWeights[i];
+        }
+        for (int c = 0; c < nClasses; c++) {
+            _baseScores[c] = Math.log(_baseScores[c] / totalWeight);
+        }
+
+        Binner binner = new Binner(X, rows, _maxBins);
+        double[][] scores = new double[X.length][];
+        for (int i : rows) {
+            scores[i] = _baseScores.clone();
+        }
+        double[][] probabilities = new double[X.length][nClasses];
+        double[] gradients = new double[X.length];
+        double[] hessians = new double[X.length];
+
+        _trees = new ArrayList<>(_maxIter);
+        for (int iter = 0; iter < _maxIter; iter++) {
+            for (int i : rows) {
+                softmax(scores[i], probabilities[i]);
+            }
+            RegressionTree[] iterationTrees = new RegressionTree[nClasses];
+            for (int c = 0; c < nClasses; c++) {
+                // Gradient and hessian of the multinomial log-loss for class c
+                for (int i : rows) {
+                    double p = probabilities[i][c];
+                    gradients[i] = sampleWeights[i] * (p - (encodedY[i] == c ? 1.0 : 0.0));
+                    hessians[i] = sampleWeights[i] * Math.max(p * (1.0 - p), 1e-16);
+                }
+                iterationTrees[c] = new TreeGrower(binner, gradients, hessians, rows).grow(scores, c);
+            }
+            _trees.add(iterationTrees);
+        }
+    }
+
+    /**
+     * Predicts the probability of each class.
+     *
+     * @param X The input data.
+     * @return A 2D array where row i holds the class probabilities of sample i, in the order of {@link #getClasses()}.
+     */
+    public double[][] predictProba(double[][] X) {
+        if (_trees == null) {
+            throw new IllegalStateException("The model must be fitted before predicting.");
+        }
+        double[][] probabilities = new double[X.length][_classes.length];
+        IntStream.range(0, X.length).parallel().forEach(i -> softmax(rawScores(X[i]), probabilities[i]));
+        return probabilities;
+    }
+
+    @Override
+    public int[] predict(double[][] X) {
+        if (_trees == null) {
+            throw new IllegalStateException("The model must be fitted before predicting.");
+        }
+        int[] predictions = new int[X.length];
+        IntStream.range(0, X.length).parallel().forEach(i -> {
+            double[] scores = rawScores(X[i]);
+            int best = 0;
+            for (int c = 1; c < scores.length; c++) {
+                if (scores[c] > scores[best]) best = c;
+            }
+            predictions[i] = _classes[best];
+        });
+        return predictions;
+    }
+
+    private double[] rawScores(double[] sample) {
+        double[] scores = _baseScores.clone();
+        for (RegressionTree[] iterationTrees : _trees) {
+            for (int c = 0; c < scores.length; c++) {
+                scores[c] += iterationTrees[c].predict(sample);
+            }
+        }
+        return scores;
+    }
+
+    private static void softmax(double[] scores, double[] out) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : scores) max = Math.max(max, score);
+        double sum = 0.0;
+        for (int c = 0; c < scores.length; c++) {
+            out[c] = Math.exp(scores[c] - max);
+            sum += out[c];
+        }
+        for (int c = 0; c < scores.length; c++) {
+            out[c] /= sum;
+        }
+    }
+
+    /**
+     * Discretizes every feature into at most {@code maxBins} bins. Bin {@code b} holds the values
+     * {@code edges[b - 1] < x <= edges[b]}, so a split on bin {@code b} is the raw threshold {@code x <= edges[b]}.
+     */
+    private static class Binner {
+        final double[][] edges; // Upper edge of each bin but the last, per feature
+        final byte[][] bins; // Bin of each row, per feature (column-major)
+
+        Binner(double[][] X, int[] rows, int maxBins) {
+            int nFeatures = X[0].length;
+            edges = new double[nFeatures][];
+            bins = new byte[nFeatures][X.length];
+            IntStream.range(0, nFeatures).parallel().forEach(f -> {
+                double[] values = new double[rows.length];
+                for (int r = 0; r < rows.length; r++) {
+                    values[r] = X[rows[r]][f];
+                }
+                Arrays.sort(values);
+                double[] distinct = Arrays.stream(values).distinct().toArray();
+                if (distinct.length <= maxBins) {
+                    // Few distinct values: one bin per value, split half-way between them
+                    edges[f] = new double[distinct.length - 1];
+                    for (int b = 0; b < edges[f].length; b++) {
+                        edges[f][b] = (distinct[b] + distinct[b + 1]) / 2.0;
+                    }
+                } else {
+                    double[] quantiles = new double[maxBins - 1];
+                    for (int b = 1; b < maxBins; b++) {
+                        quantiles[b - 1] = values[(int) ((long) b * values.length / maxBins)];
+                    }
+                    edges[f] = Arrays.stream(quantiles).distinct().toArray();
+                }
+                for (int i : rows) {
+                    bins[f][i] = (byte) bin(edges[f], X[i][f]);
+                }
+            });
+        }
+
+        static int bin(double[] edges, double value) {
+            int position = Arrays.binarySearch(edges, value);
+            return (position >= 0) ? position : -position - 1;
+        }
+
+        int binCount(int feature) {
+            return edges[feature].length + 1;
+        }
+    }
+
+    /**
+     * A fitted regression tree in flat arrays. Leaves have a feature of {@code -1}.
+     */
+    private static class RegressionTree {
+        final int[] features;
+        final double[] thresholds;
+        final int[] leftChildren;
+        final int[] rightChildren;
+        final double[] values;
+
+        RegressionTree(int nodeCount) {
+            features = new int[nodeCount];
+            thresholds = new double[nodeCount];
+            leftChildren = new int[nodeCount];
+            rightChildren = new int[nodeCount];
+            values = new double[nodeCount];
+        }
+
+        double predict(double[] sample) {
+            int node = 0;
+            while (features[node] != -1) {
+                node = (sample[features[node]] <= thresholds[node]) ? leftChildren[node] : rightChildren[node];
+            }
+            return values[node];
+        }
+    }
+
+    /**
+     * A leaf of the tree being grown: a segment of the row buffer, its gradient histograms and its best split.
+     */
+    private static class GrowingLeaf {
+        final int node;
+        final int start;
+        final int end;
+        final int depth;
+        double sumGradients;
+        double sumHessians;
+        double[] histGradients; // Indexed by feature * binStride + bin
+        double[] histHessians;
+        int[] histCounts;
+        int splitFeature = -1;
+        int splitBin;
+        double splitGain;
+
+        GrowingLeaf(int node, int start, int end, int depth) {
+            this.node = node;
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Grows one leaf-wise regression tree on the gradients of one class.
+     */
+    private class TreeGrower {
+        private final Binner _binner;
+        private final double[] _gradients;
+        private final double[] _hessians;
+        private final int[] _rows; // Partitioned in place: each leaf owns a contiguous segment
+        private final int _binStride;
+        private final RegressionTree _tree;
+        private int _nodeCount;
+
+        TreeGrower(Binner binner, double[] gradients, double[] hessians, int[] rows) {
+            this._binner = binner;
+            this._gradients = gradients;
+            this._hessians = hessians;
+            this._rows = rows.clone();
+            int maxBinCount = 0;
+            for (int f = 0; f < binner.edges.length; f++) {
+                maxBinCount = Math.max(maxBinCount, binner.binCount(f));
+            }
+            this._binStride = maxBinCount;
+            this._tree = new RegressionTree(2 * _maxLeafNodes - 1);
+        }
+
+        /**
+         * Grows the tree and adds its leaf values to {@code scores[row][classIndex]} of the training rows.
+         */
+        RegressionTree grow(double[][] scores, int classIndex) {
+            GrowingLeaf root = new GrowingLeaf(_nodeCount++, 0, _rows.length, 0);
+            buildHistograms(root);
+            sumHistogram(root);
+
+            List<GrowingLeaf> leaves = new ArrayList<>();
+            PriorityQueue<GrowingLeaf> splittable = new PriorityQueue<>((a, b) -> Double.compare(b.splitGain, a.splitGain));
+            findBestSplit(root);
+            if (root.splitFeature != -1) splittable.add(root); else leaves.add(root);
+
+            int leafCount = 1;
+            while (!splittable.isEmpty() && leafCount < _maxLeafNodes) {
+                GrowingLeaf parent = splittable.poll();
+                GrowingLeaf[] children = split(parent);
+                leafCount++;
+                for (GrowingLeaf child : children) {
+                    findBestSplit(child);
+                    if (child.splitFeature != -1) splittable.add(child); else leaves.add(child);
+                }
+            }
+            leaves.addAll(splittable);
+
+            for (GrowingLeaf leaf : leaves) {
+                double value = -_learningRate * leaf.sumGradients / (leaf.sumHessians + _l2Regularization);
+                if (Double.isNaN(value) || Double.isInfinite(value)) value = 0.0;
+                _tree.features[leaf.node] = -1;
+                _tree.values[leaf.node] = value;
+                for (int r = leaf.start; r < leaf.end; r++) {
+                    scores[_rows[r]][classIndex] += value;
+                }
+            }
+
+            RegressionTree tree = new RegressionTree(_nodeCount);
+            System.arraycopy(_tree.features, 0, tree.features, 0, _nodeCount);
+            System.arraycopy(_tree.thresholds, 0, tree.thresholds, 0, _nodeCount);
+            System.arraycopy(_tree.leftChildren, 0, tree.leftChildren, 0, _nodeCount);
+            System.arraycopy(_tree.rightChildren, 0, tree.rightChildren, 0, _nodeCount);
+            System.arraycopy(_tree.values, 0, tree.values, 0, _nodeCount);
+            return tree;
+        }
+
+        private void buildHistograms(GrowingLeaf leaf) {
+            int nFeatures = _binner.edges.length;
+            leaf.histGradients = new double[nFeatures * _binStride];
+            leaf.histHessians = new double[nFeatures * _binStride];
+            leaf.histCounts = new int[nFeatures * _binStride];
+            IntStream features = IntStream.range(0, nFeatures);
+            if (leaf.size() >= PARALLEL_MIN_ROWS) {
+                features = features.parallel();
+            }
+            features.forEach(f -> {
+                byte[] bins = _binner.bins[f];
+                int offset = f * _binStride;
+                for (int r = leaf.start; r < leaf.end; r++) {
+                    int row = _rows[r];
+                    int b = offset + (bins[row] & 0xFF);
+                    leaf.histGradients[b] += _gradients[row];
+                    leaf.histHessians[b] += _hessians[row];
+                    leaf.histCounts[b]++;
+                }
+            });
+        }
+
+        private void findBestSplit(GrowingLeaf leaf) {
+            leaf.splitFeature = -1;
+            if ((_maxDepth != -1 && leaf.depth >= _maxDepth) || leaf.size() < 2 * _minSamplesLeaf) {
+                leaf.histGradients = null; // Will never be split, release its histograms
+                leaf.histHessians = null;
+                leaf.histCounts = null;
+                return;
+            }
+            double parentScore = leaf.sumGradients * leaf.sumGradients / (leaf.sumHessians + _l2Regularization);
+            double bestGain = 1e-12;
+            for (int f = 0; f < _binner.edges.length; f++) {
+                int offset = f * _binStride;
+                double leftGradients = 0.0;
+                double leftHessians = 0.0;
+                int leftCount = 0;
+                for (int b = 0; b < _binner.binCount(f) - 1; b++) {
+                    leftGradients += leaf.histGradients[offset + b];
+                    leftHessians += leaf.histHessians[offset + b];
+                    leftCount += leaf.histCounts[offset + b];
+                    int rightCount = leaf.size() - leftCount;
+                    if (leftCount < _minSamplesLeaf) continue;
+                    if (rightCount < _minSamplesLeaf) break;
+                    double rightGradients = leaf.sumGradients - leftGradients;
+                    double rightHessians = leaf.sumHessians - leftHessians;
+                    if (leftHessians < MIN_HESSIAN_TO_SPLIT || rightHessians < MIN_HESSIAN_TO_SPLIT) continue;
+
+                    double gain = leftGradients * leftGradients / (leftHessians + _l2Regularization)
+                        + rightGradients * rightGradients / (rightHessians + _l2Regularization)
+                        - parentScore;
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        leaf.splitFeature = f;
+                        leaf.splitBin = b;
+                        leaf.splitGain = gain;
+                    }
+                }
+            }
+            if (leaf.splitFeature == -1) {
+                leaf.histGradients = null;
+                leaf.histHessians = null;
+                leaf.histCounts = null;
+            }
+        }
+
+        /**
+         * Partitions the parent's rows on its best split and builds the children's histograms: the smaller child is
+         * scanned, the larger one is the parent minus the smaller.
+         */
+        private GrowingLeaf[] split(GrowingLeaf parent) {
+            byte[] bins = _binner.bins[parent.splitFeature];
+            int i = parent.start;
+            int j = parent.end - 1;
+            while (i <= j) {
+                if ((bins[_rows[i]] & 0xFF) <= parent.splitBin) {
+                    i++;
+                } else {
+                    int swap = _rows[i];
+                    _rows[i] = _rows[j];
+                    _rows[j--] = swap;
+                }
+            }
+            GrowingLeaf left = new GrowingLeaf(_nodeCount++, parent.start, i, parent.depth + 1);
+            GrowingLeaf right = new GrowingLeaf(_nodeCount++, i, parent.end, parent.depth + 1);
+
+            _tree.features[parent.node] = parent.splitFeature;
+            _tree.thresholds[parent.node] = _binner.edges[parent.splitFeature][parent.splitBin];
+            _tree.leftChildren[parent.node] = left.node;
+            _tree.rightChildren[parent.node] = right.node;
+
+            GrowingLeaf smaller = (left.size() <= right.size()) ? left : right;
+            GrowingLeaf larger = (smaller == left) ? right : left;
+            buildHistograms(smaller);
+            larger.histGradients = parent.histGradients;
+            larger.histHessians = parent.histHessians;
+            larger.histCounts = parent.histCounts;
+            for (int b = 0; b < larger.histGradients.length; b++) {
+                larger.histGradients[b] -= smaller.histGradients[b];
+                larger.histHessians[b] -= smaller.histHessians[b];
+                larger.histCounts[b] -= smaller.histCounts[b];
+            }
+            parent.histGradients = null;
+            parent.histHessians = null;
+            parent.histCounts = null;
+
+            sumHistogram(left);
+            sumHistogram(right);
+            return new GrowingLeaf[]{left, right};
+        }
+
+        /**
+         * Totals a leaf's gradients and hessians from the histogram of its first feature, which covers every row.
+         */
+        private void sumHistogram(GrowingLeaf leaf) {
+            for (int b = 0; b < _binStride; b++) {
+                leaf.sumGradients += leaf.histGradients[b];
+                leaf.sumHessians += leaf.histHessians[b];
+            }
+        }
+    }
+}
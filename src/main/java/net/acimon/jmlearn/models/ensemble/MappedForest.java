@@ -0,0 +1,135 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+
+/**
+ * A read-only forest that predicts directly from a memory-mapped {@link RandomForestTree} or {@link ExtraTrees} file
+ * saved by {@link ModelSerializer}, without building any tree objects.
+ * <p>
+ * The saved forest already holds its trees as one flat pre-order node table, so opening a file only maps it, reads
+ * the small header and wraps the node arrays in buffer views over the mapping. Leaves are saved as indices into the
+ * sorted distinct labels, so they vote without any lookup. The heap cost is independent of the forest size, opening is
+ * a single pass over the node table to check it, and every process that maps the same file shares one copy of it in
+ * the page cache. Prediction runs the {@link CompiledForest} kernel over the views: blocks of rows are evaluated
+ * against all trees in parallel.
+ * </p>
+ *
+ * <h2>Key Features</h2>
+ * <ul>
+ *     <li>Near-instant loading of large forests, with no per-node objects.</li>
+ *     <li>Pages are loaded lazily by the OS and shared between processes on the same host.</li>
+ *     <li>Predictions are identical to the forest that was saved.</li>
+ * </ul>
+ * Files must be smaller than 2 GB, the limit of a single mapping.
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * ModelSerializer.save(forest, Paths.get("forest.jmlm"));
+ * // On each scoring replica:
+ * MappedForest mapped = MappedForest.open(Paths.get("forest.jmlm"));
+ * int[] predictions = mapped.predict(X);
+ * </pre>
+ */
+public class MappedForest {
+
+    private final CompiledForest _forest; // Prediction kernel over views of the buffer
+
+    /**
+     * Maps a saved forest file.
+     *
+     * @param path The file written by {@link ModelSerializer#save(net.acimon.jmlearn.models.Model, Path)}.
+     * @return The mapped forest.
+     * @throws IOException If the file cannot be mapped or does not hold a valid forest.
+     */
+    public static MappedForest open(Path path) throws IOException {
+        return new MappedForest(ModelSerializer.map(path));
+    }
+
+    /**
+     * Wraps a buffer holding a saved forest, from its current position. The buffer is not copied and must not be
+     * modified while the forest is in use.
+     *
+     * @param buffer The saved forest, e.g. a memory-mapped file.
+     * @throws IOException If the buffer does not hold a valid forest.
+     */
+    public MappedForest(ByteBuffer buffer) throws IOException {
+        ModelInput in = new ModelInput(buffer.duplicate());
+        ModelSerializer.readHeader(in);
+        byte type = in.readByte();
+        if (type != ModelSerializer.RANDOM_FOREST && type != ModelSerializer.EXTRA_TREES) {
+            throw new IOException("Not a saved forest (model type " + type + ")");
+        }
+        DecisionTree.readFrom(in); // Base tree settings, not needed for prediction
+        Bagging.readSettings(in);
+
+        int treeCount = in.readLength();
+        int nodeCount = in.readLength();
+        if (treeCount == 0) {
+            throw new IOException("The saved forest has no trees.");
+        }
+        IntBuffer roots = in.viewInts(treeCount);
+        IntBuffer features = in.viewInts(nodeCount);
+        DoubleBuffer thresholds = in.viewDoubles(nodeCount);
+        IntBuffer rightChildren = in.viewInts(nodeCount);
+        int[] classes = in.readInts(in.readLength());
+        IntBuffer leafClasses = in.viewInts(nodeCount);
+
+        // One pass to check the node table, so a corrupted file cannot send a walk out of bounds or into a loop
+        for (int t = 0; t < treeCount; t++) {
+            int root = roots.get(t);
+            if (root < 0 || root >= nodeCount) {
+                throw new IOException("Corrupted forest: root " + root + " out of range");
+            }
+        }
+        for (int c = 1; c < classes.length; c++) {
+            if (classes[c] <= classes[c - 1]) {
+                throw new IOException("Corrupted forest: labels are not sorted");
+            }
+        }
+        int maxFeature = -1;
+        for (int i = 0; i < nodeCount; i++) {
+            int feature = features.get(i);
+            if (feature == -1) {
+                int leafClass = leafClasses.get(i);
+                if (leafClass < 0 || leafClass >= classes.length) {
+                    throw new IOException("Corrupted forest: invalid class index at node " + i);
+                }
+                continue;
+            }
+            int right = rightChildren.get(i);
+            if (feature < 0 || i + 1 >= nodeCount || right <= i + 1 || right >= nodeCount) {
+                throw new IOException("Corrupted forest: invalid node " + i);
+            }
+            maxFeature = Math.max(maxFeature, feature);
+        }
+        this._forest = new CompiledForest(roots, features, thresholds, rightChildren, leafClasses, classes,
+            maxFeature + 1);
+    }
+
+    public int getTreeCount() {
+        return _forest.getTreeCount();
+    }
+
+    public int getNodeCount() {
+        return _forest.getNodeCount();
+    }
+
+    /**
+     * Predicts the majority vote of the trees for each sample (the smallest label on ties).
+     *
+     * @param X The input data.
+     * @return An array of predicted labels.
+     * @throws IllegalArgumentException if a sample has fewer features than the trees split on.
+     */
+    public int[] predict(double[][] X) {
+        return _forest.predict(X);
+    }
+}
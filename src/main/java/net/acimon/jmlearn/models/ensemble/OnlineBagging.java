@@ -0,0 +1,216 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.IncrementalModel;
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.utils.Counter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Online bagging (Oza and Russell) for streams of labeled samples.
+ * <p>
+ * A bootstrap bag of size n contains each sample Binomial(n, 1/n) times, which tends to Poisson(1) as n grows.
+ * Online bagging therefore shows every arriving sample to each base learner {@code k ~ Poisson(1)} times, through
+ * {@link IncrementalModel#partialFit(double[], int, int)}, so the ensemble stays current at a constant cost per
+ * sample and never retrains in batch. Each learner draws its counts from its own {@link SplittableRandom} derived from
+ * the seed, so the result does not depend on how batches are scheduled across threads.
+ * </p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * OnlineBagging model = new OnlineBagging(new HoeffdingTree(), 10, 42, 4);
+ * for (each event) {
+ *     model.partialFit(event.features, event.label);
+ * }
+ * int[] predictions = model.predict(XTest);
+ * </pre>
+ */
+public class OnlineBagging implements Model {
+
+    private IncrementalModel _model;
+    private int _bagsNumber;
+    private final Integer _seed;
+    private final long _baseSeed;
+    private int _numWorkers;
+    private List<IncrementalModel> _learners;
+    private SplittableRandom[] _randoms; // One Poisson(1) source per learner
+    private long[] _seenWeights; // Total count shown to each learner, learners that saw nothing do not vote
+    private static final Logger logger = Logger.getLogger(OnlineBagging.class.getName());
+
+    public OnlineBagging(IncrementalModel model, int bagsNumber, Integer seed, Integer numWorkers) {
+        if (bagsNumber < 1) {
+            throw new IllegalArgumentException("The number of bags must be greater than zero.");
+        }
+        this._model = model;
+        this._bagsNumber = bagsNumber;
+        this._seed = seed;
+        this._baseSeed = (seed != null) ? seed : new SplittableRandom().nextLong();
+        this._numWorkers = (numWorkers != null) ? numWorkers : 1;
+        reset();
+    }
+
+    public OnlineBagging(IncrementalModel model, int bagsNumber) {
+        this(model, bagsNumber, null, null);
+    }
+
+    public int getBagsNumber() {
+        return _bagsNumber;
+    }
+    public int getNumWorkers() {
+        return _numWorkers;
+    }
+    public Integer getSeed() {
+        return _seed;
+    }
+
+    /**
+     * Discards the learners and starts again from copies of the base model.
+     */
+    public void reset() {
+        _learners = new ArrayList<>(_bagsNumber);
+        _randoms = new SplittableRandom[_bagsNumber];
+        _seenWeights = new long[_bagsNumber];
+        SplittableRandom seeder = new SplittableRandom(_baseSeed);
+        for (int i = 0; i < _bagsNumber; i++) {
+            _learners.add((IncrementalModel) _model.clone());
+            _randoms[i] = new SplittableRandom(seeder.nextLong());
+        }
+    }
+
+    /**
+     * Updates every learner with one sample, shown {@code Poisson(1)} times to each.
+     *
+     * @param x The sample features.
+     * @param y The sample label.
+     */
+    public void partialFit(double[] x, int y) {
+        for (int i = 0; i < _bagsNumber; i++) {
+            update(i, x, y);
+        }
+    }
+
+    /**
+     * Updates the learners with a batch of samples, in order. Learners are updated in parallel on a pool of
+     * {@code numWorkers} threads created for the batch; each one still sees the samples in order with its own counts,
+     * so the result is the same as calling {@link #partialFit(double[], int)} for every sample.
+     *
+     * @param X The samples features.
+     * @param Y The samples labels.
+     * @throws IllegalStateException if updating a learner failed.
+     */
+    public void partialFit(double[][] X, int[] Y) {
+        if (X.length != Y.length) {
+            throw new IllegalArgumentException("The number of samples in X and Y must match.");
+        }
+        if (_numWorkers <= 1) {
+            for (int i = 0; i < _bagsNumber; i++) {
+                updateAll(i, X, Y);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_numWorkers, _bagsNumber));
+        try {
+            List<Future<?>> futures = new ArrayList<>(_bagsNumber);
+            for (int i = 0; i < _bagsNumber; i++) {
+                final int learner = i;
+                futures.add(executor.submit(() -> updateAll(learner, X, Y)));
+            }
+            for (int i = 0; i < _bagsNumber; i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.severe("Error during updating learner " + i + ": " + e.getCause());
+                    throw new IllegalStateException("Updating learner " + i + " failed.", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Updating the learners was interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void updateAll(int learner, double[][] X, int[] Y) {
+        for (int j = 0; j < X.length; j++) {
+            update(learner, X[j], Y[j]);
+        }
+    }
+
+    private void update(int learner, double[] x, int y) {
+        int count = poisson(_randoms[learner]);
+        if (count > 0) {
+            _learners.get(learner).partialFit(x, y, count);
+            _seenWeights[learner] += count;
+        }
+    }
+
+    /**
+     * Draws from Poisson(1) by multiplying uniforms until the product drops below e^-1 (Knuth).
+     */
+    private static int poisson(SplittableRandom random) {
+        double limit = Math.exp(-1.0);
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            count++;
+            product *= random.nextDouble();
+        }
+        return count;
+    }
+
+    /**
+     * Resets the ensemble and streams the samples through it once.
+     */
+    @Override
+    public void fit(double[][] X, int[] y) {
+        reset();
+        partialFit(X, y);
+    }
+
+    @Override
+    public void fit(double[][] X) {
+        logger.severe("fit method without labels not supported for OnlineBagging model");
+        throw new UnsupportedOperationException("fit method without labels not supported for OnlineBagging model");
+    }
+
+    /**
+     * Predicts the majority vote of the learners that have seen at least one sample.
+     */
+    @Override
+    public int[] predict(double[][] X) {
+        List<int[]> votes = new ArrayList<>();
+        for (int i = 0; i < _bagsNumber; i++) {
+            if (_seenWeights[i] > 0) {
+                votes.add(_learners.get(i).predict(X));
+            }
+        }
+        if (votes.isEmpty()) {
+            throw new IllegalStateException("No learner has seen a sample yet.");
+        }
+        int[] predictions = new int[X.length];
+        int[] sampleVotes = new int[votes.size()];
+        for (int j = 0; j < X.length; j++) {
+            for (int i = 0; i < votes.size(); i++) {
+                sampleVotes[i] = votes.get(i)[j];
+            }
+            predictions[j] = new Counter(sampleVotes).mostCommon();
+        }
+        return predictions;
+    }
+
+    /**
+     * @return An untrained ensemble with the same base model and settings.
+     */
+    @Override
+    public Model clone() {
+        return new OnlineBagging(_model, _bagsNumber, _seed, _numWorkers);
+    }
+}
@@ -1,11 +1,19 @@
 package net.acimon.jmlearn.models.ensemble;
+import net.acimon.jmlearn.models.ControllableModel;
+import net.acimon.jmlearn.models.FeatureImportanceModel;
 import net.acimon.jmlearn.models.Model;
 import net.acimon.jmlearn.models.tree.DecisionTree;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.TrainingControl;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 
-public class RandomForestTree implements Model{
+public class RandomForestTree implements FeatureImportanceModel, ControllableModel {
 
     private Bagging _bootStrpAgg;
     private DecisionTree _baseTree;
@@ -13,28 +21,43 @@ public class RandomForestTree implements Model{
     private Integer _seed;
     private double[][] _X_train;
     private int[] _Y_train;
+    private CompiledForest _compiledForest; // Flattened trees for inference, rebuilt lazily after each fit
 
     private static final Logger logger = Logger.getLogger(Bagging.class.getName());
 
     public RandomForestTree(int treeNumber,int minSamplesSplit, int maxDepth, int nFeatures, Integer seed, double sampleSize){
-        this._treeNumber = treeNumber;
-        this._baseTree = new DecisionTree(minSamplesSplit, maxDepth, nFeatures);
-        this._bootStrpAgg = new Bagging(_baseTree, treeNumber, sampleSize, _seed, treeNumber);
+        this(new DecisionTree(minSamplesSplit, maxDepth, nFeatures), treeNumber, sampleSize, seed);
     }
     public RandomForestTree(int treeNumber, int maxDepth, double sampleSize){
+        this(new DecisionTree(maxDepth), treeNumber, sampleSize, null);
+    }
+
+    /**
+     * Builds a forest of copies of {@code baseTree}, for variants that configure the trees differently. With a seed,
+     * every tree's bag and splits derive from it, so fits are reproducible whatever the thread scheduling.
+     */
+    protected RandomForestTree(DecisionTree baseTree, int treeNumber, double sampleSize, Integer seed){
         this._treeNumber = treeNumber;
-        this._baseTree = new DecisionTree(maxDepth);
+        this._seed = seed;
+        this._baseTree = baseTree;
         this._bootStrpAgg = new Bagging(_baseTree, treeNumber, sampleSize, _seed, treeNumber);
     }
     public RandomForestTree(RandomForestTree other){
         this._treeNumber = other._treeNumber;
-        this._baseTree = new DecisionTree(other._baseTree.getMinSamplesSplit(),
-            other._baseTree.getMaxDepth(),
-            other._baseTree.getNFeatures());
+        this._seed = other._seed;
+        this._baseTree = new DecisionTree(other._baseTree);
        this._bootStrpAgg = new Bagging(this._baseTree, other._bootStrpAgg.getBagsNumber(),
             other._bootStrpAgg.getSampleSize(),
             other._bootStrpAgg.getSeed(),
             other._bootStrpAgg.getBagsNumber());
+        this._bootStrpAgg.setBootstrap(other._bootStrpAgg.isBootstrap());
+        this._bootStrpAgg.setComputeOob(other._bootStrpAgg.isComputeOob());
+        this._bootStrpAgg.setWarmStart(other._bootStrpAgg.isWarmStart());
+        this._bootStrpAgg.setTrainingControl(other._bootStrpAgg.getTrainingControl());
+        if (other._bootStrpAgg.getNIterNoChange() > 0) {
+            this._bootStrpAgg.setEarlyStopping(other._bootStrpAgg.getRoundSize(),
+                other._bootStrpAgg.getNIterNoChange(), other._bootStrpAgg.getTol());
+        }
     }
     @Override
     public Model clone(){
@@ -56,6 +79,7 @@ public class RandomForestTree implements Model{
         }
         this._X_train = X;
         this._Y_train = Y;
+        _compiledForest = null;
         _bootStrpAgg.fit(_X_train, _Y_train);
     }
     @Override
@@ -75,7 +99,245 @@ public class RandomForestTree implements Model{
                 throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
             }
         }
-        int[] predictions = _bootStrpAgg.predict(X);
+        int[] predictions = getCompiledForest().predict(X);
         return predictions;
     }
-}
\ No newline at end of file
+
+    public Integer getSeed() {
+        return _seed;
+    }
+
+    /**
+     * Sets the control of the next fits: it can cancel the fit or bound it with a deadline, also inside the trees
+     * being grown, and receives one progress report per tree (see {@link Bagging#setTrainingControl(TrainingControl)}).
+     *
+     * @param control The control of the next fits, or {@code null} for none.
+     */
+    @Override
+    public void setTrainingControl(TrainingControl control) {
+        _bootStrpAgg.setTrainingControl(control);
+    }
+    @Override
+    public TrainingControl getTrainingControl() {
+        return _bootStrpAgg.getTrainingControl();
+    }
+
+    /**
+     * Returns the impurity-based importance of each feature, averaged over the trees.
+     *
+     * @return The mean importance of each feature, summing to 1 when the trees split at least once.
+     * @throws IllegalStateException if the forest is not fitted.
+     */
+    @Override
+    public double[] getFeatureImportances() {
+        return _bootStrpAgg.getFeatureImportances();
+    }
+
+    /**
+     * Computes out-of-bag permutation importances over the training data, in parallel across trees
+     * (see {@link Bagging#permutationImportances(double[][], int, Integer)}). Out-of-bag estimation must be enabled
+     * before fitting.
+     *
+     * @param nRepeats Number of shuffles per feature and tree.
+     * @param seed Seed of the shuffles, or {@code null} for a random one.
+     * @return The mean out-of-bag accuracy decrease of each feature.
+     */
+    public double[] permutationImportances(int nRepeats, Integer seed) {
+        if (_X_train == null) {
+            throw new IllegalStateException("The forest must be fitted before computing permutation importances.");
+        }
+        return _bootStrpAgg.permutationImportances(_X_train, nRepeats, seed);
+    }
+
+    /**
+     * Returns the fitted trees packed into a {@link CompiledForest}, which {@link #predict(double[][])} uses to
+     * evaluate all trees per block of rows in one pass.
+     *
+     * @return The compiled forest of the current fit.
+     * @throws IllegalStateException if the forest is not fitted.
+     */
+    public synchronized CompiledForest getCompiledForest() {
+        if (_bootStrpAgg.getFittedBagsNumber() == 0) {
+            throw new IllegalStateException("The forest must be fitted before predicting.");
+        }
+        if (_compiledForest == null) {
+            _compiledForest = new CompiledForest(getTrees());
+        }
+        return _compiledForest;
+    }
+
+    private List<DecisionTree> getTrees() {
+        List<DecisionTree> trees = new ArrayList<>();
+        for (Model learner : _bootStrpAgg.getWeakLearners()) {
+            trees.add((DecisionTree) learner);
+        }
+        return trees;
+    }
+
+    /**
+     * Writes the forest settings followed by all trees packed into one flat pre-order node table: the tree count,
+     * the node count, the root index of each tree, the features, thresholds and right children of every node, then
+     * the sorted distinct leaf labels and the label index of every node, so {@link MappedForest} can vote from the
+     * file as it is (see {@link net.acimon.jmlearn.utils.ModelSerializer}).
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     * @throws IllegalStateException if the forest is not fitted; nothing is written then.
+     */
+    public void writeTo(ModelOutput out) throws IOException {
+        if (_bootStrpAgg.getFittedBagsNumber() == 0) {
+            throw new IllegalStateException("The forest must be fitted before it can be saved.");
+        }
+        _baseTree.writeTo(out);
+        _bootStrpAgg.writeSettings(out);
+        getCompiledForest().writeTo(out);
+    }
+
+    /**
+     * Reads a forest written by {@link #writeTo(ModelOutput)}.
+     *
+     * @param in The source.
+     * @return The fitted forest.
+     * @throws IOException If reading fails or the data is corrupted.
+     */
+    public static RandomForestTree readFrom(ModelInput in) throws IOException {
+        RandomForestTree forest = new RandomForestTree(1, 1, 1.0);
+        forest.readForest(in);
+        return forest;
+    }
+
+    DecisionTree getBaseTree() {
+        return _baseTree;
+    }
+    Bagging getBagging() {
+        return _bootStrpAgg;
+    }
+
+    /**
+     * Replaces the trees with ones trained elsewhere, e.g. by {@link DistributedForestTrainer}.
+     */
+    void installTrees(List<Model> trees) {
+        _bootStrpAgg.setWeakLearners(trees);
+        _compiledForest = null;
+    }
+
+    /**
+     * Replaces this forest's settings and trees with the ones read from {@code in}.
+     */
+    protected void readForest(ModelInput in) throws IOException {
+        DecisionTree baseTree = DecisionTree.readFrom(in);
+        Bagging.Settings settings = Bagging.readSettings(in);
+        int treeCount = in.readLength();
+        int nodeCount = in.readLength();
+        int[] roots = in.readInts(treeCount);
+        int[] features = in.readInts(nodeCount);
+        double[] thresholds = in.readDoubles(nodeCount);
+        int[] rightChildren = in.readInts(nodeCount);
+        int[] classes = in.readInts(in.readLength());
+        int[] leafClasses = in.readInts(nodeCount);
+        int[] values = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            if (features[i] != -1) continue;
+            if (leafClasses[i] < 0 || leafClasses[i] >= classes.length) {
+                throw new IOException("Corrupted forest: invalid class index at node " + i);
+            }
+            values[i] = classes[leafClasses[i]];
+        }
+
+        List<Model> trees = new ArrayList<>(treeCount);
+        for (int t = 0; t < treeCount; t++) {
+            DecisionTree tree = new DecisionTree(baseTree);
+            try {
+                tree.unflatten(features, thresholds, rightChildren, values, roots[t]);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Corrupted forest", e);
+            }
+            trees.add(tree);
+        }
+
+        this._baseTree = baseTree;
+        this._bootStrpAgg = settings.create(baseTree);
+        this._bootStrpAgg.setWeakLearners(trees);
+        this._treeNumber = settings.bagsNumber;
+        this._seed = settings.hasSeed ? (int) settings.baseSeed : null;
+        this._compiledForest = null;
+    }
+
+    /**
+     * Chooses between bootstrap bags and growing every tree on the whole training set.
+     *
+     * @param bootstrap Whether each tree is grown on a bootstrap bag.
+     * @see Bagging#setBootstrap(boolean)
+     */
+    public void setBootstrap(boolean bootstrap) {
+        _bootStrpAgg.setBootstrap(bootstrap);
+    }
+
+    /**
+     * Sets the number of trees; with warm start the next fit only grows the missing trees.
+     *
+     * @param treeNumber The total number of trees of the forest.
+     */
+    public void setTreeNumber(int treeNumber) {
+        _bootStrpAgg.setBagsNumber(treeNumber);
+        this._treeNumber = treeNumber;
+    }
+    public int getTreeNumber() {
+        return _treeNumber;
+    }
+
+    /**
+     * @return The number of trees currently in the forest.
+     */
+    public int getFittedTreeNumber() {
+        return _bootStrpAgg.getFittedBagsNumber();
+    }
+
+    /**
+     * Enables warm start, so fit adds trees to the already-fitted forest.
+     *
+     * @param warmStart Whether fit should add to the existing forest instead of replacing it.
+     * @see Bagging#setWarmStart(boolean)
+     */
+    public void setWarmStart(boolean warmStart) {
+        _bootStrpAgg.setWarmStart(warmStart);
+    }
+
+    /**
+     * Stops growing the forest once the out-of-bag accuracy plateaus.
+     *
+     * @param roundSize Number of trees grown between two out-of-bag checks.
+     * @param nIterNoChange Rounds without improvement before stopping; 0 disables early stopping.
+     * @param tol Minimal out-of-bag accuracy gain counted as an improvement.
+     * @see Bagging#setEarlyStopping(int, int, double)
+     */
+    public void setEarlyStopping(int roundSize, int nIterNoChange, double tol) {
+        _bootStrpAgg.setEarlyStopping(roundSize, nIterNoChange, tol);
+    }
+
+    /**
+     * Enables out-of-bag estimation for the next {@link #fit(double[][], int[])}.
+     *
+     * @param computeOob Whether each tree should predict the rows left out of its bag.
+     * @see Bagging#setComputeOob(boolean)
+     */
+    public void setComputeOob(boolean computeOob) {
+        _bootStrpAgg.setComputeOob(computeOob);
+    }
+
+    /**
+     * @return The out-of-bag accuracy of the fitted forest.
+     * @see Bagging#oobScore()
+     */
+    public double oobScore() {
+        return _bootStrpAgg.oobScore();
+    }
+
+    /**
+     * @return The out-of-bag prediction of every training row.
+     * @see Bagging#getOobPredictions()
+     */
+    public int[] getOobPredictions() {
+        return _bootStrpAgg.getOobPredictions();
+    }
+}
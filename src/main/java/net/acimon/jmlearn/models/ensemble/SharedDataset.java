@@ -0,0 +1,76 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.ModelSerializer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A labeled training set stored in a file that worker processes memory-map, so the coordinator writes it once and
+ * every worker on the host reads the same page-cache copy.
+ * <p>
+ * The layout follows {@link ModelSerializer}: the magic number, the version, the number of rows and features, then the
+ * rows as little-endian doubles and the labels as ints.
+ * </p>
+ * <p>
+ * The file is shared, but the trees train on {@code double[][]} rows, so {@link #read(Path)} still copies the whole set
+ * onto each worker's heap once; {@link DistributedForestTrainer} gives the size of that copy.
+ * </p>
+ */
+final class SharedDataset {
+
+    final double[][] X;
+    final int[] y;
+
+    private SharedDataset(double[][] X, int[] y) {
+        this.X = X;
+        this.y = y;
+    }
+
+    /**
+     * Writes the rows and labels. Every row must have {@code X[0].length} features, the header only records that one.
+     *
+     * @throws IllegalArgumentException if the rows have different numbers of features; nothing is written then.
+     */
+    static void write(Path path, double[][] X, int[] y) throws IOException {
+        int numFeatures = X[0].length;
+        for (double[] row : X) {
+            if (row.length != numFeatures) {
+                throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ModelOutput out = new ModelOutput(channel);
+            out.writeInt(ModelSerializer.MAGIC);
+            out.writeInt(ModelSerializer.VERSION);
+            out.writeInt(X.length);
+            out.writeInt(numFeatures);
+            for (double[] row : X) {
+                out.writeDoubles(row, 0, row.length);
+            }
+            out.writeInts(y, 0, y.length);
+            out.flush();
+        }
+    }
+
+    /**
+     * Maps the file and copies it into heap arrays, one {@code double[]} per row, which the worker keeps until it
+     * exits.
+     */
+    static SharedDataset read(Path path) throws IOException {
+        ModelInput in = new ModelInput(ModelSerializer.map(path));
+        ModelSerializer.readHeader(in);
+        int nRows = in.readLength();
+        int nFeatures = in.readLength();
+        double[][] X = new double[nRows][];
+        for (int i = 0; i < nRows; i++) {
+            X[i] = in.readDoubles(nFeatures);
+        }
+        return new SharedDataset(X, in.readInts(nRows));
+    }
+}
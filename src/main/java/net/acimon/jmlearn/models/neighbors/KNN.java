@@ -1,11 +1,15 @@
 package net.acimon.jmlearn.models.neighbors;
+import net.acimon.jmlearn.models.IncrementalModel;
 import net.acimon.jmlearn.models.Model;
 
 import net.acimon.jmlearn.utils.EuclideanDistance;
 import net.acimon.jmlearn.utils.ManhattanDistance;
 import net.acimon.jmlearn.metrics.Accuracy;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
 
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Arrays;
@@ -19,6 +23,8 @@ import java.util.Arrays;
  * <h2>Key Features</h2>
  * <ul>
  *     <li>Train the model with labeled data using the {@code fit} method.</li>
+ *     <li>Add samples one at a time from a stream using the {@code partialFit} method, keeping a sliding window of
+ *     the most recent samples (see {@link KNN#setMaxSamples(int)}).</li>
  *     <li>Make predictions on new data using the {@code predict} method.</li>
  *     <li>Calculate classification accuracy using the static {@code accuracy} method that call {@code Accuracy.calculate}.</li>
  *     <li>Custom exceptions for invalid k values and empty datasets.</li>
@@ -35,12 +41,17 @@ import java.util.Arrays;
  *     <li>{@link KNN#KNN()} - Constructs a KNN object with default settings (k = 3 and Euclidean distance).</li>
  * </ul>
  */
-public class KNN implements Model{
+public class KNN implements IncrementalModel{
     private int _k; // The number of neighbors to consider
     private double[][] _X_train; // Training data 
     private int[] _Y_train; // Training labels
+    private int _size; // Number of stored samples, the arrays may have spare capacity for partialFit
+    private int[] _W_train; // Times each stored sample was seen, null while every sample counts once (after fit)
+    private int _maxSamples = DEFAULT_MAX_SAMPLES; // Window of partialFit, the oldest samples are replaced first
+    private int _next; // Slot of the oldest sample once the window is full
     private String _distanceMetric; // Distance metric (Euclidean, Manhattan)
     private static final int DEFAULT_K = 3;
+    private static final int DEFAULT_MAX_SAMPLES = 10_000;
     private static final String[] VALID_DISTANCE_METRICS = {"euclidean", "manhattan"};
 
     /**
@@ -68,14 +79,20 @@ public class KNN implements Model{
     public KNN(KNN other) {
         this._k = other._k; 
         this._distanceMetric = other._distanceMetric; 
+        this._maxSamples = other._maxSamples;
+        this._next = other._next;
 
         if (other._X_train != null){
-            this._X_train = new double[other._X_train.length][];
-            for (int i = 0; i < other._X_train.length; i++) {
+            this._size = other._size;
+            this._X_train = new double[other._size][];
+            for (int i = 0; i < other._size; i++) {
                 this._X_train[i] = other._X_train[i].clone(); // Deep copy of each row in the 2D array
             }
 
-            this._Y_train = other._Y_train.clone(); // Deep copy of the 1D array
+            this._Y_train = Arrays.copyOf(other._Y_train, other._size); // Deep copy of the 1D array
+            if (other._W_train != null) {
+                this._W_train = Arrays.copyOf(other._W_train, other._size);
+            }
         }
     }
     public Model clone(){
@@ -136,6 +153,104 @@ public class KNN implements Model{
         }
         this._X_train = X;
         this._Y_train = Y;
+        this._W_train = null;
+        this._size = X.length;
+        this._next = 0;
+    }
+
+    /**
+     * Sets the number of samples {@code partialFit} keeps. Once the window is full, every new sample replaces the
+     * oldest one, so memory and the cost of a prediction stay bounded on an endless stream. Samples stored by
+     * {@code fit} are not limited until the first {@code partialFit}, which keeps the most recent ones.
+     *
+     * @param maxSamples The maximum number of distinct stored samples.
+     * @throws IllegalArgumentException if maxSamples is less than 1.
+     */
+    public void setMaxSamples(int maxSamples) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("maxSamples must be greater than zero.");
+        }
+        this._maxSamples = maxSamples;
+        if (_W_train != null) {
+            _ownWindow(); // Orders the window oldest first and drops the samples beyond it
+        }
+    }
+    public int getMaxSamples() {
+        return _maxSamples;
+    }
+
+    /**
+     * Adds a sample to the training data without refitting.
+     * <p>
+     * The sample is stored once with a weight of {@code count}, which is how online bagging weights it: it then counts
+     * as {@code count} of the {@code k} neighbors. Once {@link #getMaxSamples()} samples are stored, it replaces the
+     * oldest one, so each update costs constant time and memory stays bounded. The sample array is kept by reference,
+     * like in {@code fit}.
+     * </p>
+     *
+     * @param x The sample features.
+     * @param y The sample label.
+     * @param count Number of times the sample is seen.
+     * @throws IllegalArgumentException if the sample dimension does not match the stored samples or count is negative.
+     */
+    @Override
+    public void partialFit(double[] x, int y, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be non-negative.");
+        }
+        if (_size > 0 && x.length != _X_train[0].length) {
+            throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
+        }
+        if (count == 0) return;
+        if (_W_train == null) {
+            _ownWindow(); // Never grow fit's caller-owned arrays in place
+        }
+        int slot;
+        if (_size < _maxSamples) {
+            if (_size == _X_train.length) {
+                int capacity = Math.min(_maxSamples, Math.max(16, 2 * _X_train.length));
+                _X_train = Arrays.copyOf(_X_train, capacity);
+                _Y_train = Arrays.copyOf(_Y_train, capacity);
+                _W_train = Arrays.copyOf(_W_train, capacity);
+            }
+            slot = _size++;
+        } else {
+            slot = _next; // Replaces the oldest sample
+            _next = (_next + 1) % _maxSamples;
+        }
+        _X_train[slot] = x;
+        _Y_train[slot] = y;
+        _W_train[slot] = count;
+    }
+
+    /**
+     * Moves the stored samples, oldest first, into arrays owned by the window, keeping the most recent
+     * {@code maxSamples}.
+     */
+    private void _ownWindow() {
+        int keep = Math.min(_size, _maxSamples);
+        int capacity = Math.max(keep, Math.min(_maxSamples, 16));
+        double[][] X = new double[capacity][];
+        int[] Y = new int[capacity];
+        int[] W = new int[capacity];
+        for (int i = 0; i < keep; i++) {
+            int slot = _slot(_size - keep + i);
+            X[i] = _X_train[slot];
+            Y[i] = _Y_train[slot];
+            W[i] = (_W_train != null) ? _W_train[slot] : 1;
+        }
+        _X_train = X;
+        _Y_train = Y;
+        _W_train = W;
+        _size = keep;
+        _next = 0;
+    }
+
+    /**
+     * @return The slot of the {@code age}-th oldest stored sample.
+     */
+    private int _slot(int age) {
+        return (_next + age) % _size;
     }
     @Override
     public void fit(double[][] dataPoints) {
@@ -155,6 +270,9 @@ public class KNN implements Model{
         if (X.length == 0) {
             throw new IllegalArgumentException("Test data cannot be empty.");
         }
+        if (_size == 0) {
+            throw new IllegalStateException("The model must be fitted before predicting.");
+        }
 
         int numFeatures = _X_train[0].length;
         for (int i = 0; i < X.length; i++) {
@@ -170,6 +288,67 @@ public class KNN implements Model{
         return predictions;
     }
   
+    /**
+     * Writes k, the distance metric and the stored training samples (see {@link net.acimon.jmlearn.utils.ModelSerializer}).
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(ModelOutput out) throws IOException {
+        out.writeInt(_k);
+        out.writeByte(Arrays.asList(VALID_DISTANCE_METRICS).indexOf(_distanceMetric));
+        out.writeInt(_maxSamples);
+        int numFeatures = (_size > 0) ? _X_train[0].length : 0;
+        out.writeInt(_size);
+        out.writeInt(numFeatures);
+        // Oldest first, so a loaded window replaces the samples in the same order
+        int[] labels = new int[_size];
+        int[] weights = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            int slot = _slot(i);
+            out.writeDoubles(_X_train[slot], 0, numFeatures);
+            labels[i] = _Y_train[slot];
+            weights[i] = (_W_train != null) ? _W_train[slot] : 1;
+        }
+        if (_size > 0) {
+            out.writeInts(labels, 0, _size);
+            out.writeBoolean(_W_train != null);
+            if (_W_train != null) {
+                out.writeInts(weights, 0, _size);
+            }
+        }
+    }
+
+    /**
+     * Reads a model written by {@link #writeTo(ModelOutput)}.
+     *
+     * @param in The source.
+     * @return The model with its training samples.
+     * @throws IOException If reading fails or the data is corrupted.
+     */
+    public static KNN readFrom(ModelInput in) throws IOException {
+        int k = in.readInt();
+        int metric = in.readByte();
+        if (metric < 0 || metric >= VALID_DISTANCE_METRICS.length) {
+            throw new IOException("Corrupted KNN model: unknown distance metric " + metric);
+        }
+        KNN knn = new KNN(k, VALID_DISTANCE_METRICS[metric]);
+        knn.setMaxSamples(in.readInt());
+        int size = in.readLength();
+        int numFeatures = in.readLength();
+        if (size > 0) {
+            double[][] X = new double[size][];
+            for (int i = 0; i < size; i++) {
+                X[i] = in.readDoubles(numFeatures);
+            }
+            knn.fit(X, in.readInts(size));
+            if (in.readBoolean()) {
+                knn._W_train = in.readInts(size); // The arrays were read here, the window may own them
+            }
+        }
+        return knn;
+    }
+
     /**
      * Calculates the classification accuracy by comparing the true labels to the predicted labels.
      * 
@@ -190,8 +369,8 @@ public class KNN implements Model{
      */
     private int _predict(double[] x) {
         // Compute distances from x to each training example
-        double[] distances = new double[_X_train.length];
-        for (int i = 0; i < _X_train.length; i++) {
+        double[] distances = new double[_size];
+        for (int i = 0; i < _size; i++) {
             switch (_distanceMetric) {
                 case "manhattan":
                     distances[i] = ManhattanDistance.calculate(x, _X_train[i]);
@@ -204,8 +383,8 @@ public class KNN implements Model{
         }
 
         // initialize an array with the indices of _X_train as values.
-        Integer[] kIndexes = new Integer[_X_train.length];
-        for (int i = 0; i < _X_train.length; i++) {
+        Integer[] kIndexes = new Integer[_size];
+        for (int i = 0; i < _size; i++) {
             kIndexes[i] = i;
         }
 
@@ -215,14 +394,17 @@ public class KNN implements Model{
 
   
 
-        // Count the occurrences of each label among the nearest k neighbors 
+        // Count the occurrences of each label among the nearest k neighbors, a sample seen w times counting w times
         Map<Integer, Integer> labelCounts = new HashMap<>();
-        for (int i = 0; i < _k; i++) {
+        int remaining = _k;
+        for (int i = 0; i < _size && remaining > 0; i++) {
             int label = _Y_train[kIndexes[i]];
+            int votes = (_W_train != null) ? Math.min(_W_train[kIndexes[i]], remaining) : 1;
+            remaining -= votes;
             // put the label in HashMap where the label is key and value is num of occurrences.
             // getOrDefault(key, defaultValue) returns the value for the given key if it exists, otherwise returns defaultValue (set to 0).
-            // than we add 1 to increment the occurrences if exists -> value+1 if not -> 0+1
-            labelCounts.put(label, labelCounts.getOrDefault(label, 0) + 1);
+            // than we add votes to increment the occurrences if exists -> value+votes if not -> 0+votes
+            labelCounts.put(label, labelCounts.getOrDefault(label, 0) + votes);
         }
 
         // Return the most common label (the key(lable) of the highest value of in the Map meaning most occurrences).
@@ -1,27 +1,41 @@
 package net.acimon.jmlearn.models.tree;
 
 import net.acimon.jmlearn.metrics.Accuracy;
+import net.acimon.jmlearn.models.ControllableModel;
+import net.acimon.jmlearn.models.FeatureImportanceModel;
 import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.SeedableModel;
+import net.acimon.jmlearn.models.WeightedModel;
 import net.acimon.jmlearn.models.ensemble.Bagging;
+import net.acimon.jmlearn.utils.ModelInput;
+import net.acimon.jmlearn.utils.ModelOutput;
+import net.acimon.jmlearn.utils.TrainingControl;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  * A Decision Tree classifier for classification tasks.
  */
-public class DecisionTree implements Model {
+public class DecisionTree implements WeightedModel, FeatureImportanceModel, SeedableModel, ControllableModel {
 
     private int _minSamplesSplit;
     private int _maxDepth;
     private int _nFeatures;
+    private String _splitter = VALID_SPLITTERS[0]; // "best" searches every threshold, "random" draws one per feature
+    private Long _seed; // null draws a fresh seed at every fit
+    private TrainingControl _control; // Checked at every node, null for none
     private Node root;
+    private double[] _featureImportances; // Weighted impurity decrease per feature, normalized after fit
     private static final Logger logger = Logger.getLogger(Bagging.class.getName());
 
     // Default values
     private static final int DEFAULT_MIN_SAMPLES_SPLIT = 2;
     private static final int DEFAULT_MAX_DEPTH = 100;
     private static final int DEFAULT_N_FEATURES = -1; // Use -1 to indicate "use all features".
+    private static final String[] VALID_SPLITTERS = {"best", "random"};
 
     public DecisionTree(int minSamplesSplit, int maxDepth, int nFeatures) {
         this._minSamplesSplit = minSamplesSplit;
@@ -41,9 +55,15 @@ public class DecisionTree implements Model {
         this._minSamplesSplit = other._minSamplesSplit;
         this._maxDepth = other._maxDepth;
         this._nFeatures = other._nFeatures;
+        this._splitter = other._splitter;
+        this._seed = other._seed;
+        this._control = other._control;
         if (other.root != null) {
             this.root = cloneNode(other.root);
         }
+        if (other._featureImportances != null) {
+            this._featureImportances = other._featureImportances.clone();
+        }
     }
     public int getMinSamplesSplit() {
         return _minSamplesSplit;
@@ -54,6 +74,52 @@ public class DecisionTree implements Model {
     public int getNFeatures() {
         return _nFeatures;
     }
+    public String getSplitter() {
+        return _splitter;
+    }
+
+    /**
+     * Sets the split strategy: "best" sorts each candidate feature and searches every threshold, "random" draws a
+     * single uniform threshold between the feature's minimum and maximum in the node (extremely randomized trees),
+     * which makes the split search O(n) per feature with no sorting.
+     *
+     * @param splitter The split strategy to use.
+     * @throws IllegalArgumentException if the split strategy is invalid.
+     */
+    public void setSplitter(String splitter) {
+        if (!Arrays.asList(VALID_SPLITTERS).contains(splitter)) {
+            throw new IllegalArgumentException("Invalid splitter. Must be one of: " + String.join(", ", VALID_SPLITTERS) + ".");
+        }
+        this._splitter = splitter;
+    }
+    /**
+     * Sets the seed of the feature sampling and random thresholds. Every node draws from its own generator, split
+     * from its parent's, so the tree only depends on the seed and the data.
+     *
+     * @param seed The seed of the next fits, or {@code null} to draw a fresh one at every fit.
+     */
+    @Override
+    public void setSeed(Long seed) {
+        this._seed = seed;
+    }
+    @Override
+    public Long getSeed() {
+        return _seed;
+    }
+    /**
+     * Sets the control checked before growing each node; a cancelled or expired control stops the fit with a
+     * {@link net.acimon.jmlearn.utils.TrainingCancelledException} and leaves the previous tree in place.
+     *
+     * @param control The control of the next fits, or {@code null} for none.
+     */
+    @Override
+    public void setTrainingControl(TrainingControl control) {
+        this._control = control;
+    }
+    @Override
+    public TrainingControl getTrainingControl() {
+        return _control;
+    }
     private Node cloneNode(Node original) {
         if (original == null) return null;
         
@@ -82,8 +148,68 @@ public class DecisionTree implements Model {
         if (X == null || Y == null || X.length == 0 || Y.length == 0 || X.length != Y.length) {
             throw new IllegalArgumentException("Invalid input data");
         }
-        
-        this.root = growTree(X, Y, 0);
+        double[] sampleWeights = new double[X.length];
+        Arrays.fill(sampleWeights, 1.0);
+        fit(X, Y, sampleWeights);
+    }
+
+    /**
+     * Fits the DecisionTree model to weighted training data without copying the rows.
+     * <p>
+     * Rows with a weight of zero are ignored, so a bootstrap bag can be passed as a count vector over the original data.
+     * </p>
+     *
+     * @param X The training data features.
+     * @param Y The training data labels.
+     * @param sampleWeights Non-negative weight of each sample.
+     */
+    @Override
+    public void fit(double[][] X, int[] Y, double[] sampleWeights) {
+        // Validate input
+        if (X == null || Y == null || sampleWeights == null || X.length == 0 || X.length != Y.length
+                || X.length != sampleWeights.length) {
+            throw new IllegalArgumentException("Invalid input data");
+        }
+
+        int[] classes = Arrays.stream(Y).distinct().sorted().toArray();
+        int[] encodedY = new int[Y.length];
+        for (int i = 0; i < Y.length; i++) {
+            encodedY[i] = Arrays.binarySearch(classes, Y[i]);
+        }
+
+        int[] indices = IntStream.range(0, X.length).filter(i -> sampleWeights[i] > 0).toArray();
+        if (indices.length == 0) {
+            throw new IllegalArgumentException("At least one sample must have a positive weight");
+        }
+
+        double[] importances = new double[X[0].length];
+        SplittableRandom random = (_seed != null) ? new SplittableRandom(_seed) : new SplittableRandom();
+        Scratch scratch = _splitter.equals("random") ? null : new Scratch(X.length); // Random splits do not sort
+        Node grown = growTree(X, encodedY, classes, sampleWeights, indices, 0, random, importances, scratch);
+
+        double total = Arrays.stream(importances).sum();
+        if (total > 0) {
+            for (int f = 0; f < importances.length; f++) {
+                importances[f] /= total;
+            }
+        }
+        this.root = grown;
+        this._featureImportances = importances;
+    }
+
+    /**
+     * Returns the impurity-based importance of each feature: the total weighted entropy decrease of the splits on
+     * the feature, normalized to sum to 1. A tree that is a single leaf has all importances at 0.
+     *
+     * @return A copy of the importances, indexed by feature.
+     * @throws IllegalStateException if the tree was not fitted in this process (loaded trees carry no importances).
+     */
+    @Override
+    public double[] getFeatureImportances() {
+        if (_featureImportances == null) {
+            throw new IllegalStateException("Feature importances are only available after fit.");
+        }
+        return _featureImportances.clone();
     }
 
     public void fit(double[][] X) {
@@ -92,157 +218,375 @@ public class DecisionTree implements Model {
     }
 
     /**
-     * Recursively grows the tree.
+     * Recursively grows the tree over the rows listed in {@code indices}, drawing this node's randomness from
+     * {@code random} and handing each child a generator split from it. Each split adds its weighted entropy decrease
+     * to {@code importances}. The split search sorts in {@code scratch}, which is free again once the split is chosen,
+     * so one set of buffers serves the whole recursion.
      */
-    private Node growTree(double[][] X, int[] Y, int depth) {
+    private Node growTree(double[][] X, int[] Y, int[] classes, double[] weights, int[] indices, int depth,
+                          SplittableRandom random, double[] importances, Scratch scratch) {
+        if (_control != null) {
+            _control.checkpoint();
+        }
+
         // Determine number of features to use
         int totalFeatures = X[0].length;
         int featuresToConsider = (_nFeatures == -1) ? totalFeatures : Math.min(_nFeatures, totalFeatures);
 
-        int nSamples = X.length;
-        int nLabels = (int) Arrays.stream(Y).distinct().count();
+        double[] classWeights = classWeights(Y, classes.length, weights, indices);
+        double nSamples = 0.0;
+        int nLabels = 0;
+        for (double classWeight : classWeights) {
+            nSamples += classWeight;
+            if (classWeight > 0) nLabels++;
+        }
 
         // Stopping criteria
         if (depth >= _maxDepth || nLabels == 1 || nSamples < _minSamplesSplit) {
-            return new Node(mostCommonLabel(Y));
+            return new Node(classes[mostCommonLabel(classWeights)]);
         }
 
         // Select features to consider
-        Set<Integer> selectedFeatures = new HashSet<>();
-        Random random = new Random();
-        while (selectedFeatures.size() < featuresToConsider) {
-            selectedFeatures.add(random.nextInt(totalFeatures));
-        }
+        int[] selectedFeatures = sampleFeatures(totalFeatures, featuresToConsider, random);
 
+        double parentEntropy = entropy(classWeights, nSamples);
         double bestGain = -1;
         int bestFeature = -1;
         double bestThreshold = -1;
-        int[] bestLeftIndices = null;
-        int[] bestRightIndices = null;
 
         // Search for the best split
+        boolean randomSplits = _splitter.equals("random");
+        int nRows = indices.length;
+        int[] sorted = randomSplits ? null : scratch.sorted; // Only the first nRows entries are used
+        double[] featureColumn = randomSplits ? null : scratch.featureColumn;
+        double[] leftWeights = new double[classes.length];
+        double[] rightWeights = new double[classes.length];
         for (int featureIndex : selectedFeatures) {
-            // Extract the feature column
-            double[] featureColumn = new double[X.length];
-            for (int i = 0; i < X.length; i++) {
-                featureColumn[i] = X[i][featureIndex];
-            }
-
-            // Sort the feature column
-            double[] sortedFeatureColumn = Arrays.copyOf(featureColumn, featureColumn.length);
-            Arrays.sort(sortedFeatureColumn);
-
-            // Try different thresholds
-            for (double threshold : sortedFeatureColumn) {
-                // Split the data
-                List<Integer> leftIndices = new ArrayList<>();
-                List<Integer> rightIndices = new ArrayList<>();
-                
-                for (int i = 0; i < X.length; i++) {
+            if (randomSplits) {
+                // Draw one threshold in [min, max) of the feature, so both sides are non-empty
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i : indices) {
+                    min = Math.min(min, X[i][featureIndex]);
+                    max = Math.max(max, X[i][featureIndex]);
+                }
+                if (min == max) continue;
+                double threshold = min + random.nextDouble() * (max - min);
+                if (threshold >= max) threshold = min; // Rounding can reach max on tiny ranges
+
+                Arrays.fill(leftWeights, 0.0);
+                Arrays.fill(rightWeights, 0.0);
+                double leftTotal = 0.0;
+                for (int i : indices) {
                     if (X[i][featureIndex] <= threshold) {
-                        leftIndices.add(i);
+                        leftWeights[Y[i]] += weights[i];
+                        leftTotal += weights[i];
                     } else {
-                        rightIndices.add(i);
+                        rightWeights[Y[i]] += weights[i];
                     }
                 }
+                double rightTotal = nSamples - leftTotal;
+                double gain = parentEntropy
+                    - (leftTotal / nSamples) * entropy(leftWeights, leftTotal)
+                    - (rightTotal / nSamples) * entropy(rightWeights, rightTotal);
 
-                // Skip if split is trivial
-                if (leftIndices.isEmpty() || rightIndices.isEmpty()) continue;
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestFeature = featureIndex;
+                    bestThreshold = threshold;
+                }
+                continue;
+            }
 
-                
-                double gain = informationGain(Y, 
-                    leftIndices.stream().mapToInt(Integer::intValue).toArray(), 
-                    rightIndices.stream().mapToInt(Integer::intValue).toArray()
-                );
+            // Sort the rows by the feature value
+            for (int i : indices) {
+                featureColumn[i] = X[i][featureIndex];
+            }
+            System.arraycopy(indices, 0, sorted, 0, nRows);
+            sortByKey(sorted, nRows, featureColumn, scratch.mergeBuffer);
+
+            // Sweep the thresholds in ascending order, moving one row at a time to the left side
+            Arrays.fill(leftWeights, 0.0);
+            System.arraycopy(classWeights, 0, rightWeights, 0, classes.length);
+            double leftTotal = 0.0;
+            for (int p = 0; p < nRows - 1; p++) {
+                int row = sorted[p];
+                leftWeights[Y[row]] += weights[row];
+                rightWeights[Y[row]] -= weights[row];
+                leftTotal += weights[row];
+
+                double threshold = featureColumn[row];
+                // Every row sharing the threshold value must fall to the left
+                if (featureColumn[sorted[p + 1]] == threshold) continue;
+
+                double rightTotal = nSamples - leftTotal;
+                double gain = parentEntropy
+                    - (leftTotal / nSamples) * entropy(leftWeights, leftTotal)
+                    - (rightTotal / nSamples) * entropy(rightWeights, rightTotal);
 
                 // Update best split if this is better
                 if (gain > bestGain) {
                     bestGain = gain;
                     bestFeature = featureIndex;
                     bestThreshold = threshold;
-                    bestLeftIndices = leftIndices.stream().mapToInt(Integer::intValue).toArray();
-                    bestRightIndices = rightIndices.stream().mapToInt(Integer::intValue).toArray();
                 }
             }
         }
 
         // If no good split found, create a leaf node
         if (bestFeature == -1) {
-            return new Node(mostCommonLabel(Y));
+            return new Node(classes[mostCommonLabel(classWeights)]);
         }
 
+        // The split removes nSamples * gain of weighted entropy
+        importances[bestFeature] += nSamples * bestGain;
+
         // Recursively build subtrees
-        double[][] leftX = new double[bestLeftIndices.length][];
-        int[] leftY = new int[bestLeftIndices.length];
-        for (int i = 0; i < bestLeftIndices.length; i++) {
-            leftX[i] = X[bestLeftIndices[i]];
-            leftY[i] = Y[bestLeftIndices[i]];
+        final int splitFeature = bestFeature;
+        final double splitThreshold = bestThreshold;
+        int[] leftIndices = Arrays.stream(indices).filter(i -> X[i][splitFeature] <= splitThreshold).toArray();
+        int[] rightIndices = Arrays.stream(indices).filter(i -> X[i][splitFeature] > splitThreshold).toArray();
+
+        SplittableRandom leftRandom = random.split();
+        SplittableRandom rightRandom = random.split();
+        Node left = growTree(X, Y, classes, weights, leftIndices, depth + 1, leftRandom, importances, scratch);
+        Node right = growTree(X, Y, classes, weights, rightIndices, depth + 1, rightRandom, importances, scratch);
+
+        return new Node(bestFeature, bestThreshold, left, right);
+    }
+
+    /**
+     * Draws {@code count} distinct features without replacement (partial Fisher-Yates), returned in ascending order
+     * so ties between equally good splits go to the smallest feature index.
+     */
+    private static int[] sampleFeatures(int totalFeatures, int count, SplittableRandom random) {
+        int[] features = IntStream.range(0, totalFeatures).toArray();
+        if (count >= totalFeatures) {
+            return features;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(totalFeatures - i);
+            int feature = features[i];
+            features[i] = features[j];
+            features[j] = feature;
         }
+        int[] selected = Arrays.copyOf(features, count);
+        Arrays.sort(selected);
+        return selected;
+    }
 
-        double[][] rightX = new double[bestRightIndices.length][];
-        int[] rightY = new int[bestRightIndices.length];
-        for (int i = 0; i < bestRightIndices.length; i++) {
-            rightX[i] = X[bestRightIndices[i]];
-            rightY[i] = Y[bestRightIndices[i]];
+    /**
+     * Sums the sample weights of each class over the rows listed in {@code indices}.
+     */
+    private static double[] classWeights(int[] Y, int nClasses, double[] weights, int[] indices) {
+        double[] classWeights = new double[nClasses];
+        for (int i : indices) {
+            classWeights[Y[i]] += weights[i];
         }
+        return classWeights;
+    }
 
-        Node left = growTree(leftX, leftY, depth + 1);
-        Node right = growTree(rightX, rightY, depth + 1);
+    /**
+     * Calculates the entropy of a weighted class distribution.
+     */
+    private static double entropy(double[] classWeights, double total) {
+        if (total <= 0) return 0.0;
 
-        return new Node(bestFeature, bestThreshold, left, right);
+        double entropy = 0.0;
+        for (double weight : classWeights) {
+            if (weight <= 0) continue;
+            double prob = weight / total;
+            entropy -= prob * Math.log(prob) / Math.log(2);
+        }
+        return entropy;
     }
 
     /**
-     * Calculates the information gain for a given split.
+     * Finds the index of the heaviest class (the smallest index on ties).
      */
-    private double informationGain(int[] Y, int[] leftIdx, int[] rightIdx) {
-        double parentEntropy = entropy(Y);
-        
-        int[] leftY = Arrays.stream(leftIdx).map(i -> Y[i]).toArray();
-        int[] rightY = Arrays.stream(rightIdx).map(i -> Y[i]).toArray();
-        
-        double leftEntropy = entropy(leftY);
-        double rightEntropy = entropy(rightY);
-        
-        int total = Y.length;
-        double weightedChildEntropy = 
-            (leftIdx.length / (double) total) * leftEntropy +
-            (rightIdx.length / (double) total) * rightEntropy;
+    private static int mostCommonLabel(double[] classWeights) {
+        int best = 0;
+        for (int c = 1; c < classWeights.length; c++) {
+            if (classWeights[c] > classWeights[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stable merge sort of the first {@code length} row indices by {@code keys[index]}, without boxing.
+     *
+     * @param buffer Merge space of at least {@code length} entries.
+     */
+    private static void sortByKey(int[] indices, int length, double[] keys, int[] buffer) {
+        for (int width = 1; width < length; width *= 2) {
+            for (int lo = 0; lo < length - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, length);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    buffer[k++] = (keys[indices[j]] < keys[indices[i]]) ? indices[j++] : indices[i++];
+                }
+                while (i < mid) buffer[k++] = indices[i++];
+                while (j < hi) buffer[k++] = indices[j++];
+                System.arraycopy(buffer, lo, indices, lo, hi - lo);
+            }
+        }
+    }
+
+    /**
+     * Split-search buffers of one fit, indexed by row, shared by every node of the recursion.
+     */
+    private static final class Scratch {
+        final double[] featureColumn; // Value of the current feature, read at the node's rows only
+        final int[] sorted; // The node's rows, sorted by the current feature
+        final int[] mergeBuffer;
+
+        Scratch(int nRows) {
+            this.featureColumn = new double[nRows];
+            this.sorted = new int[nRows];
+            this.mergeBuffer = new int[nRows];
+        }
+    }
+
+    /**
+     * Counts the nodes of the fitted tree.
+     *
+     * @return The number of nodes, 0 if the tree is not fitted.
+     */
+    public int getNodeCount() {
+        return countNodes(root);
+    }
 
-        return parentEntropy - weightedChildEntropy;
+    private int countNodes(Node node) {
+        if (node == null) return 0;
+        return 1 + countNodes(node.left) + countNodes(node.right);
     }
 
     /**
-     * Calculates the entropy for a given set of labels.
+     * Writes the fitted tree in pre-order into flat arrays, starting at {@code offset}.
+     * <p>
+     * The left child of an internal node is always the next node, so only the right child index is stored.
+     * Leaves have a feature of {@code -1} and carry their label in {@code values}. Child indices are absolute,
+     * which lets several trees share the same arrays.
+     * </p>
+     *
+     * @param features Split feature of each node, {@code -1} for leaves.
+     * @param thresholds Split threshold of each node (samples with {@code x[feature] <= threshold} go left).
+     * @param rightChildren Index of the right child of each internal node.
+     * @param values Label of each leaf.
+     * @param offset Index at which the root is written.
+     * @return The index following the last written node.
+     * @throws IllegalStateException if the tree is not fitted.
      */
-    private double entropy(int[] Y) {
-        if (Y.length == 0) return 0.0;
+    public int flatten(int[] features, double[] thresholds, int[] rightChildren, int[] values, int offset) {
+        if (root == null) {
+            throw new IllegalStateException("The tree must be fitted before it can be flattened.");
+        }
+        return flattenNode(root, features, thresholds, rightChildren, values, offset);
+    }
 
-        Map<Integer, Integer> counts = new HashMap<>();
-        for (int label : Y) {
-            counts.put(label, counts.getOrDefault(label, 0) + 1);
+    private int flattenNode(Node node, int[] features, double[] thresholds, int[] rightChildren, int[] values, int index) {
+        features[index] = node.isLeafNode() ? -1 : node.feature;
+        thresholds[index] = node.threshold;
+        values[index] = node.value;
+        if (node.isLeafNode()) {
+            rightChildren[index] = -1;
+            return index + 1;
         }
+        int next = flattenNode(node.left, features, thresholds, rightChildren, values, index + 1);
+        rightChildren[index] = next;
+        return flattenNode(node.right, features, thresholds, rightChildren, values, next);
+    }
 
-        double entropy = 0.0;
-        for (int count : counts.values()) {
-            double prob = (double) count / Y.length;
-            entropy -= prob * Math.log(prob) / Math.log(2);
+    /**
+     * Rebuilds the tree from the flat pre-order arrays written by
+     * {@link #flatten(int[], double[], int[], int[], int)}, replacing any fitted tree.
+     *
+     * @param features Split feature of each node, {@code -1} for leaves.
+     * @param thresholds Split threshold of each node.
+     * @param rightChildren Index of the right child of each internal node.
+     * @param values Label of each leaf.
+     * @param offset Index of the root.
+     * @return The index following the last node of the tree.
+     */
+    public int unflatten(int[] features, double[] thresholds, int[] rightChildren, int[] values, int offset) {
+        int[] next = {offset};
+        this.root = unflattenNode(features, thresholds, rightChildren, values, next);
+        this._featureImportances = null;
+        return next[0];
+    }
+
+    private Node unflattenNode(int[] features, double[] thresholds, int[] rightChildren, int[] values, int[] next) {
+        int index = next[0]++;
+        if (features[index] == -1) {
+            return new Node(values[index]);
+        }
+        Node left = unflattenNode(features, thresholds, rightChildren, values, next);
+        if (next[0] != rightChildren[index]) {
+            throw new IllegalArgumentException("Corrupted tree: right child of node " + index + " is not " + next[0]);
+        }
+        Node right = unflattenNode(features, thresholds, rightChildren, values, next);
+        return new Node(features[index], thresholds[index], left, right);
+    }
+
+    /**
+     * Writes the hyper-parameters and the flattened nodes of the tree (see {@link net.acimon.jmlearn.utils.ModelSerializer}).
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(ModelOutput out) throws IOException {
+        out.writeInt(_minSamplesSplit);
+        out.writeInt(_maxDepth);
+        out.writeInt(_nFeatures);
+        out.writeByte(Arrays.asList(VALID_SPLITTERS).indexOf(_splitter));
+        int nodeCount = getNodeCount();
+        out.writeInt(nodeCount);
+        if (nodeCount > 0) {
+            int[] features = new int[nodeCount];
+            double[] thresholds = new double[nodeCount];
+            int[] rightChildren = new int[nodeCount];
+            int[] values = new int[nodeCount];
+            flatten(features, thresholds, rightChildren, values, 0);
+            out.writeInts(features, 0, nodeCount);
+            out.writeDoubles(thresholds, 0, nodeCount);
+            out.writeInts(rightChildren, 0, nodeCount);
+            out.writeInts(values, 0, nodeCount);
         }
-        return entropy;
     }
 
     /**
-     * Finds the most common label in the dataset.
+     * Reads a tree written by {@link #writeTo(ModelOutput)}.
+     *
+     * @param in The source.
+     * @return The tree, fitted if it was fitted when saved.
+     * @throws IOException If reading fails or the data is corrupted.
      */
-    private int mostCommonLabel(int[] Y) {
-        Map<Integer, Integer> counts = new HashMap<>();
-        for (int label : Y) {
-            counts.put(label, counts.getOrDefault(label, 0) + 1);
-        }
-        return counts.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElseThrow(() -> new IllegalStateException("No labels found"));
+    public static DecisionTree readFrom(ModelInput in) throws IOException {
+        int minSamplesSplit = in.readInt();
+        int maxDepth = in.readInt();
+        int nFeatures = in.readInt();
+        DecisionTree tree = new DecisionTree(minSamplesSplit, maxDepth, nFeatures);
+        int splitter = in.readByte();
+        if (splitter < 0 || splitter >= VALID_SPLITTERS.length) {
+            throw new IOException("Corrupted tree: unknown splitter " + splitter);
+        }
+        tree.setSplitter(VALID_SPLITTERS[splitter]);
+        int nodeCount = in.readLength();
+        if (nodeCount > 0) {
+            int[] features = in.readInts(nodeCount);
+            double[] thresholds = in.readDoubles(nodeCount);
+            int[] rightChildren = in.readInts(nodeCount);
+            int[] values = in.readInts(nodeCount);
+            try {
+                tree.unflatten(features, thresholds, rightChildren, values, 0);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Corrupted tree", e);
+            }
+        }
+        return tree;
     }
 
     /**
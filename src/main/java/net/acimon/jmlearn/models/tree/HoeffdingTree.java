@@ -0,0 +1,400 @@
+package net.acimon.jmlearn.models.tree;
+
+import net.acimon.jmlearn.models.IncrementalModel;
+import net.acimon.jmlearn.models.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A Hoeffding tree (VFDT) classifier that learns incrementally from a stream of samples.
+ * <p>
+ * Each leaf keeps, per feature and class, the weight, mean and variance of the values it has seen. Every
+ * {@code gracePeriod} samples a leaf evaluates candidate thresholds on each feature, estimating the class split from
+ * the per-class Gaussians, and splits once the Hoeffding bound guarantees that the best feature beats the second best
+ * (or they are tied within {@code tieThreshold}). An update only walks one root-to-leaf path, so its cost does not
+ * depend on the number of samples already seen.
+ * </p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * HoeffdingTree tree = new HoeffdingTree();
+ * for (int i = 0; i &lt; X.length; i++) {
+ *     tree.partialFit(X[i], y[i], 1);
+ * }
+ * int[] predictions = tree.predict(XTest);
+ * </pre>
+ */
+public class HoeffdingTree implements IncrementalModel {
+
+    private int _gracePeriod; // Samples a leaf sees between two split attempts
+    private double _splitConfidence; // Probability of choosing the wrong split (delta of the Hoeffding bound)
+    private double _tieThreshold;
+    private int _maxDepth;
+    private List<Integer> _classes = new ArrayList<>(); // Labels in order of first appearance
+    private Node _root;
+    private static final Logger logger = Logger.getLogger(HoeffdingTree.class.getName());
+
+    // Default values
+    private static final int DEFAULT_GRACE_PERIOD = 200;
+    private static final double DEFAULT_SPLIT_CONFIDENCE = 1e-7;
+    private static final double DEFAULT_TIE_THRESHOLD = 0.05;
+    private static final int DEFAULT_MAX_DEPTH = 100;
+    private static final int SPLIT_POINTS = 10; // Candidate thresholds evaluated per feature
+
+    public HoeffdingTree(int gracePeriod, double splitConfidence, double tieThreshold, int maxDepth) {
+        if (gracePeriod < 1 || splitConfidence <= 0 || splitConfidence >= 1 || tieThreshold < 0 || maxDepth < 0) {
+            throw new IllegalArgumentException("Invalid hyper-parameters for HoeffdingTree.");
+        }
+        this._gracePeriod = gracePeriod;
+        this._splitConfidence = splitConfidence;
+        this._tieThreshold = tieThreshold;
+        this._maxDepth = maxDepth;
+    }
+
+    public HoeffdingTree() {
+        this(DEFAULT_GRACE_PERIOD, DEFAULT_SPLIT_CONFIDENCE, DEFAULT_TIE_THRESHOLD, DEFAULT_MAX_DEPTH);
+    }
+
+    public HoeffdingTree(HoeffdingTree other) {
+        this(other._gracePeriod, other._splitConfidence, other._tieThreshold, other._maxDepth);
+        this._classes = new ArrayList<>(other._classes);
+        if (other._root != null) {
+            this._root = other._root.copy();
+        }
+    }
+
+    @Override
+    public Model clone() {
+        return new HoeffdingTree(this);
+    }
+
+    public int getGracePeriod() {
+        return _gracePeriod;
+    }
+    public double getSplitConfidence() {
+        return _splitConfidence;
+    }
+    public double getTieThreshold() {
+        return _tieThreshold;
+    }
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+
+    /**
+     * Fits a new tree by streaming the samples once, in order.
+     *
+     * @param X The training data features.
+     * @param Y The training data labels.
+     */
+    @Override
+    public void fit(double[][] X, int[] Y) {
+        if (X == null || Y == null || X.length == 0 || X.length != Y.length) {
+            throw new IllegalArgumentException("Invalid input data");
+        }
+        _classes = new ArrayList<>();
+        _root = null;
+        for (int i = 0; i < X.length; i++) {
+            partialFit(X[i], Y[i], 1);
+        }
+    }
+
+    @Override
+    public void fit(double[][] X) {
+        logger.severe("fit method without labels not supported for HoeffdingTree model");
+        throw new UnsupportedOperationException("fit method without labels not supported for HoeffdingTree model");
+    }
+
+    /**
+     * Updates the tree with one sample.
+     *
+     * @param x The sample features.
+     * @param y The sample label.
+     * @param count Number of times the sample is seen (its weight).
+     */
+    @Override
+    public void partialFit(double[] x, int y, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be non-negative.");
+        }
+        if (_root == null) {
+            _root = new Node(x.length, 0);
+        } else if (x.length != _root.nFeatures) {
+            throw new IllegalArgumentException("All feature vectors must have the same number of dimensions.");
+        }
+        if (count == 0) return;
+
+        int classIndex = _classes.indexOf(y);
+        if (classIndex == -1) {
+            _classes.add(y);
+            classIndex = _classes.size() - 1;
+        }
+
+        Node leaf = _root;
+        while (!leaf.isLeafNode()) {
+            leaf = (x[leaf.feature] <= leaf.threshold) ? leaf.left : leaf.right;
+        }
+        leaf.update(x, classIndex, count);
+        if (leaf.weightSinceEvaluation >= _gracePeriod && leaf.depth < _maxDepth && leaf.nFeatures > 0) {
+            leaf.weightSinceEvaluation = 0;
+            attemptSplit(leaf);
+        }
+    }
+
+    /**
+     * Splits the leaf if the Hoeffding bound shows its best split is better than the second best.
+     */
+    private void attemptSplit(Node leaf) {
+        int nClasses = _classes.size();
+        // Only the samples the leaf observed itself count, not the distribution inherited from its parent
+        double[] observed = leaf.weight[0];
+        double total = 0.0;
+        int observedClasses = 0;
+        for (double classWeight : observed) {
+            total += classWeight;
+            if (classWeight > 0) observedClasses++;
+        }
+        if (observedClasses < 2) return;
+
+        double parentEntropy = entropy(observed, total);
+        double bestGain = 0.0;
+        double secondGain = 0.0;
+        int bestFeature = -1;
+        double bestThreshold = Double.NaN;
+        double[] bestLeft = null;
+        double[] bestRight = null;
+        for (int f = 0; f < leaf.nFeatures; f++) {
+            double featureGain = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < observed.length; c++) {
+                if (observed[c] == 0) continue;
+                min = Math.min(min, leaf.min[f][c]);
+                max = Math.max(max, leaf.max[f][c]);
+            }
+            for (int p = 1; p <= SPLIT_POINTS && min < max; p++) {
+                double threshold = min + (max - min) * p / (SPLIT_POINTS + 1);
+                double[] left = new double[nClasses];
+                double[] right = new double[nClasses];
+                double leftTotal = 0.0;
+                for (int c = 0; c < observed.length; c++) {
+                    double weight = observed[c];
+                    if (weight == 0) continue;
+                    left[c] = weight * leaf.fractionBelow(f, c, threshold);
+                    right[c] = weight - left[c];
+                    leftTotal += left[c];
+                }
+                double rightTotal = total - leftTotal;
+                double gain = parentEntropy
+                    - (leftTotal / total) * entropy(left, leftTotal)
+                    - (rightTotal / total) * entropy(right, rightTotal);
+                if (gain > featureGain) {
+                    featureGain = gain;
+                    if (gain > bestGain) {
+                        bestThreshold = threshold;
+                        bestLeft = left;
+                        bestRight = right;
+                    }
+                }
+            }
+            // Track the best and second best feature
+            if (featureGain > bestGain) {
+                secondGain = bestGain;
+                bestGain = featureGain;
+                bestFeature = f;
+            } else if (featureGain > secondGain) {
+                secondGain = featureGain;
+            }
+        }
+        if (bestFeature == -1) return;
+
+        double range = Math.log(nClasses) / Math.log(2);
+        double bound = Math.sqrt(range * range * Math.log(1.0 / _splitConfidence) / (2.0 * total));
+        if (bestGain - secondGain > bound || bound < _tieThreshold) {
+            leaf.split(bestFeature, bestThreshold, bestLeft, bestRight);
+        }
+    }
+
+    private static double entropy(double[] classWeights, double total) {
+        if (total <= 0) return 0.0;
+        double entropy = 0.0;
+        for (double weight : classWeights) {
+            if (weight <= 0) continue;
+            double prob = weight / total;
+            entropy -= prob * Math.log(prob) / Math.log(2);
+        }
+        return entropy;
+    }
+
+    /**
+     * Predicts the majority class of the leaf each sample falls into.
+     */
+    @Override
+    public int[] predict(double[][] X) {
+        if (_root == null) {
+            throw new IllegalStateException("The model must be fitted before predicting.");
+        }
+        int[] predictions = new int[X.length];
+        for (int i = 0; i < X.length; i++) {
+            Node node = _root;
+            while (!node.isLeafNode()) {
+                node = (X[i][node.feature] <= node.threshold) ? node.left : node.right;
+            }
+            predictions[i] = _classes.isEmpty() ? 0 : _classes.get(node.majorityClass());
+        }
+        return predictions;
+    }
+
+    /**
+     * Counts the nodes of the tree.
+     *
+     * @return The number of nodes, 0 if no sample was seen.
+     */
+    public int getNodeCount() {
+        return (_root == null) ? 0 : _root.count();
+    }
+
+    private static class Node {
+        final int nFeatures;
+        final int depth;
+        int feature = -1;
+        double threshold = Double.NaN;
+        Node left;
+        Node right;
+
+        // Leaf statistics, dropped once the node splits
+        double[] classWeights = new double[0];
+        double[][] weight; // [feature][class] weight, mean, squared deviations, min and max
+        double[][] mean;
+        double[][] squares;
+        double[][] min;
+        double[][] max;
+        double weightSinceEvaluation;
+
+        Node(int nFeatures, int depth) {
+            this.nFeatures = nFeatures;
+            this.depth = depth;
+            this.weight = new double[nFeatures][0];
+            this.mean = new double[nFeatures][0];
+            this.squares = new double[nFeatures][0];
+            this.min = new double[nFeatures][0];
+            this.max = new double[nFeatures][0];
+        }
+
+        boolean isLeafNode() {
+            return left == null && right == null;
+        }
+
+        void update(double[] x, int classIndex, int count) {
+            if (classIndex >= classWeights.length) {
+                growClasses(classIndex + 1);
+            }
+            classWeights[classIndex] += count;
+            weightSinceEvaluation += count;
+            for (int f = 0; f < nFeatures; f++) {
+                // Weighted Welford update of the per-class mean and variance
+                double value = x[f];
+                double previousWeight = weight[f][classIndex];
+                double newWeight = previousWeight + count;
+                double delta = value - mean[f][classIndex];
+                mean[f][classIndex] += delta * count / newWeight;
+                squares[f][classIndex] += delta * (value - mean[f][classIndex]) * count;
+                weight[f][classIndex] = newWeight;
+                if (previousWeight == 0) {
+                    min[f][classIndex] = value;
+                    max[f][classIndex] = value;
+                } else {
+                    min[f][classIndex] = Math.min(min[f][classIndex], value);
+                    max[f][classIndex] = Math.max(max[f][classIndex], value);
+                }
+            }
+        }
+
+        private void growClasses(int nClasses) {
+            classWeights = Arrays.copyOf(classWeights, nClasses);
+            for (int f = 0; f < nFeatures; f++) {
+                weight[f] = Arrays.copyOf(weight[f], nClasses);
+                mean[f] = Arrays.copyOf(mean[f], nClasses);
+                squares[f] = Arrays.copyOf(squares[f], nClasses);
+                min[f] = Arrays.copyOf(min[f], nClasses);
+                max[f] = Arrays.copyOf(max[f], nClasses);
+            }
+        }
+
+        /**
+         * Estimates the fraction of class {@code c} with {@code x[f] <= threshold} from its Gaussian.
+         */
+        double fractionBelow(int f, int c, double threshold) {
+            if (threshold < min[f][c]) return 0.0;
+            if (threshold >= max[f][c]) return 1.0;
+            double variance = (weight[f][c] > 1) ? squares[f][c] / (weight[f][c] - 1) : 0.0;
+            if (variance <= 0) return (mean[f][c] <= threshold) ? 1.0 : 0.0;
+            return normalCdf((threshold - mean[f][c]) / Math.sqrt(variance));
+        }
+
+        int majorityClass() {
+            int best = 0;
+            for (int c = 1; c < classWeights.length; c++) {
+                if (classWeights[c] > classWeights[best]) best = c;
+            }
+            return best;
+        }
+
+        void split(int feature, double threshold, double[] leftWeights, double[] rightWeights) {
+            this.feature = feature;
+            this.threshold = threshold;
+            this.left = new Node(nFeatures, depth + 1);
+            this.right = new Node(nFeatures, depth + 1);
+            // Children start from the estimated class distribution so they can predict right away
+            this.left.growClasses(leftWeights.length);
+            this.right.growClasses(rightWeights.length);
+            System.arraycopy(leftWeights, 0, this.left.classWeights, 0, leftWeights.length);
+            System.arraycopy(rightWeights, 0, this.right.classWeights, 0, rightWeights.length);
+            classWeights = null;
+            weight = null;
+            mean = null;
+            squares = null;
+            min = null;
+            max = null;
+        }
+
+        int count() {
+            return isLeafNode() ? 1 : 1 + left.count() + right.count();
+        }
+
+        Node copy() {
+            Node copy = new Node(nFeatures, depth);
+            copy.feature = feature;
+            copy.threshold = threshold;
+            copy.weightSinceEvaluation = weightSinceEvaluation;
+            if (isLeafNode()) {
+                copy.classWeights = classWeights.clone();
+                for (int f = 0; f < nFeatures; f++) {
+                    copy.weight[f] = weight[f].clone();
+                    copy.mean[f] = mean[f].clone();
+                    copy.squares[f] = squares[f].clone();
+                    copy.min[f] = min[f].clone();
+                    copy.max[f] = max[f].clone();
+                }
+            } else {
+                copy.left = left.copy();
+                copy.right = right.copy();
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Standard normal cumulative distribution (Abramowitz and Stegun 7.1.26, error below 1.5e-7).
+     */
+    private static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2.0);
+        double t = 1.0 / (1.0 + 0.3275911 * x);
+        double erf = 1.0 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+            + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return (z >= 0) ? 0.5 * (1.0 + erf) : 0.5 * (1.0 - erf);
+    }
+}
@@ -0,0 +1,152 @@
+package net.acimon.jmlearn.utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link RowSource} over a binary row file, the fastest format to stream: no parsing, only little-endian doubles
+ * read through a small buffer.
+ * <p>
+ * The layout follows {@link ModelSerializer}: the magic number, the version, the number of rows and features, then the
+ * rows one after the other. {@link #write(Path, double[][])} creates such a file from memory, and
+ * {@link Writer} appends rows to one chunk by chunk, e.g. while converting a CSV file.
+ * </p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * try (BinaryRowSource.Writer writer = new BinaryRowSource.Writer(Paths.get("points.bin"), 8)) {
+ *     for (double[][] chunk : chunks) {
+ *         writer.write(chunk);
+ *     }
+ * }
+ * new KMeans(8, 100, 42L).fit(new BinaryRowSource(Paths.get("points.bin")));
+ * </pre>
+ */
+public class BinaryRowSource implements RowSource {
+
+    private static final long ROW_COUNT_POSITION = 2 * Integer.BYTES; // After the magic number and the version
+
+    private final Path _path;
+
+    public BinaryRowSource(Path path) {
+        this._path = path;
+    }
+
+    /**
+     * Writes rows to a new binary row file.
+     *
+     * @param path The destination, replaced if it exists.
+     * @param X The rows, all of the same length.
+     * @throws IOException If writing fails.
+     */
+    public static void write(Path path, double[][] X) throws IOException {
+        try (Writer writer = new Writer(path, X[0].length)) {
+            writer.write(X);
+        }
+    }
+
+    @Override
+    public int getNFeatures() throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            ModelInput in = new ModelInput(channel);
+            ModelSerializer.readHeader(in);
+            in.readLength();
+            return in.readLength();
+        }
+    }
+
+    @Override
+    public Reader open(int maxRows) throws IOException {
+        FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ);
+        try {
+            ModelInput in = new ModelInput(channel);
+            ModelSerializer.readHeader(in);
+            int nRows = in.readLength();
+            int nFeatures = in.readLength();
+            return new Reader() {
+                private int _read;
+
+                @Override
+                public double[][] next() throws IOException {
+                    if (_read == nRows) {
+                        return null;
+                    }
+                    double[][] rows = new double[Math.min(maxRows, nRows - _read)][];
+                    for (int i = 0; i < rows.length; i++) {
+                        rows[i] = in.readDoubles(nFeatures);
+                    }
+                    _read += rows.length;
+                    return rows;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends rows to a new binary row file; the row count in the header is filled in on close.
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final FileChannel _channel;
+        private final ModelOutput _out;
+        private final int _nFeatures;
+        private int _nRows;
+
+        /**
+         * @param path The destination, replaced if it exists.
+         * @param nFeatures The number of features of every row.
+         * @throws IOException If the file cannot be created.
+         */
+        public Writer(Path path, int nFeatures) throws IOException {
+            this._channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            this._out = new ModelOutput(_channel);
+            this._nFeatures = nFeatures;
+            _out.writeInt(ModelSerializer.MAGIC);
+            _out.writeInt(ModelSerializer.VERSION);
+            _out.writeInt(0); // Row count, set on close
+            _out.writeInt(nFeatures);
+        }
+
+        /**
+         * Appends a chunk of rows. The whole chunk is checked first, so a rejected chunk leaves nothing in the file.
+         *
+         * @param rows The rows, each with {@code nFeatures} features.
+         * @throws IllegalArgumentException If a row has another number of features.
+         * @throws IOException If writing fails.
+         */
+        public void write(double[][] rows) throws IOException {
+            for (double[] row : rows) {
+                if (row.length != _nFeatures) {
+                    throw new IllegalArgumentException("Rows must have " + _nFeatures + " features.");
+                }
+            }
+            for (double[] row : rows) {
+                _out.writeDoubles(row, 0, _nFeatures);
+            }
+            _nRows += rows.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                _out.flush();
+                ModelOutput header = new ModelOutput(_channel.position(ROW_COUNT_POSITION));
+                header.writeInt(_nRows);
+                header.flush();
+            } finally {
+                _channel.close();
+            }
+        }
+    }
+}
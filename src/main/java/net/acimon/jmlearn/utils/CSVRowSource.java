@@ -0,0 +1,119 @@
+package net.acimon.jmlearn.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RowSource} over a numeric CSV file, read line by line at every pass.
+ * <p>
+ * Unlike {@link CSVLoader}, which keeps every row as an {@code Object[]}, only the current chunk is held in memory.
+ * Every value must parse as a double. The features are the first {@code nFeatures} columns, so a label in the last
+ * column can be left out; blank lines are skipped. Parsing dominates the cost of a pass, so for models that read
+ * the data many times, converting it once with {@link BinaryRowSource.Writer} pays off quickly.
+ * </p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * RowSource rows = new CSVRowSource(Paths.get("points.csv"), true);
+ * KMeans kmeans = new KMeans(8, 100, 42L);
+ * kmeans.fit(rows);
+ * </pre>
+ */
+public class CSVRowSource implements RowSource {
+
+    private final Path _path;
+    private final boolean _headers;
+    private int _nFeatures; // 0 until read from the first row
+
+    /**
+     * @param path The CSV file.
+     * @param headers Whether the first line holds the column names.
+     * @param nFeatures The number of leading columns to read as features.
+     */
+    public CSVRowSource(Path path, boolean headers, int nFeatures) {
+        if (nFeatures < 1) {
+            throw new IllegalArgumentException("The number of features must be positive.");
+        }
+        this._path = path;
+        this._headers = headers;
+        this._nFeatures = nFeatures;
+    }
+
+    /**
+     * Reads every column as a feature.
+     *
+     * @param path The CSV file.
+     * @param headers Whether the first line holds the column names.
+     */
+    public CSVRowSource(Path path, boolean headers) {
+        this._path = path;
+        this._headers = headers;
+    }
+
+    @Override
+    public int getNFeatures() throws IOException {
+        if (_nFeatures == 0) {
+            try (BufferedReader reader = Files.newBufferedReader(_path, StandardCharsets.UTF_8)) {
+                String line = _headers ? reader.readLine() : null;
+                while ((line = reader.readLine()) != null && line.trim().isEmpty()) {
+                    // Skip blank lines
+                }
+                if (line == null) {
+                    throw new IOException("No rows in " + _path);
+                }
+                _nFeatures = line.split(",").length;
+            }
+        }
+        return _nFeatures;
+    }
+
+    @Override
+    public Reader open(int maxRows) throws IOException {
+        int nFeatures = getNFeatures();
+        BufferedReader reader = Files.newBufferedReader(_path, StandardCharsets.UTF_8);
+        if (_headers) {
+            reader.readLine();
+        }
+        return new Reader() {
+            private int _lineNumber = _headers ? 1 : 0;
+
+            @Override
+            public double[][] next() throws IOException {
+                List<double[]> rows = new ArrayList<>(Math.min(maxRows, 1 << 12));
+                String line;
+                while (rows.size() < maxRows && (line = reader.readLine()) != null) {
+                    _lineNumber++;
+                    if (line.trim().isEmpty()) continue;
+                    rows.add(parse(line, nFeatures, _lineNumber));
+                }
+                return rows.isEmpty() ? null : rows.toArray(new double[0][]);
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private double[] parse(String line, int nFeatures, int lineNumber) throws IOException {
+        String[] values = line.split(",");
+        if (values.length < nFeatures) {
+            throw new IOException(_path + " line " + lineNumber + ": expected " + nFeatures + " columns, found " + values.length);
+        }
+        double[] row = new double[nFeatures];
+        for (int j = 0; j < nFeatures; j++) {
+            try {
+                row[j] = Double.parseDouble(values[j]);
+            } catch (NumberFormatException e) {
+                throw new IOException(_path + " line " + lineNumber + ": not a number \"" + values[j] + "\"", e);
+            }
+        }
+        return row;
+    }
+}
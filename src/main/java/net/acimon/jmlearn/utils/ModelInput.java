@@ -0,0 +1,188 @@
+package net.acimon.jmlearn.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Little-endian reader of primitives and primitive arrays written by {@link ModelOutput}.
+ * <p>
+ * It reads either from an NIO channel through a small buffer, or directly from a buffer that already holds the whole
+ * content, such as a memory-mapped file, in which case nothing is buffered or copied besides the returned arrays.
+ * </p>
+ */
+public class ModelInput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel _channel; // null when reading a complete buffer
+    private final ByteBuffer _buffer;
+
+    public ModelInput(ReadableByteChannel channel) {
+        this._channel = channel;
+        this._buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this._buffer.flip(); // Start empty
+    }
+
+    /**
+     * Reads from a buffer holding the complete content, from its current position.
+     *
+     * @param buffer The buffer, e.g. a memory-mapped file. Its byte order is set to little-endian.
+     */
+    public ModelInput(ByteBuffer buffer) {
+        this._channel = null;
+        this._buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public byte readByte() throws IOException {
+        require(Byte.BYTES);
+        return _buffer.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws IOException {
+        require(Integer.BYTES);
+        return _buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(Long.BYTES);
+        return _buffer.getLong();
+    }
+
+    public double readDouble() throws IOException {
+        require(Double.BYTES);
+        return _buffer.getDouble();
+    }
+
+    public int[] readInts(int length) throws IOException {
+        int[] values = new int[initialCapacity(length, Integer.BYTES)];
+        int offset = 0;
+        while (offset < length) {
+            require(Integer.BYTES);
+            int chunk = Math.min(length - offset, _buffer.remaining() / Integer.BYTES);
+            if (offset + chunk > values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, offset + chunk, length));
+            }
+            _buffer.asIntBuffer().get(values, offset, chunk);
+            _buffer.position(_buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+        }
+        return values;
+    }
+
+    public double[] readDoubles(int length) throws IOException {
+        double[] values = new double[initialCapacity(length, Double.BYTES)];
+        int offset = 0;
+        while (offset < length) {
+            require(Double.BYTES);
+            int chunk = Math.min(length - offset, _buffer.remaining() / Double.BYTES);
+            if (offset + chunk > values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, offset + chunk, length));
+            }
+            _buffer.asDoubleBuffer().get(values, offset, chunk);
+            _buffer.position(_buffer.position() + chunk * Double.BYTES);
+            offset += chunk;
+        }
+        return values;
+    }
+
+    /**
+     * Size of the array first allocated for {@code length} elements. The length comes from the data itself, so it is
+     * checked against what is left before anything is allocated: a complete buffer must hold all the elements, and a
+     * channel read starts with one buffer's worth and grows the array as the data actually arrives. A corrupted length
+     * then ends in an {@link EOFException} instead of a huge allocation.
+     */
+    private int initialCapacity(int length, int elementBytes) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupted model: negative length " + length);
+        }
+        if (_channel == null) {
+            if ((long) length * elementBytes > _buffer.remaining()) {
+                throw new EOFException("Unexpected end of model data");
+            }
+            return length;
+        }
+        return Math.min(length, BUFFER_SIZE / elementBytes);
+    }
+
+    /**
+     * Doubles the capacity until it holds {@code needed} elements, without exceeding {@code length}.
+     */
+    private static int grownCapacity(int capacity, int needed, int length) {
+        long grown = Math.max((long) capacity * 2, needed);
+        return (int) Math.min(grown, length);
+    }
+
+    /**
+     * Returns a read-only view of the next {@code length} ints without copying them, and skips past them. Only
+     * available when reading from a complete buffer.
+     *
+     * @throws IllegalStateException if reading from a channel.
+     */
+    public IntBuffer viewInts(int length) throws IOException {
+        ByteBuffer slice = viewBytes(length, Integer.BYTES);
+        return slice.asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the next {@code length} doubles without copying them, and skips past them. Only
+     * available when reading from a complete buffer.
+     *
+     * @throws IllegalStateException if reading from a channel.
+     */
+    public DoubleBuffer viewDoubles(int length) throws IOException {
+        ByteBuffer slice = viewBytes(length, Double.BYTES);
+        return slice.asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer viewBytes(int length, int elementBytes) throws IOException {
+        if (_channel != null) {
+            throw new IllegalStateException("Views are only available when reading from a complete buffer.");
+        }
+        long bytes = (long) length * elementBytes;
+        if (bytes > _buffer.remaining()) {
+            throw new EOFException("Unexpected end of model data");
+        }
+        ByteBuffer slice = _buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit((int) bytes);
+        _buffer.position(_buffer.position() + (int) bytes);
+        return slice;
+    }
+
+    /**
+     * Reads a length, rejecting negative values from corrupted input.
+     */
+    public int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted model: negative length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Makes sure at least {@code bytes} bytes are buffered, reading more from the channel if needed.
+     */
+    private void require(int bytes) throws IOException {
+        if (_buffer.remaining() >= bytes) return;
+        if (_channel == null) {
+            throw new EOFException("Unexpected end of model data");
+        }
+        _buffer.compact();
+        while (_buffer.position() < bytes) {
+            if (_channel.read(_buffer) < 0) {
+                throw new EOFException("Unexpected end of model data");
+            }
+        }
+        _buffer.flip();
+    }
+}
@@ -0,0 +1,95 @@
+package net.acimon.jmlearn.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered little-endian writer of primitives and primitive arrays to an NIO channel, used by {@link ModelSerializer}.
+ * <p>
+ * Arrays are copied in bulk through a direct buffer, so writing a model costs about one memory copy of its arrays.
+ * Call {@link #flush()} once everything is written.
+ * </p>
+ */
+public class ModelOutput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel _channel;
+    private final ByteBuffer _buffer;
+
+    public ModelOutput(WritableByteChannel channel) {
+        this._channel = channel;
+        this._buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void writeByte(int value) throws IOException {
+        require(Byte.BYTES);
+        _buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt(int value) throws IOException {
+        require(Integer.BYTES);
+        _buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        require(Long.BYTES);
+        _buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        require(Double.BYTES);
+        _buffer.putDouble(value);
+    }
+
+    /**
+     * Writes the elements of an array, without its length.
+     */
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(Integer.BYTES);
+            int chunk = Math.min(length, _buffer.remaining() / Integer.BYTES);
+            _buffer.asIntBuffer().put(values, offset, chunk);
+            _buffer.position(_buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the elements of an array, without its length.
+     */
+    public void writeDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(Double.BYTES);
+            int chunk = Math.min(length, _buffer.remaining() / Double.BYTES);
+            _buffer.asDoubleBuffer().put(values, offset, chunk);
+            _buffer.position(_buffer.position() + chunk * Double.BYTES);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    public void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    private void require(int bytes) throws IOException {
+        if (_buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.acimon.jmlearn.utils;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.cluster.KMeans;
+import net.acimon.jmlearn.models.ensemble.Bagging;
+import net.acimon.jmlearn.models.ensemble.ExtraTrees;
+import net.acimon.jmlearn.models.ensemble.RandomForestTree;
+import net.acimon.jmlearn.models.neighbors.KNN;
+import net.acimon.jmlearn.models.tree.DecisionTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The ModelSerializer class saves fitted models in a compact, versioned binary format and loads them back.
+ * <p>
+ * A file starts with the magic number {@code "JMLM"} and the format version, followed by a one-byte model type and the
+ * model's own fields. Everything is little-endian and arrays are stored as plain primitive runs (trees in the flat
+ * pre-order layout of {@link net.acimon.jmlearn.models.ensemble.CompiledForest}), so saving and loading are bulk copies
+ * with no per-object overhead. Models can be streamed over any NIO channel (files, sockets, pipes) or loaded from a
+ * memory-mapped file.
+ * </p>
+ *
+ * <h2>Supported Models</h2>
+ * <ul>
+ *     <li>{@link DecisionTree}</li>
+ *     <li>{@link Bagging}, with any supported base model</li>
+ *     <li>{@link RandomForestTree} and {@link ExtraTrees}</li>
+ *     <li>{@link KNN}</li>
+ *     <li>{@link KMeans} (the centroids, not the training data)</li>
+ * </ul>
+ * Out-of-bag state and training data references are not saved.
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * ModelSerializer.save(forest, Paths.get("forest.jmlm"));
+ * RandomForestTree loaded = (RandomForestTree) ModelSerializer.load(Paths.get("forest.jmlm"));
+ * </pre>
+ */
+public final class ModelSerializer {
+
+    public static final int MAGIC = 0x4D4C4D4A; // "JMLM" in little-endian byte order
+    public static final int VERSION = 1;
+
+    // Model type tags
+    public static final byte DECISION_TREE = 1;
+    public static final byte BAGGING = 2;
+    public static final byte RANDOM_FOREST = 3;
+    public static final byte EXTRA_TREES = 4;
+    public static final byte KNN_MODEL = 5;
+    public static final byte KMEANS = 6;
+
+    private ModelSerializer() {
+    }
+
+    /**
+     * Writes a model, with the file header, to a channel. The channel is not closed.
+     *
+     * @param model The model to save.
+     * @param channel The destination channel.
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the model type is not supported.
+     */
+    public static void save(Model model, WritableByteChannel channel) throws IOException {
+        ModelOutput out = new ModelOutput(channel);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeModel(model, out);
+        out.flush();
+    }
+
+    /**
+     * Saves a model to a file, replacing it if it exists.
+     */
+    public static void save(Model model, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(model, channel);
+        }
+    }
+
+    /**
+     * Reads a model, with the file header, from a channel. The channel is not closed.
+     *
+     * @param channel The source channel.
+     * @return The loaded model.
+     * @throws IOException If reading fails or the data is not a supported model.
+     */
+    public static Model load(ReadableByteChannel channel) throws IOException {
+        return load(new ModelInput(channel));
+    }
+
+    /**
+     * Reads a model from a buffer holding a saved model, e.g. a memory-mapped file.
+     */
+    public static Model load(ByteBuffer buffer) throws IOException {
+        return load(new ModelInput(buffer));
+    }
+
+    /**
+     * Loads a model from a file through a read-only memory mapping, so the file is read straight from the page cache.
+     */
+    public static Model load(Path path) throws IOException {
+        return load(map(path));
+    }
+
+    /**
+     * Maps a whole file read-only.
+     *
+     * @param path The file to map.
+     * @return The mapped content.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads and checks the file header.
+     *
+     * @param in The input positioned at the start of a saved model.
+     * @throws IOException If the magic number or the version does not match.
+     */
+    public static void readHeader(ModelInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a saved model (bad magic number " + Integer.toHexString(magic) + ")");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model format version " + version + ", expected " + VERSION);
+        }
+    }
+
+    private static Model load(ModelInput in) throws IOException {
+        readHeader(in);
+        return readModel(in);
+    }
+
+    /**
+     * Writes a model's type tag and fields, without the file header. Composite models use it for their parts.
+     */
+    public static void writeModel(Model model, ModelOutput out) throws IOException {
+        if (model instanceof DecisionTree) {
+            out.writeByte(DECISION_TREE);
+            ((DecisionTree) model).writeTo(out);
+        } else if (model instanceof ExtraTrees) {
+            out.writeByte(EXTRA_TREES);
+            ((ExtraTrees) model).writeTo(out);
+        } else if (model instanceof RandomForestTree) {
+            out.writeByte(RANDOM_FOREST);
+            ((RandomForestTree) model).writeTo(out);
+        } else if (model instanceof Bagging) {
+            out.writeByte(BAGGING);
+            ((Bagging) model).writeTo(out);
+        } else if (model instanceof KNN) {
+            out.writeByte(KNN_MODEL);
+            ((KNN) model).writeTo(out);
+        } else if (model instanceof KMeans) {
+            out.writeByte(KMEANS);
+            ((KMeans) model).writeTo(out);
+        } else {
+            throw new IllegalArgumentException("Unsupported model type: " + model.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a model written by {@link #writeModel(Model, ModelOutput)}.
+     */
+    public static Model readModel(ModelInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case DECISION_TREE:
+                return DecisionTree.readFrom(in);
+            case BAGGING:
+                return Bagging.readFrom(in);
+            case RANDOM_FOREST:
+                return RandomForestTree.readFrom(in);
+            case EXTRA_TREES:
+                return ExtraTrees.readFrom(in);
+            case KNN_MODEL:
+                return KNN.readFrom(in);
+            case KMEANS:
+                return KMeans.readFrom(in);
+            default:
+                throw new IOException("Unknown model type " + type);
+        }
+    }
+}
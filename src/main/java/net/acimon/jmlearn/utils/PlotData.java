@@ -2,6 +2,7 @@ package net.acimon.jmlearn.utils;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
+import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.util.ShapeUtils;
@@ -10,6 +11,8 @@ import org.jfree.data.xy.XYSeriesCollection;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
 
@@ -84,6 +87,31 @@ public class PlotData {
         return colors;
     }
     public static void plotDataWithCentroids(List<double[]> data, List<Integer> labels, double[][] centroids, String title, JFrame frame, ChartPanel chartPanel) {
+        JFreeChart chart = createChartWithCentroids(data, labels, centroids, title);
+
+        // Update the chart panel with the new chart
+        chartPanel.setChart(chart);
+        chartPanel.revalidate();
+        chartPanel.repaint();
+    
+        // Make sure the frame is visible and properly updated
+        frame.pack();
+        frame.setVisible(true);
+    }
+
+    /**
+     * Renders the same chart as {@link #plotDataWithCentroids} to a PNG file, without any window, so it also works on
+     * headless hosts ({@code -Djava.awt.headless=true}).
+     *
+     * @param file The PNG file to write, replaced if it exists.
+     * @throws IOException If writing the file fails.
+     */
+    public static void saveDataWithCentroids(List<double[]> data, List<Integer> labels, double[][] centroids, String title, Path file) throws IOException {
+        JFreeChart chart = createChartWithCentroids(data, labels, centroids, title);
+        ChartUtils.saveChartAsPNG(file.toFile(), chart, 800, 600);
+    }
+
+    private static JFreeChart createChartWithCentroids(List<double[]> data, List<Integer> labels, double[][] centroids, String title) {
         XYSeriesCollection dataset = new XYSeriesCollection();
     
         // Map to hold series for each unique label
@@ -141,17 +169,6 @@ public class PlotData {
         // Customize centroids
         chart.getXYPlot().getRenderer().setSeriesPaint(seriesIndex, Color.BLACK); // Set centroids color
         chart.getXYPlot().getRenderer().setSeriesShape(seriesIndex, ShapeUtils.createDiamond(10)); // Set the marker size
-    
-        // Update the chart panel with the new chart
-        chartPanel.setChart(chart);
-        chartPanel.revalidate();
-        chartPanel.repaint();
-    
-        // Make sure the frame is visible and properly updated
-        frame.pack();
-        frame.setVisible(true);
+        return chart;
     }
-    
-
-    
 }
@@ -0,0 +1,41 @@
+package net.acimon.jmlearn.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A data set that can be read sequentially, any number of times, in chunks of rows, so models can train on data that
+ * does not fit in memory.
+ *
+ * @see CSVRowSource
+ * @see BinaryRowSource
+ */
+public interface RowSource {
+
+    /**
+     * @return The number of features of every row.
+     * @throws IOException If the source cannot be read.
+     */
+    int getNFeatures() throws IOException;
+
+    /**
+     * Starts a new pass over the rows, from the first one.
+     *
+     * @param maxRows The maximum number of rows per chunk.
+     * @return A reader of this pass, to close once done.
+     * @throws IOException If the source cannot be opened.
+     */
+    Reader open(int maxRows) throws IOException;
+
+    /**
+     * One sequential pass over the rows.
+     */
+    interface Reader extends Closeable {
+
+        /**
+         * @return The next chunk of at most {@code maxRows} new row arrays, or {@code null} after the last row.
+         * @throws IOException If reading fails or a row is malformed.
+         */
+        double[][] next() throws IOException;
+    }
+}
@@ -0,0 +1,23 @@
+package net.acimon.jmlearn.utils;
+
+/**
+ * Thrown by a fit that stopped because its {@link TrainingControl} was cancelled or its deadline passed.
+ */
+public class TrainingCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean _deadlineExceeded;
+
+    public TrainingCancelledException(String message, boolean deadlineExceeded) {
+        super(message);
+        this._deadlineExceeded = deadlineExceeded;
+    }
+
+    /**
+     * @return {@code true} if the deadline passed, {@code false} if the fit was cancelled or interrupted.
+     */
+    public boolean isDeadlineExceeded() {
+        return _deadlineExceeded;
+    }
+}
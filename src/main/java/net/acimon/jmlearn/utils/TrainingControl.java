@@ -0,0 +1,114 @@
+package net.acimon.jmlearn.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a caller bound, abort and watch a long fit from another thread.
+ * <p>
+ * A control combines a cancellation flag, an optional deadline and an optional progress listener. Models that accept
+ * one (see {@link net.acimon.jmlearn.models.ControllableModel}) call {@link #checkpoint()} regularly while fitting
+ * (per tree node, per bag, per iteration) and stop with a {@link TrainingCancelledException} once the control is
+ * cancelled or past its deadline. Ensembles hand their control to their learners, so a single control stops the
+ * whole fit. A control can be shared by several fits to bound them together.
+ * </p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * TrainingControl control = new TrainingControl();
+ * control.setTimeout(10, TimeUnit.MINUTES);
+ * control.setProgressListener((done, total, elapsedMillis, etaMillis) -&gt;
+ *     System.out.println(done + "/" + total + " trees, ETA " + etaMillis + " ms"));
+ * forest.setTrainingControl(control);
+ * forest.fit(XTrain, yTrain); // Throws TrainingCancelledException after 10 minutes or on control.cancel()
+ * </pre>
+ */
+public class TrainingControl {
+
+    /**
+     * Receives the progress of a fit, on the thread that runs the fit.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * @param done Units of work done (trees, iterations), including those of previous warm-started fits.
+         * @param total Units of work of the whole fit.
+         * @param elapsedMillis Time spent in the current fit.
+         * @param etaMillis Estimated time left from the rate of the current fit, -1 until the first unit is done.
+         */
+        void onProgress(int done, int total, long elapsedMillis, long etaMillis);
+    }
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private volatile boolean _cancelled;
+    private volatile long _deadlineNanos = NO_DEADLINE; // System.nanoTime() value after which fits stop
+    private volatile ProgressListener _listener;
+
+    /**
+     * Asks every fit using this control to stop at its next checkpoint. Cannot be undone.
+     */
+    public void cancel() {
+        this._cancelled = true;
+    }
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * Sets a deadline {@code timeout} from now.
+     *
+     * @param timeout The time allowed from now.
+     * @param unit The unit of {@code timeout}.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout must be non-negative.");
+        }
+        this._deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * @return Nanoseconds left before the deadline (negative once passed), or {@link Long#MAX_VALUE} without one.
+     */
+    public long remainingNanos() {
+        long deadline = _deadlineNanos;
+        return (deadline == NO_DEADLINE) ? NO_DEADLINE : deadline - System.nanoTime();
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this._listener = listener;
+    }
+
+    /**
+     * Stops the calling fit if the control is cancelled or past its deadline.
+     *
+     * @throws TrainingCancelledException if the fit must stop.
+     */
+    public void checkpoint() {
+        if (_cancelled) {
+            throw new TrainingCancelledException("Training was cancelled.", false);
+        }
+        if (remainingNanos() <= 0) {
+            throw new TrainingCancelledException("Training deadline exceeded.", true);
+        }
+    }
+
+    /**
+     * Reports progress to the listener, if any, estimating the time left from the rate since the fit started.
+     *
+     * @param done Units of work done so far.
+     * @param total Units of work of the whole fit.
+     * @param startNanos {@link System#nanoTime()} when the current fit started.
+     * @param doneAtStart Units of work already done when the current fit started (e.g. warm start).
+     */
+    public void reportProgress(int done, int total, long startNanos, int doneAtStart) {
+        ProgressListener listener = _listener;
+        if (listener == null) return;
+        long elapsed = System.nanoTime() - startNanos;
+        int doneNow = done - doneAtStart;
+        long eta = (doneNow > 0) ? (long) ((double) elapsed / doneNow * (total - done)) : -1L;
+        listener.onProgress(done, total, TimeUnit.NANOSECONDS.toMillis(elapsed),
+            (eta < 0) ? -1L : TimeUnit.NANOSECONDS.toMillis(eta));
+    }
+}
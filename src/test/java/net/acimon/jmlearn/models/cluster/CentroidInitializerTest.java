@@ -0,0 +1,122 @@
+package net.acimon.jmlearn.models.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CentroidInitializerTest {
+
+    @Test
+    void kMeansParallelPutsOneCentroidInEverySeparatedBlob() {
+        double[][] X = separatedBlobs(3000, 8, 20);
+        for (long seed = 1; seed <= 5; seed++) {
+            double[][] centroids = CentroidInitializer.initialize("k-means||", X, 8, new SplittableRandom(seed));
+            assertEquals(8, centroids.length);
+            Set<Long> blobs = new HashSet<>();
+            for (double[] centroid : centroids) {
+                assertTrue(isRow(X, centroid));
+                blobs.add(Math.round(centroid[0] / 100.0));
+            }
+            assertEquals(8, blobs.size(), "seed=" + seed);
+        }
+    }
+
+    @Test
+    void kMeansParallelIsReproducibleAcrossPoolSizes() throws InterruptedException, ExecutionException {
+        // More rows than one chunk, so the oversampling rounds run on several chunks
+        double[][] X = KMeansTest.blobs(3 * RowChunks.CHUNK_ROWS + 17, 3, 10, 21);
+        double[][] single = initializeIn(new ForkJoinPool(1), X);
+        double[][] many = initializeIn(new ForkJoinPool(8), X);
+        assertArrayEquals(single, many);
+        assertArrayEquals(single, CentroidInitializer.initialize("k-means||", X, 10, new SplittableRandom(4L)));
+    }
+
+    @Test
+    void weightedInitializationNeverDrawsZeroWeightRows() {
+        double[][] X = KMeansTest.blobs(400, 2, 5, 22);
+        double[] weights = new double[X.length];
+        for (int i = 0; i < X.length; i += 3) {
+            weights[i] = 1.0 + i % 7;
+        }
+        for (String init : CentroidInitializer.VALID_INITS) {
+            for (long seed = 1; seed <= 10; seed++) {
+                double[][] centroids = CentroidInitializer.initialize(init, X, weights, 6, new SplittableRandom(seed));
+                assertEquals(6, centroids.length);
+                Set<Integer> rows = new HashSet<>();
+                for (double[] centroid : centroids) {
+                    int row = rowOf(X, centroid);
+                    assertTrue(row >= 0 && weights[row] > 0, init + ", seed=" + seed);
+                    rows.add(row);
+                }
+                if (init.equals("random")) {
+                    assertEquals(6, rows.size(), "random draws distinct rows");
+                }
+            }
+        }
+    }
+
+    @Test
+    void weightedInitializationFavoursHeavyRows() {
+        // Two rows far apart, one of them much heavier: a single weighted random draw almost always lands on it
+        double[][] X = {{0.0, 0.0}, {50.0, 50.0}};
+        double[] weights = {1.0, 999.0};
+        int heavy = 0;
+        for (long seed = 0; seed < 200; seed++) {
+            double[][] centroids = CentroidInitializer.initialize("random", X, weights, 1, new SplittableRandom(seed));
+            if (centroids[0][0] == 50.0) heavy++;
+        }
+        assertTrue(heavy >= 190, "heavy row drawn " + heavy + " times out of 200");
+    }
+
+    @Test
+    void weightedInitializationNeedsKPositiveWeights() {
+        double[][] X = {{0.0}, {1.0}, {2.0}, {3.0}};
+        double[] weights = {1.0, 0.0, 2.0, 0.0};
+        for (String init : CentroidInitializer.VALID_INITS) {
+            assertThrows(IllegalArgumentException.class,
+                () -> CentroidInitializer.initialize(init, X, weights, 3, new SplittableRandom(1L)));
+        }
+    }
+
+    private static double[][] initializeIn(ForkJoinPool pool, double[][] X)
+            throws InterruptedException, ExecutionException {
+        try {
+            return pool.submit(() -> CentroidInitializer.initialize("k-means||", X, 10, new SplittableRandom(4L))).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tight blobs centered at {@code (100 * b, 0)}, so the blob of a point is its first coordinate over 100, rounded.
+     */
+    private static double[][] separatedBlobs(int nSamples, int nBlobs, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] X = new double[nSamples][];
+        for (int i = 0; i < nSamples; i++) {
+            X[i] = new double[] {100.0 * (i % nBlobs) + random.nextDouble(-1.0, 1.0), random.nextDouble(-1.0, 1.0)};
+        }
+        return X;
+    }
+
+    private static boolean isRow(double[][] X, double[] point) {
+        return rowOf(X, point) >= 0;
+    }
+
+    private static int rowOf(double[][] X, double[] point) {
+        for (int i = 0; i < X.length; i++) {
+            if (Arrays.equals(X[i], point)) return i;
+        }
+        return -1;
+    }
+}
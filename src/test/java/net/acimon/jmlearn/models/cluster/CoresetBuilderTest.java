@@ -0,0 +1,83 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.BinaryRowSource;
+import net.acimon.jmlearn.utils.EuclideanDistance;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoresetBuilderTest {
+
+    @Test
+    void coresetFitCostsCloseToAFullFit() {
+        double[][] X = KMeansTest.blobs(30000, 3, 8, 41);
+        KMeans full = fit(X, null, 8);
+
+        Coreset coreset = new CoresetBuilder(2000, 6L).build(X);
+        assertTrue(coreset.size() <= 2000);
+        KMeans summarized = fit(coreset.getPoints(), coreset.getWeights(), 8);
+
+        double fullCost = full.score();
+        double coresetCost = cost(X, null, summarized.getCentroids());
+        assertTrue(coresetCost <= 1.1 * fullCost, "coreset fit cost " + coresetCost + ", full fit cost " + fullCost);
+    }
+
+    @Test
+    void streamedCoresetFitCostsCloseToAFullFit(@TempDir Path directory) throws IOException {
+        // Several stream chunks, so the coreset goes through merge and reduce
+        double[][] X = KMeansTest.blobs(3 * RowChunks.STREAM_CHUNK_ROWS, 2, 5, 42);
+        Path rows = directory.resolve("rows.bin");
+        BinaryRowSource.write(rows, X);
+        KMeans full = fit(X, null, 5);
+
+        Coreset coreset = new CoresetBuilder(2000, 7L).build(new BinaryRowSource(rows));
+        assertTrue(coreset.size() <= 2000);
+        KMeans summarized = fit(coreset.getPoints(), coreset.getWeights(), 5);
+
+        double fullCost = full.score();
+        double coresetCost = cost(X, null, summarized.getCentroids());
+        assertTrue(coresetCost <= 1.1 * fullCost, "coreset fit cost " + coresetCost + ", full fit cost " + fullCost);
+    }
+
+    @Test
+    void coresetWeightsEstimateTheFullCost() {
+        double[][] X = KMeansTest.blobs(30000, 3, 8, 43);
+        double[][] centroids = fit(X, null, 8).getCentroids();
+        Coreset coreset = new CoresetBuilder(3000, 8L).build(X);
+
+        assertEquals(X.length, coreset.getTotalWeight(), 0.1 * X.length);
+        double fullCost = cost(X, null, centroids);
+        assertEquals(fullCost, cost(coreset.getPoints(), coreset.getWeights(), centroids), 0.1 * fullCost);
+    }
+
+    private static KMeans fit(double[][] X, double[] weights, int k) {
+        KMeans kmeans = new KMeans(k, 300, 5L);
+        kmeans.setNInit(3);
+        if (weights == null) {
+            kmeans.fit(X);
+        } else {
+            kmeans.fit(X, weights);
+        }
+        return kmeans;
+    }
+
+    /**
+     * The weighted sum of squared distances of the rows to their closest centroid.
+     */
+    private static double cost(double[][] X, double[] weights, double[][] centroids) {
+        double cost = 0.0;
+        for (int i = 0; i < X.length; i++) {
+            double closest = Double.MAX_VALUE;
+            for (double[] centroid : centroids) {
+                closest = Math.min(closest, EuclideanDistance.calculate(X[i], centroid, true));
+            }
+            cost += ((weights != null) ? weights[i] : 1.0) * closest;
+        }
+        return cost;
+    }
+}
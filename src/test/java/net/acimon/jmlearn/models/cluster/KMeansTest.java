@@ -0,0 +1,270 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.BinaryRowSource;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+import net.acimon.jmlearn.utils.TrainingControl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KMeansTest {
+
+    private static final String[] ACCELERATED = {"elkan", "hamerly", "yinyang", "filtering"};
+
+    @Test
+    void acceleratedAlgorithmsMatchLloydOnBlobs() {
+        double[][] X = blobs(600, 5, 6, 11);
+        for (String init : new String[] {"k-means++", "random"}) {
+            assertMatchesLloyd(X, 6, init, 3L);
+            assertMatchesLloyd(X, 15, init, 4L);
+        }
+    }
+
+    @Test
+    void acceleratedAlgorithmsMatchLloydWithDuplicatePoints() {
+        double[][] distinct = blobs(80, 3, 4, 12);
+        double[][] X = new double[distinct.length * 5][];
+        for (int i = 0; i < X.length; i++) {
+            X[i] = distinct[i % distinct.length].clone();
+        }
+        assertMatchesLloyd(X, 4, "k-means++", 5L);
+        assertMatchesLloyd(X, 12, "random", 6L);
+    }
+
+    @Test
+    void acceleratedAlgorithmsMatchLloydWithTies() {
+        // Integer grid points sit exactly halfway between many pairs of centroids
+        double[][] X = new double[144][];
+        for (int i = 0; i < X.length; i++) {
+            X[i] = new double[] {i % 12, i / 12};
+        }
+        for (long seed = 1; seed <= 5; seed++) {
+            assertMatchesLloyd(X, 4, "random", seed);
+            assertMatchesLloyd(X, 9, "k-means++", seed);
+        }
+    }
+
+    @Test
+    void yinyangMatchesLloydWithManyGroups() {
+        // Large k splits the centroids into several groups, so the group bounds do the filtering
+        double[][] X = blobs(1500, 4, 40, 16);
+        assertMatchesLloyd(X, 40, "k-means++", 10L);
+        assertMatchesLloyd(X, 64, "random", 11L);
+    }
+
+    @Test
+    void filteringMatchesLloydOnDeepTrees() {
+        // Many low-dimensional points give a deep KD-tree whose cells straddle several centroids
+        double[][] X = blobs(20000, 2, 12, 17);
+        assertMatchesLloyd(X, 12, "k-means++", 12L);
+        assertMatchesLloyd(X, 30, "random", 13L);
+    }
+
+    @Test
+    void restartsAreReproducibleAcrossPoolSizes() throws InterruptedException, ExecutionException {
+        double[][] X = blobs(2000, 4, 8, 13);
+        for (String algorithm : new String[] {"lloyd", "filtering"}) {
+            KMeans single = fitIn(new ForkJoinPool(1), X, algorithm);
+            KMeans many = fitIn(new ForkJoinPool(8), X, algorithm);
+            assertArrayEquals(single.getCentroids(), many.getCentroids(), algorithm);
+            assertArrayEquals(single.getLabels(), many.getLabels(), algorithm);
+            assertEquals(single.getNIter(), many.getNIter(), algorithm);
+            assertEquals(single.score(), many.score(), algorithm);
+        }
+    }
+
+    @Test
+    void streamingFitMatchesInMemoryFit(@TempDir Path directory) throws IOException {
+        double[][] X = blobs(3000, 3, 5, 14);
+        Path rows = directory.resolve("rows.bin");
+        BinaryRowSource.write(rows, X);
+
+        KMeans inMemory = new KMeans(5, 300, 8L);
+        inMemory.fit(X);
+        KMeans streamed = new KMeans(5, 300, 8L);
+        streamed.fit(new BinaryRowSource(rows));
+
+        assertEquals(inMemory.getNIter(), streamed.getNIter());
+        for (int c = 0; c < 5; c++) {
+            assertArrayEquals(inMemory.getCentroids()[c], streamed.getCentroids()[c], 1e-9);
+        }
+        assertArrayEquals(inMemory.predict(X), streamed.predict(X));
+        assertEquals(inMemory.score(), streamed.score(), 1e-9 * inMemory.score());
+    }
+
+    @Test
+    void streamingFitKnowsItsInertiaWithoutConverging(@TempDir Path directory) throws IOException {
+        double[][] X = blobs(3000, 3, 5, 15);
+        Path rows = directory.resolve("rows.bin");
+        BinaryRowSource.write(rows, X);
+
+        KMeans inMemory = new KMeans(5, 2, 9L);
+        inMemory.fit(X);
+        KMeans streamed = new KMeans(5, 2, 9L);
+        streamed.fit(new BinaryRowSource(rows));
+
+        assertEquals(2, streamed.getNIter());
+        assertEquals(streamed.score(new BinaryRowSource(rows)), streamed.score());
+        assertEquals(inMemory.score(), streamed.score(), 1e-9 * inMemory.score());
+    }
+
+    @Test
+    void scoreIsTheInertiaOfTheFinalCentroids() {
+        double[][] X = blobs(3000, 3, 6, 20);
+        for (String algorithm : new String[] {"lloyd", "elkan", "hamerly", "yinyang", "filtering"}) {
+            for (int nInit : new int[] {1, 3}) {
+                KMeans kmeans = new KMeans(6, 300, 24L);
+                kmeans.setAlgorithm(algorithm);
+                kmeans.setNInit(nInit);
+                kmeans.fit(X);
+                String context = algorithm + ", nInit=" + nInit;
+                double inertia = inertia(X, null, kmeans.getCentroids(), kmeans.getLabels());
+                assertEquals(inertia, kmeans.score(), 1e-9 * inertia, context);
+                assertArrayEquals(kmeans.predict(X), kmeans.getLabels(), context);
+            }
+        }
+    }
+
+    @Test
+    void weightedScoreIsTheWeightedInertia() {
+        double[][] X = blobs(2000, 2, 4, 21);
+        double[] weights = new double[X.length];
+        for (int i = 0; i < X.length; i++) {
+            weights[i] = (i % 5 == 0) ? 0.0 : 0.5 + i % 3;
+        }
+        KMeans kmeans = new KMeans(4, 300, 25L);
+        kmeans.fit(X, weights);
+        double inertia = inertia(X, weights, kmeans.getCentroids(), kmeans.getLabels());
+        assertEquals(inertia, kmeans.score(), 1e-9 * inertia);
+    }
+
+    @Test
+    void scoreBeforeFitIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new KMeans(3, 10).score());
+    }
+
+    @Test
+    void progressIsReportedOnTheFitThread() {
+        double[][] X = blobs(20000, 4, 10, 18);
+        KMeans kmeans = new KMeans(10, 50, 22L);
+        kmeans.setNInit(4);
+        List<Integer> reported = new ArrayList<>();
+        Thread fitThread = Thread.currentThread();
+        TrainingControl control = new TrainingControl();
+        control.setProgressListener((done, total, elapsedMillis, etaMillis) -> {
+            assertEquals(fitThread, Thread.currentThread());
+            assertEquals(4 * 50, total);
+            reported.add(done);
+        });
+        kmeans.setTrainingControl(control);
+        kmeans.fit(X);
+
+        // Converged restarts count the iterations they skip, so the last report is the total
+        assertEquals(4 * 50, reported.get(reported.size() - 1));
+        for (int i = 1; i < reported.size(); i++) {
+            assertTrue(reported.get(i) > reported.get(i - 1));
+        }
+    }
+
+    @Test
+    void cancelledRestartsStopTheFit() {
+        double[][] X = blobs(2000, 2, 4, 19);
+        KMeans kmeans = new KMeans(4, 50, 23L);
+        kmeans.setNInit(3);
+        TrainingControl control = new TrainingControl();
+        control.cancel();
+        kmeans.setTrainingControl(control);
+        assertThrows(TrainingCancelledException.class, () -> kmeans.fit(X));
+        assertNull(kmeans.getCentroids());
+    }
+
+    private static KMeans fitIn(ForkJoinPool pool, double[][] X, String algorithm)
+            throws InterruptedException, ExecutionException {
+        try {
+            return pool.submit(() -> {
+                KMeans kmeans = new KMeans(8, 100, 21L);
+                kmeans.setAlgorithm(algorithm);
+                kmeans.setNInit(6);
+                kmeans.fit(X);
+                return kmeans;
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertMatchesLloyd(double[][] X, int k, String init, Long seed) {
+        KMeans lloyd = fit(X, k, init, seed, "lloyd");
+        for (String algorithm : ACCELERATED) {
+            KMeans kmeans = fit(X, k, init, seed, algorithm);
+            String context = algorithm + ", k=" + k + ", init=" + init + ", seed=" + seed;
+            assertArrayEquals(lloyd.getCentroids(), kmeans.getCentroids(), context);
+            assertArrayEquals(lloyd.getLabels(), kmeans.getLabels(), context);
+            assertEquals(lloyd.getNIter(), kmeans.getNIter(), context);
+            assertEquals(lloyd.score(), kmeans.score(), context);
+        }
+    }
+
+    private static KMeans fit(double[][] X, int k, String init, Long seed, String algorithm) {
+        KMeans kmeans = new KMeans(k, 300, seed);
+        kmeans.setInit(init);
+        kmeans.setAlgorithm(algorithm);
+        kmeans.fit(X);
+        return kmeans;
+    }
+
+    /**
+     * The weighted sum of squared distances of the rows to their assigned centroid, recomputed from scratch.
+     */
+    private static double inertia(double[][] X, double[] weights, double[][] centroids, int[] labels) {
+        double inertia = 0.0;
+        for (int i = 0; i < X.length; i++) {
+            double distance = 0.0;
+            for (int j = 0; j < X[i].length; j++) {
+                double difference = X[i][j] - centroids[labels[i]][j];
+                distance += difference * difference;
+            }
+            inertia += ((weights != null) ? weights[i] : 1.0) * distance;
+        }
+        return inertia;
+    }
+
+    /**
+     * Gaussian blobs around random centers, seeded.
+     */
+    static double[][] blobs(int nSamples, int nFeatures, int nCenters, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] centers = new double[nCenters][nFeatures];
+        for (double[] center : centers) {
+            for (int j = 0; j < nFeatures; j++) {
+                center[j] = random.nextDouble(-10.0, 10.0);
+            }
+        }
+        double[][] X = new double[nSamples][nFeatures];
+        for (int i = 0; i < nSamples; i++) {
+            double[] center = centers[random.nextInt(nCenters)];
+            for (int j = 0; j < nFeatures; j++) {
+                X[i][j] = center[j] + gaussian(random);
+            }
+        }
+        return X;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * random.nextDouble());
+    }
+}
@@ -0,0 +1,91 @@
+package net.acimon.jmlearn.models.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiniBatchKMeansTest {
+
+    @Test
+    void partialFitKeepsTheRunningMeanOfEveryBatch() {
+        double[][] X = KMeansTest.blobs(900, 3, 4, 31);
+        MiniBatchKMeans kmeans = new MiniBatchKMeans(1, 100, 1, 1L);
+        for (int start = 0; start < X.length; start += 300) {
+            kmeans.partialFit(Arrays.copyOfRange(X, start, start + 300));
+        }
+
+        // A single centroid is assigned every sample, so it ends on the mean of the whole data
+        double[] mean = new double[3];
+        for (double[] row : X) {
+            for (int f = 0; f < 3; f++) {
+                mean[f] += row[f] / X.length;
+            }
+        }
+        assertArrayEquals(mean, kmeans.getCentroids()[0], 1e-9);
+        assertArrayEquals(new double[] {X.length}, kmeans.getCounts());
+    }
+
+    @Test
+    void partialFitOverChunksComesCloseToKMeans() {
+        double[][] X = KMeansTest.blobs(6000, 4, 5, 32);
+        MiniBatchKMeans streamed = new MiniBatchKMeans(5, 500, 1, 2L);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            for (int start = 0; start < X.length; start += 500) {
+                streamed.partialFit(Arrays.copyOfRange(X, start, start + 500));
+            }
+        }
+        assertEquals(X.length * 3, Arrays.stream(streamed.getCounts()).sum());
+
+        KMeans full = new KMeans(5, 300, 2L);
+        full.setNInit(4);
+        full.fit(X);
+        assertTrue(streamed.score(X) <= 1.1 * full.score(),
+            "mini-batch inertia " + streamed.score(X) + ", k-means inertia " + full.score());
+    }
+
+    @Test
+    void partialFitIsReproducibleWithASeed() {
+        double[][] X = KMeansTest.blobs(2000, 2, 6, 33);
+        MiniBatchKMeans first = new MiniBatchKMeans(6, 256, 1, 3L);
+        MiniBatchKMeans second = new MiniBatchKMeans(6, 256, 1, 3L);
+        for (int start = 0; start < X.length; start += 400) {
+            first.partialFit(Arrays.copyOfRange(X, start, start + 400));
+            second.partialFit(Arrays.copyOfRange(X, start, start + 400));
+        }
+        assertArrayEquals(first.getCentroids(), second.getCentroids());
+        assertArrayEquals(first.predict(X), second.predict(X));
+    }
+
+    @Test
+    void partialFitContinuesFromFit() {
+        double[][] X = KMeansTest.blobs(2000, 2, 3, 34);
+        MiniBatchKMeans kmeans = new MiniBatchKMeans(3, 200, 5, 4L);
+        kmeans.fit(X);
+        double seen = Arrays.stream(kmeans.getCounts()).sum();
+
+        kmeans.partialFit(Arrays.copyOfRange(X, 0, 100));
+        assertEquals(seen + 100, Arrays.stream(kmeans.getCounts()).sum());
+        assertEquals(3, kmeans.getCentroids().length);
+    }
+
+    @Test
+    void partialFitRejectsInvalidBatches() {
+        MiniBatchKMeans kmeans = new MiniBatchKMeans(3, 10, 1, 5L);
+        assertThrows(IllegalArgumentException.class, () -> kmeans.partialFit(new double[0][]));
+        // The first batch initializes the centroids, so it needs at least k samples
+        assertThrows(IllegalArgumentException.class, () -> kmeans.partialFit(new double[][] {{0.0, 0.0}, {1.0, 1.0}}));
+
+        kmeans.partialFit(new double[][] {{0.0, 0.0}, {1.0, 1.0}, {5.0, 5.0}});
+        assertThrows(IllegalArgumentException.class, () -> kmeans.partialFit(new double[][] {{0.0, 0.0, 0.0}}));
+    }
+
+    @Test
+    void predictBeforeFitIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new MiniBatchKMeans(2).predict(new double[][] {{0.0}}));
+    }
+}
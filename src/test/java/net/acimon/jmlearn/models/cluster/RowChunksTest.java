@@ -0,0 +1,87 @@
+package net.acimon.jmlearn.models.cluster;
+
+import net.acimon.jmlearn.utils.RowSource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowChunksTest {
+
+    @Test
+    void streamHandsOverEveryChunkInOrder() throws IOException {
+        List<Double> firsts = new ArrayList<>();
+        RowChunks.stream(new CountingSource(10, null, null), chunk -> firsts.add(chunk[0][0]));
+        assertEquals(10, firsts.size());
+        for (int c = 0; c < firsts.size(); c++) {
+            assertEquals(c, firsts.get(c));
+        }
+    }
+
+    @Test
+    void failingConsumerDoesNotLeakTheReader() throws InterruptedException {
+        AtomicReference<Thread> reader = new AtomicReference<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        RowSource source = new CountingSource(Integer.MAX_VALUE, reader, closed); // Always fills the queue
+
+        assertThrows(IllegalStateException.class, () -> RowChunks.stream(source, chunk -> {
+            throw new IllegalStateException("Consumer failed");
+        }));
+
+        Thread thread = reader.get();
+        assertTrue(thread.isDaemon());
+        thread.join(5_000);
+        assertFalse(thread.isAlive());
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Chunks of one row each, holding the index of the chunk.
+     */
+    private static final class CountingSource implements RowSource {
+
+        private final int _chunks;
+        private final AtomicReference<Thread> _reader;
+        private final AtomicBoolean _closed;
+
+        CountingSource(int chunks, AtomicReference<Thread> reader, AtomicBoolean closed) {
+            this._chunks = chunks;
+            this._reader = reader;
+            this._closed = closed;
+        }
+
+        @Override
+        public int getNFeatures() {
+            return 1;
+        }
+
+        @Override
+        public Reader open(int maxRows) {
+            if (_reader != null) {
+                _reader.set(Thread.currentThread());
+            }
+            int[] next = {0};
+            return new Reader() {
+                @Override
+                public double[][] next() {
+                    return (next[0] < _chunks) ? new double[][] {{next[0]++}} : null;
+                }
+
+                @Override
+                public void close() {
+                    if (_closed != null) {
+                        _closed.set(true);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BaggingTest {
+
+    @Test
+    void oobPredictionsAreTheVoteOfTheLearnersThatLeftTheRowOut() {
+        double[][] X = classification(200, 3, 3, 21);
+        int[] y = labels(X, 3);
+        Bagging bagging = new Bagging(new NearestSeenRow(), 15, 1.0, 5, 4);
+        bagging.setComputeOob(true);
+        bagging.fit(X, y);
+
+        int[] expected = new int[X.length];
+        int scored = 0;
+        int correct = 0;
+        for (int i = 0; i < X.length; i++) {
+            int[] votes = new int[3];
+            for (Model learner : bagging.getWeakLearners()) {
+                NearestSeenRow model = (NearestSeenRow) learner;
+                if (!model.seen.contains(X[i])) {
+                    votes[model.predict(new double[][] {X[i]})[0]]++;
+                }
+            }
+            int best = -1;
+            for (int c = 0; c < votes.length; c++) {
+                if (votes[c] > 0 && (best == -1 || votes[c] > votes[best])) {
+                    best = c;
+                }
+            }
+            expected[i] = (best == -1) ? Bagging.NO_OOB_PREDICTION : best;
+            if (best != -1) {
+                scored++;
+                if (best == y[i]) correct++;
+            }
+        }
+        assertArrayEquals(expected, bagging.getOobPredictions());
+        assertTrue(scored > 0);
+        assertEquals((double) correct / scored, bagging.oobScore());
+    }
+
+    @Test
+    void oobEstimationDoesNotChangeTheEnsemble() {
+        double[][] X = classification(300, 4, 3, 22);
+        int[] y = labels(X, 3);
+        Bagging plain = new Bagging(new DecisionTree(6), 12, 0.8, 7, 4);
+        plain.fit(X, y);
+        Bagging withOob = new Bagging(new DecisionTree(6), 12, 0.8, 7, 4);
+        withOob.setComputeOob(true);
+        withOob.fit(X, y);
+
+        assertArrayEquals(plain.predict(X), withOob.predict(X));
+        assertTrue(withOob.oobScore() > 0.8);
+    }
+
+    @Test
+    void warmStartContinuesTheSeededBagSequence() {
+        double[][] X = classification(300, 4, 3, 23);
+        int[] y = labels(X, 3);
+        Bagging atOnce = new Bagging(new DecisionTree(5), 12, 0.8, 9, 4);
+        atOnce.fit(X, y);
+
+        Bagging grown = new Bagging(new DecisionTree(5), 5, 0.8, 9, 4);
+        grown.setWarmStart(true);
+        grown.fit(X, y);
+        grown.setBagsNumber(12);
+        grown.fit(X, y);
+
+        assertEquals(12, grown.getFittedBagsNumber());
+        double[][] probe = classification(100, 4, 3, 24);
+        for (int t = 0; t < 12; t++) {
+            assertArrayEquals(atOnce.getWeakLearners().get(t).predict(probe),
+                grown.getWeakLearners().get(t).predict(probe), "learner " + t);
+        }
+    }
+
+    @Test
+    void earlyStoppingIsRejectedBeforeTrainingWhenItCannotScore() {
+        double[][] X = classification(100, 3, 3, 25);
+        int[] y = labels(X, 3);
+
+        Bagging withoutOob = new Bagging(new DecisionTree(4), 20, 1.0, 3, 2);
+        withoutOob.setEarlyStopping(5, 2, 0.0);
+        withoutOob.setComputeOob(false);
+        assertThrows(IllegalStateException.class, () -> withoutOob.fit(X, y));
+        assertEquals(0, withoutOob.getFittedBagsNumber());
+
+        Bagging withoutBootstrap = new Bagging(new DecisionTree(4), 20, 1.0, 3, 2);
+        withoutBootstrap.setEarlyStopping(5, 2, 0.0);
+        withoutBootstrap.setBootstrap(false);
+        assertThrows(IllegalStateException.class, () -> withoutBootstrap.fit(X, y));
+        assertEquals(0, withoutBootstrap.getFittedBagsNumber());
+    }
+
+    /**
+     * Rows around {@code nClasses} separated centers; the label of row {@code i} is {@code i % nClasses}.
+     */
+    static double[][] classification(int nSamples, int nFeatures, int nClasses, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] X = new double[nSamples][nFeatures];
+        for (int i = 0; i < nSamples; i++) {
+            for (int j = 0; j < nFeatures; j++) {
+                X[i][j] = ((j % nClasses == i % nClasses) ? 4.0 : 0.0) + random.nextDouble(-1.5, 1.5);
+            }
+        }
+        return X;
+    }
+
+    static int[] labels(double[][] X, int nClasses) {
+        int[] y = new int[X.length];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = i % nClasses;
+        }
+        return y;
+    }
+
+    /**
+     * Predicts the label of the closest row of its bag and remembers which row arrays it was given.
+     */
+    private static final class NearestSeenRow implements Model {
+
+        final Set<double[]> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<double[]> _rows = new ArrayList<>();
+        private final List<Integer> _labels = new ArrayList<>();
+
+        @Override
+        public void fit(double[][] X, int[] y) {
+            for (int i = 0; i < X.length; i++) {
+                if (seen.add(X[i])) {
+                    _rows.add(X[i]);
+                    _labels.add(y[i]);
+                }
+            }
+        }
+
+        @Override
+        public void fit(double[][] X) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int[] predict(double[][] X) {
+            int[] predictions = new int[X.length];
+            for (int i = 0; i < X.length; i++) {
+                double best = Double.POSITIVE_INFINITY;
+                for (int r = 0; r < _rows.size(); r++) {
+                    double distance = 0.0;
+                    for (int j = 0; j < X[i].length; j++) {
+                        double difference = X[i][j] - _rows.get(r)[j];
+                        distance += difference * difference;
+                    }
+                    if (distance < best) {
+                        best = distance;
+                        predictions[i] = _labels.get(r);
+                    }
+                }
+            }
+            return predictions;
+        }
+
+        @Override
+        public Model clone() {
+            return new NearestSeenRow();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.utils.ModelSerializer;
+import net.acimon.jmlearn.utils.TrainingControl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DistributedForestTrainerTest {
+
+    @Test
+    void seededDistributedFitMatchesLocalFit() throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        double[][] X = new double[300][4];
+        int[] y = new int[X.length];
+        for (int i = 0; i < X.length; i++) {
+            y[i] = i % 3;
+            for (int j = 0; j < X[i].length; j++) {
+                X[i][j] = y[i] * (j + 1) + random.nextGaussian();
+            }
+        }
+
+        RandomForestTree local = new RandomForestTree(12, 2, 6, 2, 42, 0.8);
+        local.fit(X, y);
+        RandomForestTree distributed = new RandomForestTree(12, 2, 6, 2, 42, 0.8);
+        List<Integer> reported = new ArrayList<>();
+        Thread fitThread = Thread.currentThread();
+        TrainingControl control = new TrainingControl();
+        control.setProgressListener((done, total, elapsedMillis, etaMillis) -> {
+            assertEquals(fitThread, Thread.currentThread());
+            reported.add(done);
+        });
+        distributed.setTrainingControl(control);
+        new DistributedForestTrainer(2, 2).fit(distributed, X, y);
+
+        assertArrayEquals(save(local), save(distributed));
+        assertArrayEquals(local.predict(X), distributed.predict(X));
+        assertEquals(12, reported.get(reported.size() - 1));
+        for (int i = 1; i < reported.size(); i++) {
+            assertTrue(reported.get(i) > reported.get(i - 1));
+        }
+    }
+
+    @Test
+    void raggedRowsAreRejectedBeforeLaunchingWorkers() {
+        double[][] X = {{1.0, 2.0}, {3.0}, {5.0, 6.0}};
+        int[] y = {0, 1, 0};
+        assertThrows(IllegalArgumentException.class,
+            () -> new DistributedForestTrainer(2, 1).fit(new RandomForestTree(4, 3, 1.0), X, y));
+    }
+
+    @Test
+    void sharedDatasetRejectsRaggedRows(@TempDir Path directory) {
+        Path file = directory.resolve("rows.bin");
+        assertThrows(IllegalArgumentException.class,
+            () -> SharedDataset.write(file, new double[][] {{1.0, 2.0}, {3.0}}, new int[] {0, 1}));
+        assertFalse(Files.exists(file));
+    }
+
+    private static byte[] save(RandomForestTree forest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelSerializer.save(forest, Channels.newChannel(bytes));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.neighbors.KNN;
+import net.acimon.jmlearn.utils.ModelSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedForestTest {
+
+    private static final double[][] X = BaggingTest.classification(400, 5, 3, 61);
+    private static final int[] Y = BaggingTest.labels(X, 3);
+
+    @Test
+    void mappedForestPredictsLikeTheSavedForest(@TempDir Path directory) throws IOException {
+        double[][] probe = BaggingTest.classification(1000, 5, 3, 62);
+        RandomForestTree[] forests = {new RandomForestTree(20, 2, 8, 2, 4, 0.8), new ExtraTrees(20, 2, 8, 2, 5)};
+        for (RandomForestTree forest : forests) {
+            forest.fit(X, Y);
+            Path file = directory.resolve(forest.getClass().getSimpleName() + ".jmlm");
+            ModelSerializer.save(forest, file);
+
+            MappedForest mapped = MappedForest.open(file);
+            assertEquals(20, mapped.getTreeCount());
+            assertEquals(forest.getCompiledForest().getNodeCount(), mapped.getNodeCount());
+            assertArrayEquals(forest.predict(probe), mapped.predict(probe));
+        }
+    }
+
+    @Test
+    void corruptNodeTablesAreRejected() throws IOException {
+        RandomForestTree forest = new RandomForestTree(6, 2, 5, 2, 8, 0.8);
+        forest.fit(X, Y);
+        byte[] bytes = save(forest);
+        Layout layout = new Layout(bytes, 6, forest.getCompiledForest().getNodeCount(), 3);
+        new MappedForest(ByteBuffer.wrap(bytes)); // The untouched file is valid
+        assertEquals(3, layout.intAt(layout.classes - 4)); // The class count sits where the layout says
+        assertEquals(0, layout.intAt(layout.classes));
+
+        assertRejected(layout.withInt(layout.roots, layout.nodeCount)); // Root past the table
+        int internal = layout.firstNode(true);
+        assertRejected(layout.withInt(layout.rightChildren + 4 * internal, internal)); // Loop back to itself
+        assertRejected(layout.withInt(layout.leafClasses + 4 * layout.firstNode(false), 3)); // No such class
+        assertRejected(layout.withInt(layout.classes, 2)); // Labels out of order
+
+        for (int length = 0; length < bytes.length; length += 97) {
+            assertRejected(Arrays.copyOf(bytes, length));
+        }
+        KNN knn = new KNN();
+        knn.fit(X, Y);
+        assertRejected(save(knn));
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        assertThrows(IOException.class, () -> new MappedForest(ByteBuffer.wrap(bytes)));
+    }
+
+    private static byte[] save(Model model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelSerializer.save(model, Channels.newChannel(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Offsets of the node table, which ends the file: roots, features, thresholds, right children, the class count,
+     * the classes and the class index of every node.
+     */
+    private static final class Layout {
+
+        final byte[] bytes;
+        final int nodeCount;
+        final int leafClasses;
+        final int classes;
+        final int rightChildren;
+        final int features;
+        final int roots;
+
+        Layout(byte[] bytes, int treeCount, int nodeCount, int classCount) {
+            this.bytes = bytes;
+            this.nodeCount = nodeCount;
+            this.leafClasses = bytes.length - 4 * nodeCount;
+            this.classes = leafClasses - 4 * classCount;
+            this.rightChildren = classes - 4 - 4 * nodeCount;
+            this.features = rightChildren - 8 * nodeCount - 4 * nodeCount;
+            this.roots = features - 4 * treeCount;
+        }
+
+        int intAt(int offset) {
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(offset);
+        }
+
+        int firstNode(boolean internal) {
+            for (int i = 0; i < nodeCount; i++) {
+                if ((intAt(features + 4 * i) != -1) == internal) {
+                    return i;
+                }
+            }
+            throw new AssertionError("No such node");
+        }
+
+        byte[] withInt(int offset, int value) {
+            byte[] copy = bytes.clone();
+            ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.metrics.Accuracy;
+import net.acimon.jmlearn.models.neighbors.KNN;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OnlineBaggingTest {
+
+    @Test
+    void parallelBatchesMatchSampleBySampleUpdates() {
+        double[][] X = BaggingTest.classification(400, 3, 3, 41);
+        int[] y = BaggingTest.labels(X, 3);
+        OnlineBagging batched = new OnlineBagging(new KNN(3, "euclidean"), 8, 42, 4);
+        for (int from = 0; from < X.length; from += 100) {
+            batched.partialFit(Arrays.copyOfRange(X, from, from + 100),
+                Arrays.copyOfRange(y, from, from + 100));
+        }
+        OnlineBagging sequential = new OnlineBagging(new KNN(3, "euclidean"), 8, 42, 1);
+        for (int i = 0; i < X.length; i++) {
+            sequential.partialFit(X[i], y[i]);
+        }
+
+        double[][] probe = BaggingTest.classification(300, 3, 3, 42);
+        assertArrayEquals(sequential.predict(probe), batched.predict(probe));
+        assertTrue(Accuracy.calculate(BaggingTest.labels(probe, 3), batched.predict(probe)) > 0.9);
+    }
+}
@@ -0,0 +1,44 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.Model;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RandomForestTreeTest {
+
+    @Test
+    void compiledForestMatchesThePerTreeVote() {
+        double[][] X = BaggingTest.classification(400, 5, 4, 31);
+        int[] y = BaggingTest.labels(X, 4);
+        RandomForestTree forest = new RandomForestTree(25, 2, 6, 2, 17, 0.7);
+        forest.fit(X, y);
+
+        double[][] probe = BaggingTest.classification(700, 5, 4, 32);
+        int[] expected = new int[probe.length];
+        int[][] votes = new int[probe.length][4];
+        for (Model tree : forest.getBagging().getWeakLearners()) {
+            int[] predictions = tree.predict(probe);
+            for (int i = 0; i < probe.length; i++) {
+                votes[i][predictions[i]]++;
+            }
+        }
+        for (int i = 0; i < probe.length; i++) {
+            for (int c = 1; c < 4; c++) {
+                if (votes[i][c] > votes[i][expected[i]]) { // Ties keep the smallest label
+                    expected[i] = c;
+                }
+            }
+        }
+        assertArrayEquals(expected, forest.predict(probe));
+        assertEquals(25, forest.getCompiledForest().getTreeCount());
+    }
+
+    @Test
+    void unfittedForestCannotPredict() {
+        RandomForestTree forest = new RandomForestTree(5, 4, 0.8);
+        assertThrows(IllegalStateException.class, () -> forest.predict(new double[][] {{1.0, 2.0}}));
+    }
+}
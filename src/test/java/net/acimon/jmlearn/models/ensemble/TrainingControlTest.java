@@ -0,0 +1,74 @@
+package net.acimon.jmlearn.models.ensemble;
+
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import net.acimon.jmlearn.utils.TrainingCancelledException;
+import net.acimon.jmlearn.utils.TrainingControl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrainingControlTest {
+
+    private static final double[][] X = BaggingTest.classification(300, 4, 3, 71);
+    private static final int[] Y = BaggingTest.labels(X, 3);
+
+    @Test
+    void cancelledFitKeepsAUsablePartialEnsembleThatWarmStartCompletes() {
+        List<Integer> reported = new ArrayList<>();
+        Thread fitThread = Thread.currentThread();
+        TrainingControl control = new TrainingControl();
+        control.setProgressListener((done, total, elapsedMillis, etaMillis) -> {
+            assertEquals(fitThread, Thread.currentThread());
+            assertEquals(12, total);
+            reported.add(done);
+            if (done == 3) {
+                control.cancel();
+            }
+        });
+        Bagging bagging = new Bagging(new DecisionTree(5), 12, 0.8, 11, 4);
+        bagging.setWarmStart(true);
+        bagging.setTrainingControl(control);
+
+        TrainingCancelledException e = assertThrows(TrainingCancelledException.class, () -> bagging.fit(X, Y));
+        assertFalse(e.isDeadlineExceeded());
+        assertEquals(List.of(1, 2, 3), reported);
+        assertEquals(3, bagging.getFittedBagsNumber());
+        assertEquals(X.length, bagging.predict(X).length);
+
+        bagging.setTrainingControl(null);
+        bagging.fit(X, Y); // Resumes at bag 3
+        Bagging atOnce = new Bagging(new DecisionTree(5), 12, 0.8, 11, 4);
+        atOnce.fit(X, Y);
+        assertEquals(12, bagging.getFittedBagsNumber());
+        assertArrayEquals(atOnce.predict(X), bagging.predict(X));
+    }
+
+    @Test
+    void passedDeadlineStopsTheFit() {
+        TrainingControl control = new TrainingControl();
+        control.setTimeout(0, TimeUnit.MILLISECONDS);
+        RandomForestTree forest = new RandomForestTree(10, 2, 6, 2, 3, 0.8);
+        forest.setTrainingControl(control);
+
+        TrainingCancelledException e = assertThrows(TrainingCancelledException.class, () -> forest.fit(X, Y));
+        assertTrue(e.isDeadlineExceeded());
+        assertEquals(0, forest.getFittedTreeNumber());
+    }
+
+    @Test
+    void cancelledTreeStopsGrowing() {
+        TrainingControl control = new TrainingControl();
+        control.cancel();
+        DecisionTree tree = new DecisionTree(8);
+        tree.setTrainingControl(control);
+        assertThrows(TrainingCancelledException.class, () -> tree.fit(X, Y));
+    }
+}
@@ -0,0 +1,60 @@
+package net.acimon.jmlearn.models.neighbors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KNNTest {
+
+    @Test
+    void partialFitKeepsTheMostRecentSamples() {
+        KNN knn = new KNN(1, "euclidean");
+        knn.setMaxSamples(3);
+        for (int i = 0; i < 6; i++) {
+            knn.partialFit(new double[] {i}, i, 1);
+        }
+        // Samples 0 to 2 were replaced, so the closest stored sample to 0 is 3
+        assertArrayEquals(new int[] {3, 3, 4, 5}, knn.predict(new double[][] {{0.0}, {3.1}, {4.2}, {10.0}}));
+
+        knn.setMaxSamples(2); // Drops the oldest stored sample
+        assertArrayEquals(new int[] {4, 5}, knn.predict(new double[][] {{0.0}, {10.0}}));
+        knn.partialFit(new double[] {-1.0}, 7, 1); // Replaces 4
+        assertArrayEquals(new int[] {7, 5}, knn.predict(new double[][] {{0.0}, {4.0}}));
+    }
+
+    @Test
+    void partialFitCountWeighsTheNeighborVotes() {
+        double[][] query = {{0.9}};
+        KNN weighted = new KNN(3, "euclidean");
+        weighted.partialFit(new double[] {0.0}, 0, 3);
+        weighted.partialFit(new double[] {2.0}, 1, 1);
+        weighted.partialFit(new double[] {2.1}, 1, 1);
+        assertEquals(0, weighted.predict(query)[0]); // The closest sample fills all k votes
+
+        KNN unweighted = new KNN(3, "euclidean");
+        unweighted.partialFit(new double[] {0.0}, 0, 1);
+        unweighted.partialFit(new double[] {2.0}, 1, 1);
+        unweighted.partialFit(new double[] {2.1}, 1, 1);
+        assertEquals(1, unweighted.predict(query)[0]);
+    }
+
+    @Test
+    void partialFitOfEverySampleMatchesFit() {
+        double[][] X = new double[50][2];
+        int[] y = new int[X.length];
+        for (int i = 0; i < X.length; i++) {
+            X[i][0] = (i * 37) % 11;
+            X[i][1] = (i * 13) % 7;
+            y[i] = (X[i][0] + X[i][1] > 8) ? 1 : 0;
+        }
+        KNN fitted = new KNN(5, "manhattan");
+        fitted.fit(X, y);
+        KNN streamed = new KNN(5, "manhattan");
+        for (int i = 0; i < X.length; i++) {
+            streamed.partialFit(X[i], y[i], 1);
+        }
+        double[][] probe = {{0.5, 0.5}, {5.2, 3.3}, {9.9, 6.1}, {3.0, 4.4}};
+        assertArrayEquals(fitted.predict(probe), streamed.predict(probe));
+    }
+}
@@ -0,0 +1,58 @@
+package net.acimon.jmlearn.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryRowSourceTest {
+
+    @Test
+    void writerChunksReadBackInOrder(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("rows.bin");
+        double[][] first = {{1.0, 2.0}, {3.0, 4.0}, {5.0, 6.0}};
+        double[][] second = {{7.0, 8.0}, {9.0, 10.0}};
+        try (BinaryRowSource.Writer writer = new BinaryRowSource.Writer(file, 2)) {
+            writer.write(first);
+            writer.write(second);
+        }
+
+        BinaryRowSource source = new BinaryRowSource(file);
+        assertEquals(2, source.getNFeatures());
+        assertArrayEquals(new double[][] {{1.0, 2.0}, {3.0, 4.0}, {5.0, 6.0}, {7.0, 8.0}, {9.0, 10.0}},
+            readAll(source, 2));
+    }
+
+    @Test
+    void raggedChunkLeavesTheFileReadable(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("rows.bin");
+        try (BinaryRowSource.Writer writer = new BinaryRowSource.Writer(file, 2)) {
+            writer.write(new double[][] {{1.0, 2.0}});
+            // The bad row is in the middle: the rows before it must not reach the file either
+            assertThrows(IllegalArgumentException.class,
+                () -> writer.write(new double[][] {{3.0, 4.0}, {5.0}, {6.0, 7.0}}));
+            writer.write(new double[][] {{8.0, 9.0}});
+        }
+
+        assertArrayEquals(new double[][] {{1.0, 2.0}, {8.0, 9.0}}, readAll(new BinaryRowSource(file), 10));
+    }
+
+    private static double[][] readAll(RowSource source, int maxRows) throws IOException {
+        List<double[]> rows = new ArrayList<>();
+        try (RowSource.Reader reader = source.open(maxRows)) {
+            for (double[][] chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                for (double[] row : chunk) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows.toArray(new double[0][]);
+    }
+}
@@ -0,0 +1,156 @@
+package net.acimon.jmlearn.utils;
+
+import net.acimon.jmlearn.models.Model;
+import net.acimon.jmlearn.models.cluster.KMeans;
+import net.acimon.jmlearn.models.ensemble.Bagging;
+import net.acimon.jmlearn.models.ensemble.ExtraTrees;
+import net.acimon.jmlearn.models.ensemble.RandomForestTree;
+import net.acimon.jmlearn.models.neighbors.KNN;
+import net.acimon.jmlearn.models.tree.DecisionTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelSerializerTest {
+
+    private static final double[][] X = samples(300, 4, 51);
+    private static final int[] Y = labels(X);
+
+    @Test
+    void savedModelsPredictLikeTheOriginals(@TempDir Path directory) throws IOException {
+        double[][] probe = samples(200, 4, 52);
+        for (Model model : fittedModels()) {
+            String name = model.getClass().getSimpleName();
+            int[] expected = model.predict(probe);
+
+            Model fromChannel = ModelSerializer.load(Channels.newChannel(new ByteArrayInputStream(save(model))));
+            assertEquals(model.getClass(), fromChannel.getClass(), name);
+            assertArrayEquals(expected, fromChannel.predict(probe), name);
+
+            Path file = directory.resolve(name + ".jmlm");
+            ModelSerializer.save(model, file);
+            assertArrayEquals(expected, ModelSerializer.load(file).predict(probe), name);
+        }
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        for (Model model : fittedModels()) {
+            byte[] bytes = save(model);
+            int step = Math.max(1, bytes.length / 200);
+            for (int length = 0; length < bytes.length; length += step) {
+                byte[] truncated = Arrays.copyOf(bytes, length);
+                String context = model.getClass().getSimpleName() + " cut at " + length;
+                assertThrows(IOException.class, () -> ModelSerializer.load(ByteBuffer.wrap(truncated)), context);
+                assertThrows(IOException.class,
+                    () -> ModelSerializer.load(Channels.newChannel(new ByteArrayInputStream(truncated))), context);
+            }
+        }
+    }
+
+    @Test
+    void corruptHeadersAndLengthsAreRejected() throws IOException {
+        DecisionTree tree = new DecisionTree(5);
+        tree.fit(X, Y);
+        byte[] bytes = save(tree);
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] ^= 0x7F;
+        assertThrows(IOException.class, () -> ModelSerializer.load(ByteBuffer.wrap(badMagic)));
+
+        byte[] badVersion = bytes.clone();
+        ByteBuffer.wrap(badVersion).order(ByteOrder.LITTLE_ENDIAN).putInt(4, ModelSerializer.VERSION + 1);
+        assertThrows(IOException.class, () -> ModelSerializer.load(ByteBuffer.wrap(badVersion)));
+
+        byte[] badType = bytes.clone();
+        badType[8] = 99;
+        assertThrows(IOException.class, () -> ModelSerializer.load(ByteBuffer.wrap(badType)));
+
+        // The node count follows the header, the type and four settings (three ints and a byte)
+        int nodeCountAt = 8 + 1 + 13;
+        for (int nodeCount : new int[] {-1, Integer.MAX_VALUE}) {
+            byte[] badLength = bytes.clone();
+            ByteBuffer.wrap(badLength).order(ByteOrder.LITTLE_ENDIAN).putInt(nodeCountAt, nodeCount);
+            assertThrows(IOException.class, () -> ModelSerializer.load(ByteBuffer.wrap(badLength)));
+            assertThrows(IOException.class,
+                () -> ModelSerializer.load(Channels.newChannel(new ByteArrayInputStream(badLength))));
+        }
+    }
+
+    @Test
+    void unfittedForestIsNotSaved() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertThrows(IllegalStateException.class,
+            () -> ModelSerializer.save(new RandomForestTree(5, 4, 0.8), Channels.newChannel(bytes)));
+        assertEquals(0, bytes.size());
+    }
+
+    private static List<Model> fittedModels() {
+        List<Model> models = new ArrayList<>();
+        DecisionTree tree = new DecisionTree(5);
+        tree.fit(X, Y);
+        models.add(tree);
+        Bagging bagging = new Bagging(new DecisionTree(4), 6, 0.8, 3, 2);
+        bagging.fit(X, Y);
+        models.add(bagging);
+        RandomForestTree forest = new RandomForestTree(8, 2, 6, 2, 5, 0.8);
+        forest.fit(X, Y);
+        models.add(forest);
+        ExtraTrees extraTrees = new ExtraTrees(8, 2, 6, 2, 6);
+        extraTrees.fit(X, Y);
+        models.add(extraTrees);
+        KNN knn = new KNN(3, "manhattan");
+        knn.fit(X, Y);
+        models.add(knn);
+        KNN streamed = new KNN(3, "euclidean");
+        streamed.setMaxSamples(100);
+        for (int i = 0; i < X.length; i++) {
+            streamed.partialFit(X[i], Y[i], 1 + i % 3);
+        }
+        models.add(streamed);
+        KMeans kmeans = new KMeans(3, 50, 7L);
+        kmeans.fit(X);
+        models.add(kmeans);
+        return models;
+    }
+
+    static byte[] save(Model model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelSerializer.save(model, Channels.newChannel(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static double[][] samples(int nSamples, int nFeatures, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] samples = new double[nSamples][nFeatures];
+        for (double[] sample : samples) {
+            for (int j = 0; j < nFeatures; j++) {
+                sample[j] = random.nextDouble(-3.0, 3.0);
+            }
+        }
+        return samples;
+    }
+
+    private static int[] labels(double[][] X) {
+        int[] y = new int[X.length];
+        for (int i = 0; i < X.length; i++) {
+            y[i] = (X[i][0] + X[i][1] > 0 ? 1 : 0) + (X[i][2] > 1.0 ? 1 : 0);
+        }
+        return y;
+    }
+}